@@ -0,0 +1,105 @@
+package net.deathquota.mod.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old Method.invoke dispatch used by ServerCompat/TeleportCompat
+ * with the static final MethodHandle dispatch that replaced it.
+ *
+ * A ServerPlayerEntity cannot be constructed without a running server, so the
+ * benchmark targets a stand-in with the same method shapes: a no-arg getter
+ * and the 1.21.2+ eight-argument teleport overload. Both sides are bound the
+ * same way the compat classes bind them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CompatDispatchBenchmark {
+    private static final Method GET_SERVER_METHOD;
+    private static final Method TELEPORT_METHOD;
+    private static final MethodHandle GET_SERVER_HANDLE;
+    private static final MethodHandle TELEPORT_HANDLE;
+
+    static {
+        try {
+            GET_SERVER_METHOD = StandInPlayer.class.getMethod("getServer");
+            TELEPORT_METHOD = StandInPlayer.class.getMethod("teleport", Object.class, double.class, double.class,
+                double.class, Set.class, float.class, float.class, boolean.class);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            GET_SERVER_HANDLE = lookup.unreflect(GET_SERVER_METHOD)
+                .asType(MethodType.methodType(Object.class, StandInPlayer.class));
+            MethodHandle teleport = MethodHandles.insertArguments(lookup.unreflect(TELEPORT_METHOD), 5, Collections.emptySet());
+            TELEPORT_HANDLE = MethodHandles.insertArguments(teleport, 7, false)
+                .asType(MethodType.methodType(void.class, StandInPlayer.class, Object.class, double.class, double.class,
+                    double.class, float.class, float.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final StandInPlayer player = new StandInPlayer();
+    private final Object world = new Object();
+    private double x = 12.5;
+    private double y = 64.0;
+    private double z = -40.5;
+    private float yaw = 90.0f;
+    private float pitch = 12.0f;
+
+    @Benchmark
+    public Object getServerReflection() throws ReflectiveOperationException {
+        return GET_SERVER_METHOD.invoke(player);
+    }
+
+    @Benchmark
+    public Object getServerHandle() throws Throwable {
+        return (Object) GET_SERVER_HANDLE.invokeExact(player);
+    }
+
+    @Benchmark
+    public double teleportReflection() throws ReflectiveOperationException {
+        TELEPORT_METHOD.invoke(player, world, x, y, z, Collections.emptySet(), yaw, pitch, false);
+        return player.x;
+    }
+
+    @Benchmark
+    public double teleportHandle() throws Throwable {
+        TELEPORT_HANDLE.invokeExact(player, world, x, y, z, yaw, pitch);
+        return player.x;
+    }
+
+    public static final class StandInPlayer {
+        private final Object server = new Object();
+        private double x;
+        private double y;
+        private double z;
+        private float yaw;
+        private float pitch;
+
+        public Object getServer() {
+            return server;
+        }
+
+        public boolean teleport(Object world, double x, double y, double z, Set<?> flags,
+                                float yaw, float pitch, boolean resetCamera) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            return world != null;
+        }
+    }
+}
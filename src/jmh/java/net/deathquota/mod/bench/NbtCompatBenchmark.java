@@ -0,0 +1,80 @@
+package net.deathquota.mod.bench;
+
+import net.deathquota.mod.util.NbtCompat;
+import net.minecraft.nbt.NbtCompound;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-field cost of the NbtCompat accessors under whichever NbtCompound API
+ * flavor the benchmark classpath ships, on a compound shaped like a stored
+ * death record. {@link #readRecord} reads every field the way a shard load does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NbtCompatBenchmark {
+    private NbtCompound record;
+
+    @Setup
+    public void populate() {
+        record = new NbtCompound();
+        record.putInt("deaths", 2);
+        record.putBoolean("locked", false);
+        record.putLong("time", 1_234_567L);
+        record.putString("dimension", "minecraft:overworld");
+        record.putLong("pos", 0x1234_5678_9ABCL);
+        record.putString("message", "Steve fell from a high place");
+        record.putFloat("yaw", 90.0f);
+        record.putFloat("pitch", -12.5f);
+    }
+
+    @Benchmark
+    public int getInt() {
+        return NbtCompat.getInt(record, "deaths", 0);
+    }
+
+    @Benchmark
+    public long getLong() {
+        return NbtCompat.getLong(record, "time", 0L);
+    }
+
+    @Benchmark
+    public float getFloat() {
+        return NbtCompat.getFloat(record, "yaw", 0f);
+    }
+
+    @Benchmark
+    public boolean getBoolean() {
+        return NbtCompat.getBoolean(record, "locked", false);
+    }
+
+    @Benchmark
+    public String getString() {
+        return NbtCompat.getString(record, "message", null);
+    }
+
+    @Benchmark
+    public int getMissing() {
+        return NbtCompat.getInt(record, "absent", -1);
+    }
+
+    @Benchmark
+    public void readRecord(Blackhole blackhole) {
+        blackhole.consume(NbtCompat.getInt(record, "deaths", 0));
+        blackhole.consume(NbtCompat.getLong(record, "time", 0L));
+        blackhole.consume(NbtCompat.getOptionalString(record, "dimension"));
+        blackhole.consume(NbtCompat.getLong(record, "pos", 0L));
+        blackhole.consume(NbtCompat.getOptionalString(record, "message"));
+        blackhole.consume(NbtCompat.getFloat(record, "yaw", 0f));
+        blackhole.consume(NbtCompat.getFloat(record, "pitch", 0f));
+    }
+}
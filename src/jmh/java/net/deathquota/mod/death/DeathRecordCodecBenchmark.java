@@ -0,0 +1,81 @@
+package net.deathquota.mod.death;
+
+import com.mojang.serialization.Codec;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtOps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save/load throughput of the record table at 10k, 100k and 1M records, both
+ * to NBT: every record through the field-level DeathRecord.Values.CODEC
+ * against the original codec, which built an NbtCompound per record and
+ * passed it through NbtCompound.CODEC.xmap inside an unbounded map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeathRecordCodecBenchmark {
+    // The NbtCompound round-trip the field codec replaced, over the same layout
+    private static final Codec<DeathRecordStore> BASELINE =
+        Codec.unboundedMap(Codec.STRING, NbtCompound.CODEC).xmap(
+            records -> {
+                DeathRecordStore store = new DeathRecordStore();
+                records.forEach((uuid, nbt) -> store.readNbt(store.getOrCreateSlot(UUID.fromString(uuid)), nbt));
+                return store;
+            },
+            store -> {
+                Map<String, NbtCompound> records = new Object2ObjectOpenHashMap<>();
+                for (int slot = 0; slot < store.slotLimit(); slot++) {
+                    if (store.isLive(slot)) {
+                        records.put(store.uuidAt(slot).toString(), store.toNbt(slot));
+                    }
+                }
+                return records;
+            });
+
+    @Param({"10000", "100000", "1000000"})
+    public int records;
+
+    private DeathRecordStore store;
+    private NbtElement encoded;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        store = DeathRecordStoreBenchmark.populatedStore(records, 42L);
+        encoded = DeathRecordStore.CODEC.encodeStart(NbtOps.INSTANCE, store).getOrThrow();
+    }
+
+    @Benchmark
+    public NbtElement encodeFieldCodec() {
+        return DeathRecordStore.CODEC.encodeStart(NbtOps.INSTANCE, store).getOrThrow();
+    }
+
+    @Benchmark
+    public DeathRecordStore decodeFieldCodec() {
+        return DeathRecordStore.CODEC.parse(NbtOps.INSTANCE, encoded).getOrThrow();
+    }
+
+    @Benchmark
+    public NbtElement encodeBaseline() {
+        return BASELINE.encodeStart(NbtOps.INSTANCE, store).getOrThrow();
+    }
+
+    @Benchmark
+    public DeathRecordStore decodeBaseline() {
+        return BASELINE.parse(NbtOps.INSTANCE, encoded).getOrThrow();
+    }
+}
@@ -0,0 +1,82 @@
+package net.deathquota.mod.death;
+
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codec encode/decode and lock change count cost of the columnar record store at
+ * 1k, 100k and 1M records. DeathQuotaState.CODEC is this codec under a
+ * "records" field, so these numbers are the state codec's too; the state
+ * class itself needs a running server to initialise. Lives in the death
+ * package because the store is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeathRecordStoreBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int records;
+
+    private DeathRecordStore store;
+    private NbtElement encoded;
+    private int maxLives;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        store = populatedStore(records, 42L);
+        encoded = DeathRecordStore.CODEC.encodeStart(NbtOps.INSTANCE, store).getOrThrow();
+    }
+
+    @Setup(Level.Invocation)
+    public void flipMaxLives() {
+        // Alternate so every count has locks to flip
+        maxLives = maxLives == 2 ? 3 : 2;
+    }
+
+    @Benchmark
+    public NbtElement encode() {
+        return DeathRecordStore.CODEC.encodeStart(NbtOps.INSTANCE, store).getOrThrow();
+    }
+
+    @Benchmark
+    public DeathRecordStore decode() {
+        return DeathRecordStore.CODEC.parse(NbtOps.INSTANCE, encoded).getOrThrow();
+    }
+
+    @Benchmark
+    public int lockChanges() {
+        return store.lockChanges(maxLives == 2 ? 3 : 2, maxLives);
+    }
+
+    static DeathRecordStore populatedStore(int records, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        DeathRecordStore store = new DeathRecordStore();
+        int overworld = DimensionRegistry.intern("minecraft:overworld");
+        for (int i = 0; i < records; i++) {
+            int slot = store.getOrCreateSlot(new UUID(random.nextLong(), random.nextLong()));
+            int deaths = random.nextInt(4);
+            store.setDeaths(slot, deaths);
+            if (deaths > 0) {
+                BlockPos pos = new BlockPos(random.nextInt(-30000, 30000), random.nextInt(-64, 320), random.nextInt(-30000, 30000));
+                store.setLastDeath(slot, true, pos.asLong(), overworld,
+                    random.nextInt(360) - 180f, random.nextInt(180) - 90f, random.nextLong(0, 10_000_000L));
+                store.setMessage(slot, "Player" + i + " fell from a high place");
+            }
+        }
+        return store;
+    }
+}
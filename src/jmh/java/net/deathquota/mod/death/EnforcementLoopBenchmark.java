@@ -0,0 +1,70 @@
+package net.deathquota.mod.death;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The periodic spectator-lock audit over a player list of 20, 200 and 2000.
+ *
+ * ServerPlayerEntity needs a running server, so the list holds stand-ins
+ * with what the audit reads: the game mode and the bound record. The loop
+ * is the same check DeathQuotaManager runs, against a real store, with a
+ * quarter of the players on their last life; none has escaped, so it
+ * measures the steady-state cost paid every audit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EnforcementLoopBenchmark {
+    @Param({"20", "200", "2000"})
+    public int players;
+
+    private final List<StandInPlayer> playerList = new ArrayList<>();
+
+    @Setup
+    public void populate() {
+        DeathRecordStore store = DeathRecordStoreBenchmark.populatedStore(players * 10, 42L);
+        store.useMaxLives(() -> 3);
+        SplittableRandom random = new SplittableRandom(44L);
+        playerList.clear();
+        for (int i = 0; i < players; i++) {
+            int slot = i * 10;
+            boolean lastLife = i % 4 == 0;
+            store.setDeaths(slot, lastLife ? 3 : random.nextInt(3));
+            // Locked players are already spectating; everyone else is in survival
+            playerList.add(new StandInPlayer(new DeathRecord(store, slot), lastLife));
+        }
+    }
+
+    @Benchmark
+    public int audit() {
+        int escaped = 0;
+        for (StandInPlayer player : playerList) {
+            if (!player.spectator && player.record != null && player.record.isSpectatorLocked()) {
+                escaped++;
+            }
+        }
+        return escaped;
+    }
+
+    private static final class StandInPlayer {
+        private final DeathRecord record;
+        private final boolean spectator;
+
+        private StandInPlayer(DeathRecord record, boolean spectator) {
+            this.record = record;
+            this.spectator = spectator;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.deathquota.mod.death;
+
+import net.minecraft.nbt.NbtCompound;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding one record to NBT and decoding it back, the unit of work
+ * behind shard writes, cold-tier loads and the legacy state file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecordNbtBenchmark {
+    private DeathRecordStore store;
+    private DeathRecord record;
+    private int slot;
+    private NbtCompound encoded;
+
+    @Setup
+    public void populate() {
+        store = DeathRecordStoreBenchmark.populatedStore(1_000, 7L);
+        // Pick a record with a last death so every field is present
+        slot = 0;
+        while (store.deaths(slot) == 0) {
+            slot++;
+        }
+        record = new DeathRecord(store, slot);
+        encoded = record.toNbt();
+    }
+
+    @Benchmark
+    public NbtCompound toNbt() {
+        return record.toNbt();
+    }
+
+    @Benchmark
+    public int fromNbt() {
+        store.readNbt(slot, encoded);
+        return store.deaths(slot);
+    }
+}
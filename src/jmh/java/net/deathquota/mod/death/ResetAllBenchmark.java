@@ -0,0 +1,112 @@
+package net.deathquota.mod.death;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store-side cost of a reset-all at 1k, 100k and 1M records: the whole reset,
+ * every shard in turn, and a single step of the bulk task, which resets
+ * {@link BulkTasks.ResetAll#RESET_CHUNK} records and has to fit the
+ * {@link BulkOperations} tick budget. The deaths a reset clears are dealt back
+ * before each invocation, outside the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class ResetAllBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Full {
+        @Param({"1000", "100000", "1000000"})
+        public int records;
+
+        DeathRecordStore store;
+        int[] deaths;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            store = DeathRecordStoreBenchmark.populatedStore(records, 42L);
+            deaths = deaths(records);
+        }
+
+        @Setup(Level.Invocation)
+        public void dealDeaths() {
+            for (int slot = 0; slot < records; slot++) {
+                store.setDeaths(slot, deaths[slot]);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Step {
+        @Param({"1000", "100000", "1000000"})
+        public int records;
+
+        DeathRecordStore store;
+        int[] deaths;
+        private int shard;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            store = DeathRecordStoreBenchmark.populatedStore(records, 42L);
+            deaths = deaths(records);
+            // The fullest shard, so a step never runs short of records to reset
+            for (int each = 1; each < DeathRecordStore.SHARD_COUNT; each++) {
+                if (store.slotsInShard(each).size() > store.slotsInShard(shard).size()) {
+                    shard = each;
+                }
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void beginShard() {
+            IntList slots = store.slotsInShard(shard);
+            int chunk = Math.min(slots.size(), BulkTasks.ResetAll.RESET_CHUNK);
+            for (int i = 0; i < chunk; i++) {
+                int slot = slots.getInt(i);
+                store.setDeaths(slot, deaths[slot]);
+            }
+            store.beginShardReset(shard);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int resetAll(Full state) {
+        DeathRecordStore store = state.store;
+        int reset = 0;
+        store.beginBulkReset();
+        for (int shard = 0; shard < DeathRecordStore.SHARD_COUNT; shard++) {
+            store.beginShardReset(shard);
+            while (store.resettingShard() >= 0) {
+                reset += store.resetShardChunk(BulkTasks.ResetAll.RESET_CHUNK);
+            }
+        }
+        store.endBulkReset();
+        return reset;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int resetStep(Step state) {
+        return state.store.resetShardChunk(BulkTasks.ResetAll.RESET_CHUNK);
+    }
+
+    private static int[] deaths(int records) {
+        SplittableRandom random = new SplittableRandom(43L);
+        int[] deaths = new int[records];
+        for (int i = 0; i < records; i++) {
+            deaths[i] = random.nextInt(4);
+        }
+        return deaths;
+    }
+}
@@ -0,0 +1,311 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.sim.Samples;
+import net.deathquota.mod.sim.SimulatedRuntime;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Replays a recorded {@link QuotaTrace} through the real {@link QuotaRules}
+ * and {@link DeathQuotaState} on a {@link SimulatedRuntime}, as fast as it
+ * will go, and reports throughput per event type and the distribution of
+ * per-tick time spent in the quota logic.
+ *
+ * Each tick runs its events in recorded order, then the tasks they queued,
+ * then the spectator-lock audit on every hundredth tick, as the server does.
+ * Only ticks with any of that work count towards the tick distribution.
+ * Replay starts from empty state, so records the server already had before
+ * the trace began are created by their first event instead.
+ *
+ * Run with {@code ./gradlew replay --args="path/to/trace.dqt"}; add
+ * {@code --lives n} to replay against a different starting max lives.
+ * Lives in this package to run reset-all the way the bulk task does.
+ */
+public final class TraceReplay implements QuotaTrace.Visitor {
+    private static final int AUDIT_INTERVAL = 100;
+
+    private final SimulatedRuntime runtime;
+    private final QuotaRules<SimulatedRuntime.Player> rules;
+    private final Map<UUID, SimulatedRuntime.Player> players = new HashMap<>();
+    private final List<SimulatedRuntime.Player> online = new ArrayList<>();
+    private final Map<QuotaTrace.Event, Samples> events = new EnumMap<>(QuotaTrace.Event.class);
+    private final Map<QuotaTrace.Command, Samples> commands = new EnumMap<>(QuotaTrace.Command.class);
+    private final Samples ticks = new Samples();
+    private final Samples tasks = new Samples();
+    private final Samples audits = new Samples();
+    private long tick = -1;
+    private long tickNanos;
+    private boolean tickBusy;
+    private long firstTick = -1;
+
+    TraceReplay(int lives) {
+        this.runtime = new SimulatedRuntime(lives);
+        this.rules = new QuotaRules<>(runtime);
+        for (QuotaTrace.Event event : QuotaTrace.Event.values()) {
+            events.put(event, new Samples());
+        }
+        for (QuotaTrace.Command command : QuotaTrace.Command.values()) {
+            commands.put(command, new Samples());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = null;
+        int lives = DeathQuotaMod.DEFAULT_MAX_DEATHS;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--lives") && i + 1 < args.length) {
+                lives = Integer.parseInt(args[++i]);
+            } else {
+                file = Path.of(args[i]);
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Usage: TraceReplay <trace file> [--lives n]");
+        }
+
+        TraceReplay replay = new TraceReplay(lives);
+        long started = System.nanoTime();
+        long count = QuotaTrace.read(file, replay);
+        replay.finishTick();
+        long elapsed = System.nanoTime() - started;
+        replay.report(file, count, elapsed);
+    }
+
+    @Override
+    public void event(long tick, QuotaTrace.Event event, UUID uuid) {
+        advanceTo(tick);
+        SimulatedRuntime.Player player = player(uuid, event != QuotaTrace.Event.JOIN);
+        long started = System.nanoTime();
+        switch (event) {
+            case JOIN -> {
+                if (!player.isOnline()) {
+                    join(player);
+                }
+            }
+            case DISCONNECT -> {
+                if (player.isOnline()) {
+                    player.setOnline(false);
+                    online.remove(player);
+                    runtime.setOnline(player, false);
+                    rules.onDisconnect(player);
+                }
+            }
+            case RESPAWN -> {
+                player.setDead(false);
+                rules.onRespawn(player);
+            }
+            case RESPAWN_REQUEST -> {
+                // What ServerPlayNetworkHandlerMixin does with the packet
+                if (rules.isSpectatorLocked(player)) {
+                    rules.applyPostRespawnState(player);
+                }
+            }
+            default -> throw new IllegalStateException("Unexpected plain event " + event);
+        }
+        record(events.get(event), started);
+    }
+
+    @Override
+    public void death(long tick, UUID uuid, String dimension, long packedPos, float yaw, float pitch) {
+        advanceTo(tick);
+        SimulatedRuntime.Player player = player(uuid, true);
+        player.moveTo(DimensionRegistry.intern(dimension), packedPos, yaw, pitch);
+        long started = System.nanoTime();
+        player.setDead(true);
+        rules.handleDeath(player, player.name() + " died");
+        record(events.get(QuotaTrace.Event.DEATH), started);
+    }
+
+    @Override
+    public void command(long tick, QuotaTrace.Command command, UUID target, int argument, int page,
+                        RecordListing.Kind filter, String dimension) {
+        advanceTo(tick);
+        SimulatedRuntime.Player player = target != null ? players.get(target) : null;
+        DeathQuotaState state = runtime.state();
+        long started = System.nanoTime();
+        switch (command) {
+            case INFO -> {
+                if (player != null && player.isOnline()) {
+                    rules.boundRecord(player);
+                } else if (target != null) {
+                    state.find(target);
+                }
+            }
+            case TOP -> state.ranked(1, Math.max(1, argument));
+            case RANK -> {
+                if (target != null) {
+                    state.rank(target);
+                }
+            }
+            case LIST -> state.list("replay", filter(filter, argument, dimension), Math.max(1, page));
+            case RESET -> {
+                if (player != null && player.isOnline()) {
+                    rules.reset(player);
+                } else if (target != null) {
+                    DeathRecord record = state.find(target);
+                    if (record != null) {
+                        record.reset();
+                    }
+                }
+            }
+            case RESET_ALL -> {
+                state.beginResetAll();
+                for (int shard = 0; shard < DeathRecordStore.SHARD_COUNT; shard++) {
+                    state.beginResetShard(shard);
+                    state.resetShardChunk(Integer.MAX_VALUE);
+                }
+                state.endResetAll();
+                for (SimulatedRuntime.Player each : online) {
+                    runtime.unbindRecord(each);
+                }
+            }
+            case SET_MAX -> {
+                boolean[] wasLocked = new boolean[online.size()];
+                for (int i = 0; i < wasLocked.length; i++) {
+                    wasLocked[i] = rules.isSpectatorLocked(online.get(i));
+                }
+                int previous = runtime.config().getMaxLives();
+                runtime.config().setMaxLives(argument);
+                if (state.lockChanges(previous, runtime.config().getMaxLives()) > 0) {
+                    for (int i = 0; i < wasLocked.length; i++) {
+                        SimulatedRuntime.Player each = online.get(i);
+                        if (rules.isSpectatorLocked(each) != wasLocked[i]) {
+                            rules.applyPostRespawnState(each);
+                        }
+                    }
+                }
+            }
+            case DEATH_MESSAGES -> runtime.config().setShowDeathLocationMessages(argument != 0);
+        }
+        record(commands.get(command), started);
+    }
+
+    private static RecordListing.Filter filter(RecordListing.Kind kind, int argument, String dimension) {
+        return switch (kind) {
+            case LOCKED -> RecordListing.Filter.locked();
+            case ALIVE -> RecordListing.Filter.alive();
+            case DEATHS_AT_LEAST -> RecordListing.Filter.deathsAtLeast(argument);
+            case DIMENSION -> RecordListing.Filter.dimension(DimensionRegistry.intern(dimension));
+        };
+    }
+
+    /**
+     * The player with {@code uuid}. Players seen for the first time on
+     * anything but a join were online when the trace started; they join
+     * here, outside the timings.
+     */
+    private SimulatedRuntime.Player player(UUID uuid, boolean mustBeOnline) {
+        SimulatedRuntime.Player player = players.computeIfAbsent(uuid,
+            id -> new SimulatedRuntime.Player(id, "player" + players.size()));
+        if (mustBeOnline && !player.isOnline()) {
+            join(player);
+        }
+        return player;
+    }
+
+    private void join(SimulatedRuntime.Player player) {
+        player.setOnline(true);
+        online.add(player);
+        runtime.setOnline(player, true);
+        rules.onJoin(player);
+    }
+
+    private void record(Samples samples, long started) {
+        long elapsed = System.nanoTime() - started;
+        samples.record(elapsed);
+        tickNanos += elapsed;
+        tickBusy = true;
+    }
+
+    /**
+     * Ends every tick before {@code next}, running their queued tasks and
+     * any audits that fall in the gap.
+     */
+    private void advanceTo(long next) {
+        if (tick < 0) {
+            tick = next;
+            firstTick = next;
+            runtime.setWorldTime(next);
+            return;
+        }
+        while (tick < next) {
+            finishTick();
+            tick++;
+            runtime.setWorldTime(tick);
+            // Skip ahead through ticks with nothing queued and no audit due
+            if (!runtime.hasTasks() && tick < next) {
+                long nextAudit = tick + (AUDIT_INTERVAL - Math.floorMod(tick, AUDIT_INTERVAL)) % AUDIT_INTERVAL;
+                tick = Math.min(next, nextAudit);
+                runtime.setWorldTime(tick);
+            }
+        }
+    }
+
+    private void finishTick() {
+        if (runtime.hasTasks()) {
+            long started = System.nanoTime();
+            runtime.runTasks();
+            long elapsed = System.nanoTime() - started;
+            tasks.record(elapsed);
+            tickNanos += elapsed;
+            tickBusy = true;
+        }
+        if (tick % AUDIT_INTERVAL == 0 && !online.isEmpty()) {
+            long started = System.nanoTime();
+            rules.auditSpectatorLocks(online);
+            long elapsed = System.nanoTime() - started;
+            audits.record(elapsed);
+            tickNanos += elapsed;
+            tickBusy = true;
+        }
+        if (tickBusy) {
+            ticks.record(tickNanos);
+        }
+        tickNanos = 0;
+        tickBusy = false;
+    }
+
+    void report(Path file, long count, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long work = 0;
+        for (Samples samples : events.values()) {
+            work += samples.totalNanos();
+        }
+        for (Samples samples : commands.values()) {
+            work += samples.totalNanos();
+        }
+        System.out.printf(Locale.ROOT, "%s: %,d events over %,d ticks, replayed in %.2f s (%,.0f events/s)%n",
+            file.getFileName(), count, Math.max(0, tick - firstTick + 1), seconds, count / seconds);
+        System.out.printf(Locale.ROOT, "%,d records, %,d players seen, %.1f ms in quota logic%n",
+            runtime.state().size(), players.size(), (work + tasks.totalNanos() + audits.totalNanos()) / 1e6);
+        System.out.printf(Locale.ROOT, "tick time over %,d busy ticks: p50 %,d ns, p90 %,d ns, p99 %,d ns, p99.9 %,d ns, max %,d ns%n",
+            ticks.count(), ticks.percentile(0.50), ticks.percentile(0.90), ticks.percentile(0.99),
+            ticks.percentile(0.999), ticks.percentile(1.0));
+        System.out.printf(Locale.ROOT, "%-16s %12s %12s %10s %10s%n", "event", "count", "events/s", "mean ns", "p99 ns");
+        for (Map.Entry<QuotaTrace.Event, Samples> entry : events.entrySet()) {
+            row(entry.getKey().name(), entry.getValue());
+        }
+        for (Map.Entry<QuotaTrace.Command, Samples> entry : commands.entrySet()) {
+            row("command " + entry.getKey().name(), entry.getValue());
+        }
+        row("tasks", tasks);
+        row("audit", audits);
+    }
+
+    private static void row(String name, Samples samples) {
+        if (samples.count() == 0) {
+            return;
+        }
+        System.out.printf(Locale.ROOT, "%-16s %,12d %,12.0f %,10d %,10d%n", name.toLowerCase(Locale.ROOT),
+            samples.count(), samples.perSecond(), samples.meanNanos(), samples.percentile(0.99));
+    }
+}
@@ -0,0 +1,367 @@
+package net.deathquota.mod.sim;
+
+import net.deathquota.mod.death.DeathQuotaState;
+import net.deathquota.mod.death.DeathRecord;
+import net.deathquota.mod.death.DimensionRegistry;
+import net.deathquota.mod.death.QuotaRules;
+import net.deathquota.mod.death.RecordListing;
+import net.minecraft.util.math.BlockPos;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Deterministic, headless load test of the quota rules. A seeded random
+ * stream of joins, disconnects, deaths, respawns, game mode changes and
+ * operator commands runs through the real {@link QuotaRules} and
+ * {@link DeathQuotaState} on a {@link SimulatedRuntime}, a tick at a time,
+ * and each event type is timed on its own: throughput, latency percentiles
+ * and bytes allocated per event. The same seed always produces the same
+ * event stream, so runs before and after a change can be compared.
+ *
+ * Run with {@code ./gradlew simulate --args="--events 5000000 --players 200000"};
+ * see {@link #main} for the options.
+ */
+public final class QuotaSimulator {
+    /**
+     * Ticks between spectator-lock audits, as on a server.
+     */
+    private static final int AUDIT_INTERVAL = 100;
+
+    private static final String[] DIMENSIONS = {"minecraft:overworld", "minecraft:the_nether", "minecraft:the_end"};
+
+    enum Kind {
+        JOIN(80),
+        DISCONNECT(80),
+        DEATH(380),
+        RESPAWN(300),
+        GAMEMODE(22),
+        RESET(60),
+        TOP(40),
+        LIST(30),
+        SETMAX(8),
+        // Not drawn from the stream; timed once per tick or audit interval
+        TASKS(0),
+        AUDIT(0);
+
+        /**
+         * Chance of being drawn, in events per thousand.
+         */
+        final int weight;
+
+        Kind(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private final SimulatedRuntime runtime;
+    private final QuotaRules<SimulatedRuntime.Player> rules;
+    private final SplittableRandom random;
+    private final List<SimulatedRuntime.Player> online = new ArrayList<>();
+    private final List<SimulatedRuntime.Player> offline = new ArrayList<>();
+    private final int maxOnline;
+    private final int lives;
+    private final int[] dimensions = new int[DIMENSIONS.length];
+    private final Map<Kind, Samples> stats = new EnumMap<>(Kind.class);
+    private final com.sun.management.ThreadMXBean threads;
+    private long tick;
+    private int listPage;
+
+    QuotaSimulator(int players, int maxOnline, int lives, long seed) {
+        this.runtime = new SimulatedRuntime(lives);
+        this.rules = new QuotaRules<>(runtime);
+        this.random = new SplittableRandom(seed);
+        this.maxOnline = maxOnline;
+        this.lives = lives;
+        for (int i = 0; i < DIMENSIONS.length; i++) {
+            dimensions[i] = DimensionRegistry.intern(DIMENSIONS[i]);
+        }
+        for (int i = 0; i < players; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            offline.add(new SimulatedRuntime.Player(uuid, "player" + i));
+        }
+        for (Kind kind : Kind.values()) {
+            stats.put(kind, new Samples());
+        }
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * Options, each followed by a value: {@code --players} known players
+     * (default 100000), {@code --online} most online at once (500),
+     * {@code --lives} max lives (3), {@code --events} measured events
+     * (2000000), {@code --warmup} unmeasured events run first (200000),
+     * {@code --per-tick} events per tick (50) and {@code --seed} (1).
+     */
+    public static void main(String[] args) {
+        int players = 100_000;
+        int maxOnline = 500;
+        int lives = 3;
+        long events = 2_000_000L;
+        long warmup = 200_000L;
+        int perTick = 50;
+        long seed = 1L;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--players" -> players = Integer.parseInt(value);
+                case "--online" -> maxOnline = Integer.parseInt(value);
+                case "--lives" -> lives = Integer.parseInt(value);
+                case "--events" -> events = Long.parseLong(value);
+                case "--warmup" -> warmup = Long.parseLong(value);
+                case "--per-tick" -> perTick = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        QuotaSimulator simulator = new QuotaSimulator(players, maxOnline, lives, seed);
+        simulator.run(warmup, perTick);
+        simulator.clearStats();
+        long started = System.nanoTime();
+        simulator.run(events, perTick);
+        long elapsed = System.nanoTime() - started;
+        simulator.report(events, elapsed);
+    }
+
+    void run(long events, int perTick) {
+        long done = 0;
+        while (done < events) {
+            tick++;
+            runtime.setWorldTime(tick);
+            for (int i = 0; i < perTick && done < events; i++) {
+                if (step(draw())) {
+                    done++;
+                }
+            }
+            if (runtime.hasTasks()) {
+                measure(Kind.TASKS);
+            }
+            if (tick % AUDIT_INTERVAL == 0) {
+                measure(Kind.AUDIT);
+            }
+        }
+    }
+
+    private Kind draw() {
+        int roll = random.nextInt(1000);
+        for (Kind kind : Kind.values()) {
+            roll -= kind.weight;
+            if (roll < 0) {
+                return kind;
+            }
+        }
+        return Kind.DEATH;
+    }
+
+    /**
+     * Runs and times one event of the given kind, or returns false when no
+     * player can take part in it right now.
+     */
+    private boolean step(Kind kind) {
+        SimulatedRuntime.Player player = null;
+        switch (kind) {
+            case JOIN -> {
+                if (offline.isEmpty() || online.size() >= maxOnline) {
+                    return false;
+                }
+                player = take(offline, random.nextInt(offline.size()));
+                online.add(player);
+            }
+            case DISCONNECT -> {
+                if (online.isEmpty()) {
+                    return false;
+                }
+                player = take(online, random.nextInt(online.size()));
+                offline.add(player);
+            }
+            case RESET -> {
+                if (online.isEmpty()) {
+                    return false;
+                }
+                player = online.get(random.nextInt(online.size()));
+            }
+            case DEATH -> {
+                player = pickOnline();
+                if (player == null || player.isDead() || player.isSpectator()) {
+                    return false;
+                }
+                player.moveTo(dimensions[random.nextInt(dimensions.length)],
+                    BlockPos.asLong(random.nextInt(-30_000, 30_000), random.nextInt(-64, 320), random.nextInt(-30_000, 30_000)),
+                    (float) random.nextDouble(-180.0, 180.0),
+                    (float) random.nextDouble(-90.0, 90.0));
+            }
+            case RESPAWN -> {
+                player = pickOnline();
+                if (player == null || !player.isDead()) {
+                    return false;
+                }
+            }
+            case GAMEMODE -> {
+                player = pickOnline();
+                if (player == null || !player.isSpectator()) {
+                    return false;
+                }
+            }
+            default -> {
+            }
+        }
+        measure(kind, player);
+        return true;
+    }
+
+    private SimulatedRuntime.Player pickOnline() {
+        return online.isEmpty() ? null : online.get(random.nextInt(online.size()));
+    }
+
+    private void measure(Kind kind) {
+        measure(kind, null);
+    }
+
+    private void measure(Kind kind, SimulatedRuntime.Player player) {
+        // Decide the random parts up front so the draw is not timed
+        int argument = switch (kind) {
+            case SETMAX -> 1 + random.nextInt(lives * 2);
+            case LIST -> random.nextInt(4);
+            case GAMEMODE -> random.nextInt(20);
+            default -> 0;
+        };
+        long allocatedBefore = allocatedBytes();
+        long started = System.nanoTime();
+        apply(kind, player, argument);
+        long elapsed = System.nanoTime() - started;
+        long allocated = allocatedBytes() - allocatedBefore;
+        stats.get(kind).record(elapsed, allocated);
+    }
+
+    private void apply(Kind kind, SimulatedRuntime.Player player, int argument) {
+        switch (kind) {
+            case JOIN -> {
+                player.setOnline(true);
+                runtime.setOnline(player, true);
+                rules.onJoin(player);
+            }
+            case DISCONNECT -> {
+                player.setOnline(false);
+                runtime.setOnline(player, false);
+                rules.onDisconnect(player);
+            }
+            case DEATH -> {
+                player.setDead(true);
+                rules.handleDeath(player, player.name() + " fell from a high place");
+            }
+            case RESPAWN -> {
+                player.setDead(false);
+                rules.onRespawn(player);
+            }
+            case GAMEMODE -> {
+                // An operator or another mod switching a spectator to survival. The
+                // game mode mixin refuses it for locked players, except for the odd
+                // path that bypasses changeGameMode, which the audit has to catch.
+                if (!rules.isSpectatorLocked(player) || argument == 0) {
+                    player.setSpectator(false);
+                }
+            }
+            case RESET -> {
+                DeathRecord record = rules.reset(player);
+                runtime.sendMessage(player, "[Death Quota] An operator reset your lives.", false);
+                if (record.getDeathCount() != 0) {
+                    throw new IllegalStateException("Reset left " + record.getDeathCount() + " deaths");
+                }
+            }
+            case TOP -> {
+                StringBuilder lines = new StringBuilder();
+                int rank = 1;
+                for (DeathRecord record : runtime.state().ranked(1, 10)) {
+                    lines.append(rank++).append(". ").append(record.getUuid()).append(" - ")
+                        .append(record.getDeathCount()).append('\n');
+                }
+                runtime.sendMessage(null, lines.toString(), false);
+            }
+            case LIST -> {
+                RecordListing.Filter filter = switch (argument) {
+                    case 0 -> RecordListing.Filter.locked();
+                    case 1 -> RecordListing.Filter.alive();
+                    case 2 -> RecordListing.Filter.deathsAtLeast(lives);
+                    default -> RecordListing.Filter.dimension(dimensions[0]);
+                };
+                RecordListing.Page page = runtime.state().list("simulator", filter, ++listPage);
+                if (listPage >= page.pages()) {
+                    listPage = 0;
+                }
+            }
+            case SETMAX -> {
+                boolean[] wasLocked = new boolean[online.size()];
+                for (int i = 0; i < wasLocked.length; i++) {
+                    wasLocked[i] = rules.isSpectatorLocked(online.get(i));
+                }
+                int previous = runtime.config().getMaxLives();
+                runtime.config().setMaxLives(argument);
+                if (runtime.state().lockChanges(previous, runtime.config().getMaxLives()) > 0) {
+                    for (int i = 0; i < wasLocked.length; i++) {
+                        SimulatedRuntime.Player target = online.get(i);
+                        if (rules.isSpectatorLocked(target) != wasLocked[i]) {
+                            rules.applyPostRespawnState(target);
+                        }
+                    }
+                }
+            }
+            case TASKS -> runtime.runTasks();
+            case AUDIT -> rules.auditSpectatorLocks(online);
+        }
+    }
+
+    /**
+     * Swap-removes the player at {@code index}; order within the lists does not matter.
+     */
+    private static SimulatedRuntime.Player take(List<SimulatedRuntime.Player> players, int index) {
+        SimulatedRuntime.Player player = players.get(index);
+        int last = players.size() - 1;
+        players.set(index, players.get(last));
+        players.remove(last);
+        return player;
+    }
+
+    private long allocatedBytes() {
+        return threads.isThreadAllocatedMemoryEnabled() ? threads.getCurrentThreadAllocatedBytes() : 0L;
+    }
+
+    void clearStats() {
+        for (Kind kind : Kind.values()) {
+            stats.put(kind, new Samples());
+        }
+    }
+
+    void report(long events, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "%,d events over %,d ticks in %.2f s: %,.0f events/s%n",
+            events, tick, seconds, events / seconds);
+        System.out.printf(Locale.ROOT, "%,d records, %,d online, %,d messages%n",
+            runtime.state().size(), online.size(), runtime.messages());
+        System.out.printf(Locale.ROOT, "%-10s %12s %12s %10s %10s %10s %12s%n",
+            "event", "count", "events/s", "mean ns", "p50 ns", "p99 ns", "bytes/event");
+        for (Kind kind : Kind.values()) {
+            Samples samples = stats.get(kind);
+            if (samples.count() == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-10s %,12d %,12.0f %,10d %,10d %,10d %,12d%n",
+                kind.name().toLowerCase(Locale.ROOT),
+                samples.count(),
+                samples.perSecond(),
+                samples.meanNanos(),
+                samples.percentile(0.50),
+                samples.percentile(0.99),
+                samples.allocatedPerSample());
+        }
+    }
+}
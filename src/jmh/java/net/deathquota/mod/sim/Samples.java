@@ -0,0 +1,67 @@
+package net.deathquota.mod.sim;
+
+import java.util.Arrays;
+
+/**
+ * Every timing of one kind of work, kept whole so percentiles are exact,
+ * plus the bytes allocated doing it where the caller measures that.
+ */
+public final class Samples {
+    private long[] nanos = new long[1024];
+    private int count;
+    private long totalNanos;
+    private long allocated;
+    private boolean sorted = true;
+
+    public void record(long elapsedNanos) {
+        record(elapsedNanos, 0L);
+    }
+
+    public void record(long elapsedNanos, long allocatedBytes) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, count * 2);
+        }
+        nanos[count++] = elapsedNanos;
+        totalNanos += elapsedNanos;
+        allocated += allocatedBytes;
+        sorted = false;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    public long meanNanos() {
+        return count == 0 ? 0L : totalNanos / count;
+    }
+
+    public long allocatedPerSample() {
+        return count == 0 ? 0L : allocated / count;
+    }
+
+    /**
+     * Samples per second of the time spent in them.
+     */
+    public double perSecond() {
+        return totalNanos == 0 ? 0.0 : count / (totalNanos / 1e9);
+    }
+
+    /**
+     * The sample at {@code fraction} (0.99 for p99) by nearest rank.
+     */
+    public long percentile(double fraction) {
+        if (count == 0) {
+            return 0L;
+        }
+        if (!sorted) {
+            Arrays.sort(nanos, 0, count);
+            sorted = true;
+        }
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return nanos[Math.max(0, Math.min(index, count - 1))];
+    }
+}
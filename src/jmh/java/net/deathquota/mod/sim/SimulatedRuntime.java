@@ -0,0 +1,250 @@
+package net.deathquota.mod.sim;
+
+import net.deathquota.mod.death.DeathQuotaConfig;
+import net.deathquota.mod.death.DeathQuotaState;
+import net.deathquota.mod.death.DeathRecord;
+import net.deathquota.mod.death.QuotaRuntime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-memory {@link QuotaRuntime}: players are plain objects, messages are
+ * counted rather than sent, and tasks handed to {@link #execute} wait until
+ * {@link #runTasks()}, the way a server runs them after the current tick.
+ * The state and config are the real classes, constructed without a server,
+ * so they have no storage or journal behind them.
+ */
+public final class SimulatedRuntime implements QuotaRuntime<SimulatedRuntime.Player> {
+    private final DeathQuotaState state = new DeathQuotaState();
+    private final DeathQuotaConfig config = new DeathQuotaConfig();
+    private final Map<UUID, Player> online = new HashMap<>();
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private long worldTime;
+    private long messages;
+
+    public SimulatedRuntime(int maxLives) {
+        state.attachConfig(config);
+        config.setMaxLives(maxLives);
+    }
+
+    @Override
+    public DeathQuotaState state() {
+        return state;
+    }
+
+    @Override
+    public DeathQuotaConfig config() {
+        return config;
+    }
+
+    public void setOnline(Player player, boolean isOnline) {
+        if (isOnline) {
+            online.put(player.uuid, player);
+        } else {
+            online.remove(player.uuid);
+        }
+    }
+
+    public List<Player> onlinePlayers() {
+        return new ArrayList<>(online.values());
+    }
+
+    public void setWorldTime(long worldTime) {
+        this.worldTime = worldTime;
+    }
+
+    public long messages() {
+        return messages;
+    }
+
+    /**
+     * Runs the tasks queued so far, and any they queue in turn. Returns how many ran.
+     */
+    public int runTasks() {
+        int ran = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+            ran++;
+        }
+        return ran;
+    }
+
+    public boolean hasTasks() {
+        return !tasks.isEmpty();
+    }
+
+    @Override
+    public UUID uuid(Player player) {
+        return player.uuid;
+    }
+
+    @Override
+    public String name(Player player) {
+        return player.name;
+    }
+
+    @Override
+    public Player player(UUID uuid) {
+        return online.get(uuid);
+    }
+
+    @Override
+    public boolean isSpectator(Player player) {
+        return player.spectator;
+    }
+
+    @Override
+    public void makeSpectator(Player player) {
+        player.spectator = true;
+    }
+
+    @Override
+    public void teleport(Player player, int dimensionId, long packedPos, float yaw, float pitch) {
+        if (dimensionId >= 0) {
+            player.dimension = dimensionId;
+        }
+        player.pos = packedPos;
+        player.yaw = yaw;
+        player.pitch = pitch;
+    }
+
+    @Override
+    public void sendMessage(Player player, String message, boolean overlay) {
+        messages++;
+    }
+
+    @Override
+    public int dimension(Player player) {
+        return player.dimension;
+    }
+
+    @Override
+    public long blockPos(Player player) {
+        return player.pos;
+    }
+
+    @Override
+    public float yaw(Player player) {
+        return player.yaw;
+    }
+
+    @Override
+    public float pitch(Player player) {
+        return player.pitch;
+    }
+
+    @Override
+    public long worldTime(Player player) {
+        return worldTime;
+    }
+
+    @Override
+    public String team(Player player) {
+        return player.team;
+    }
+
+    @Override
+    public boolean isRecordBound(Player player) {
+        return player.bound;
+    }
+
+    @Override
+    public DeathRecord boundRecord(Player player) {
+        return player.record;
+    }
+
+    @Override
+    public void bindRecord(Player player, DeathRecord record) {
+        player.record = record;
+        player.bound = true;
+    }
+
+    @Override
+    public void unbindRecord(Player player) {
+        player.record = null;
+        player.bound = false;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * A simulated player: identity, where they stand and the cached record binding.
+     */
+    public static final class Player {
+        final UUID uuid;
+        final String name;
+        boolean online;
+        boolean dead;
+        boolean spectator;
+        int dimension;
+        long pos;
+        float yaw;
+        float pitch;
+        String team;
+        private boolean bound;
+        private DeathRecord record;
+
+        public Player(UUID uuid, String name) {
+            this.uuid = uuid;
+            this.name = name;
+        }
+
+        public UUID uuid() {
+            return uuid;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public boolean isOnline() {
+            return online;
+        }
+
+        public boolean isDead() {
+            return dead;
+        }
+
+        public boolean isSpectator() {
+            return spectator;
+        }
+
+        public void setOnline(boolean online) {
+            this.online = online;
+        }
+
+        public void setDead(boolean dead) {
+            this.dead = dead;
+        }
+
+        public void setSpectator(boolean spectator) {
+            this.spectator = spectator;
+        }
+
+        /**
+         * Puts the player on a scoreboard team, or on none with null.
+         */
+        public void setTeam(String team) {
+            this.team = team;
+        }
+
+        /**
+         * Moves the player, as if they walked there.
+         */
+        public void moveTo(int dimension, long pos, float yaw, float pitch) {
+            this.dimension = dimension;
+            this.pos = pos;
+            this.yaw = yaw;
+            this.pitch = pitch;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.deathquota.mod.command.DeathQuotaCommands;
 import net.deathquota.mod.death.DeathQuotaManager;
+import net.deathquota.mod.util.DeathQuotaMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +31,7 @@ public final class DeathQuotaMod implements DedicatedServerModInitializer, ModIn
         }
         initialized = true;
         DeathQuotaManager.registerEventHooks();
+        DeathQuotaMetrics.registerMBean();
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) ->
                 DeathQuotaCommands.register(dispatcher, registryAccess));
         LOGGER.info("Death Quota rules armed. Players have {} lives per world by default.", DEFAULT_MAX_DEATHS);
@@ -4,23 +4,49 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 import net.minecraft.command.CommandRegistryAccess;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.argument.IdentifierArgumentType;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+import net.deathquota.mod.death.BulkOperations;
 import net.deathquota.mod.death.DeathQuotaConfig;
 import net.deathquota.mod.death.DeathQuotaManager;
-import net.deathquota.mod.death.DeathQuotaState;
 import net.deathquota.mod.death.DeathRecord;
+import net.deathquota.mod.death.DimensionRegistry;
+import net.deathquota.mod.death.PoolMode;
+import net.deathquota.mod.death.QuotaTrace;
+import net.deathquota.mod.death.RecordListing;
+import net.deathquota.mod.death.StorageBackend;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
-import static net.minecraft.command.argument.EntityArgumentType.getPlayer;
-import static net.minecraft.command.argument.EntityArgumentType.player;
 import static com.mojang.brigadier.arguments.IntegerArgumentType.getInteger;
 import static com.mojang.brigadier.arguments.IntegerArgumentType.integer;
 
 public final class DeathQuotaCommands {
+    // Brigadier ships every suggestion to the client, so cap what one keystroke can send
+    private static final int MAX_NAME_SUGGESTIONS = 100;
+    private static final int DEFAULT_TOP = 10;
+    private static final int MAX_TOP = 100;
+    private static final SuggestionProvider<ServerCommandSource> KNOWN_PLAYERS = DeathQuotaCommands::suggestKnownPlayers;
+    private static final SuggestionProvider<ServerCommandSource> POOL_GROUPS = (ctx, builder) ->
+        CommandSource.suggestMatching(DeathQuotaManager.poolIds(ctx.getSource().getServer(), true), builder);
+    private static final SuggestionProvider<ServerCommandSource> POOLS = (ctx, builder) ->
+        CommandSource.suggestMatching(DeathQuotaManager.poolIds(ctx.getSource().getServer(), false), builder);
+
     private DeathQuotaCommands() {
     }
 
@@ -29,37 +55,263 @@ public final class DeathQuotaCommands {
             .executes(DeathQuotaCommands::selfInfo)
             .then(CommandManager.literal("info")
                 .requires(source -> source.hasPermissionLevel(2))
-                .then(CommandManager.argument("target", player())
-                    .executes(ctx -> infoAbout(ctx, getPlayer(ctx, "target")))))
+                .then(CommandManager.argument("target", StringArgumentType.word())
+                    .suggests(KNOWN_PLAYERS)
+                    .executes(ctx -> infoAbout(ctx, StringArgumentType.getString(ctx, "target")))))
+            .then(CommandManager.literal("top")
+                .executes(ctx -> showTop(ctx, DEFAULT_TOP))
+                .then(CommandManager.argument("n", integer(1, MAX_TOP))
+                    .executes(ctx -> showTop(ctx, getInteger(ctx, "n")))))
+            .then(CommandManager.literal("rank")
+                .executes(DeathQuotaCommands::selfRank)
+                .then(CommandManager.argument("target", StringArgumentType.word())
+                    .suggests(KNOWN_PLAYERS)
+                    .executes(ctx -> rankOf(ctx, StringArgumentType.getString(ctx, "target")))))
+            .then(CommandManager.literal("list")
+                .requires(source -> source.hasPermissionLevel(2))
+                .executes(ctx -> listRecords(ctx, "All records", RecordListing.Filter.deathsAtLeast(0), 1))
+                .then(CommandManager.literal("locked")
+                    .executes(ctx -> listRecords(ctx, "Locked", RecordListing.Filter.locked(), 1))
+                    .then(CommandManager.argument("page", integer(1))
+                        .executes(ctx -> listRecords(ctx, "Locked", RecordListing.Filter.locked(), getInteger(ctx, "page")))))
+                .then(CommandManager.literal("alive")
+                    .executes(ctx -> listRecords(ctx, "Alive", RecordListing.Filter.alive(), 1))
+                    .then(CommandManager.argument("page", integer(1))
+                        .executes(ctx -> listRecords(ctx, "Alive", RecordListing.Filter.alive(), getInteger(ctx, "page")))))
+                .then(CommandManager.literal("deaths")
+                    .then(CommandManager.argument("min", integer(0))
+                        .executes(ctx -> listByDeaths(ctx, getInteger(ctx, "min"), 1))
+                        .then(CommandManager.argument("page", integer(1))
+                            .executes(ctx -> listByDeaths(ctx, getInteger(ctx, "min"), getInteger(ctx, "page"))))))
+                .then(CommandManager.literal("dimension")
+                    .then(CommandManager.argument("id", IdentifierArgumentType.identifier())
+                        .suggests(DeathQuotaCommands::suggestDimensions)
+                        .executes(ctx -> listByDimension(ctx, IdentifierArgumentType.getIdentifier(ctx, "id"), 1))
+                        .then(CommandManager.argument("page", integer(1))
+                            .executes(ctx -> listByDimension(ctx, IdentifierArgumentType.getIdentifier(ctx, "id"),
+                                getInteger(ctx, "page")))))))
             .then(CommandManager.literal("deathmsg")
                 .requires(source -> source.hasPermissionLevel(2))
                 .then(CommandManager.argument("enabled", BoolArgumentType.bool())
                     .executes(ctx -> setDeathMessageForAll(ctx, BoolArgumentType.getBool(ctx, "enabled")))))
             .then(CommandManager.literal("reset")
                 .requires(source -> source.hasPermissionLevel(2))
-                .then(CommandManager.argument("target", player())
-                    .executes(ctx -> resetTarget(ctx, getPlayer(ctx, "target")))))
+                .then(CommandManager.argument("target", StringArgumentType.word())
+                    .suggests(KNOWN_PLAYERS)
+                    .executes(ctx -> resetTarget(ctx, StringArgumentType.getString(ctx, "target")))))
             .then(CommandManager.literal("resetall")
                 .requires(source -> source.hasPermissionLevel(2))
                 .executes(DeathQuotaCommands::resetAllPlayers))
             .then(CommandManager.literal("setmax")
                 .requires(source -> source.hasPermissionLevel(2))
                 .then(CommandManager.argument("value", integer(1, 99))
-                    .executes(ctx -> setMaxLives(ctx, getInteger(ctx, "value"))))));
+                    .executes(ctx -> setMaxLives(ctx, getInteger(ctx, "value")))))
+            .then(CommandManager.literal("cachesize")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(CommandManager.argument("records", integer(1))
+                    .executes(ctx -> setRecordCacheSize(ctx, getInteger(ctx, "records")))))
+            .then(CommandManager.literal("storage")
+                .requires(source -> source.hasPermissionLevel(2))
+                .executes(DeathQuotaCommands::showStorage)
+                .then(CommandManager.literal(StorageBackend.NBT.id())
+                    .executes(ctx -> setStorage(ctx, StorageBackend.NBT)))
+                .then(CommandManager.literal(StorageBackend.SQLITE.id())
+                    .executes(ctx -> setStorage(ctx, StorageBackend.SQLITE)))
+                .then(CommandManager.literal(StorageBackend.PLAYER.id())
+                    .executes(ctx -> setStorage(ctx, StorageBackend.PLAYER))))
+            .then(CommandManager.literal("pool")
+                .requires(source -> source.hasPermissionLevel(2))
+                .executes(DeathQuotaCommands::showPools)
+                .then(CommandManager.literal("mode")
+                    .then(CommandManager.literal(PoolMode.OFF.id())
+                        .executes(ctx -> setPoolMode(ctx, PoolMode.OFF)))
+                    .then(CommandManager.literal(PoolMode.SERVER.id())
+                        .executes(ctx -> setPoolMode(ctx, PoolMode.SERVER)))
+                    .then(CommandManager.literal(PoolMode.TEAM.id())
+                        .executes(ctx -> setPoolMode(ctx, PoolMode.TEAM)))
+                    .then(CommandManager.literal(PoolMode.GROUP.id())
+                        .executes(ctx -> setPoolMode(ctx, PoolMode.GROUP))))
+                .then(CommandManager.literal("lives")
+                    .then(CommandManager.argument("lives", integer(1))
+                        .executes(ctx -> setPoolLives(ctx, getInteger(ctx, "lives")))))
+                .then(CommandManager.literal("group")
+                    .then(CommandManager.argument("name", StringArgumentType.word())
+                        .suggests(POOL_GROUPS)
+                        .then(CommandManager.literal("create")
+                            .then(CommandManager.argument("lives", integer(1))
+                                .executes(ctx -> setPoolGroup(ctx, StringArgumentType.getString(ctx, "name"),
+                                    getInteger(ctx, "lives")))))
+                        .then(CommandManager.literal("delete")
+                            .executes(ctx -> deletePoolGroup(ctx, StringArgumentType.getString(ctx, "name"))))
+                        .then(CommandManager.literal("add")
+                            .then(CommandManager.argument("target", StringArgumentType.word())
+                                .suggests(KNOWN_PLAYERS)
+                                .executes(ctx -> addToPoolGroup(ctx, StringArgumentType.getString(ctx, "name"),
+                                    StringArgumentType.getString(ctx, "target")))))))
+                .then(CommandManager.literal("leave")
+                    .then(CommandManager.argument("target", StringArgumentType.word())
+                        .suggests(KNOWN_PLAYERS)
+                        .executes(ctx -> removeFromPoolGroup(ctx, StringArgumentType.getString(ctx, "target")))))
+                .then(CommandManager.literal("reset")
+                    .then(CommandManager.argument("pool", StringArgumentType.greedyString())
+                        .suggests(POOLS)
+                        .executes(ctx -> resetPool(ctx, StringArgumentType.getString(ctx, "pool"))))))
+            .then(CommandManager.literal("budget")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(CommandManager.argument("micros", integer(BulkOperations.MIN_BUDGET_MICROS, BulkOperations.MAX_BUDGET_MICROS))
+                    .executes(ctx -> setBulkBudget(ctx, getInteger(ctx, "micros")))))
+            .then(CommandManager.literal("cancel")
+                .requires(source -> source.hasPermissionLevel(2))
+                .executes(DeathQuotaCommands::cancelBulk))
+            .then(CommandManager.literal("stats")
+                .requires(source -> source.hasPermissionLevel(2))
+                .executes(DeathQuotaCommands::showStats))
+            .then(CommandManager.literal("trace")
+                .requires(source -> source.hasPermissionLevel(3))
+                .then(CommandManager.literal("start")
+                    .executes(DeathQuotaCommands::startTrace))
+                .then(CommandManager.literal("stop")
+                    .executes(DeathQuotaCommands::stopTrace))));
     }
 
     private static int selfInfo(CommandContext<ServerCommandSource> ctx) throws CommandSyntaxException {
         ServerPlayerEntity player = ctx.getSource().getPlayerOrThrow();
+        trace(ctx, QuotaTrace.Command.INFO, player.getUuid(), 0);
         ctx.getSource().sendFeedback(() -> DeathQuotaManager.describe(player), false);
         return 1;
     }
 
+    private static CompletableFuture<Suggestions> suggestKnownPlayers(CommandContext<ServerCommandSource> ctx,
+                                                                      SuggestionsBuilder builder) {
+        DeathQuotaManager.suggestPlayerNames(ctx.getSource().getServer(), builder.getRemaining(), MAX_NAME_SUGGESTIONS,
+            builder::suggest);
+        return builder.buildFuture();
+    }
+
+    private static int infoAbout(CommandContext<ServerCommandSource> ctx, String target) {
+        MinecraftServer server = ctx.getSource().getServer();
+        ServerPlayerEntity online = server.getPlayerManager().getPlayer(target);
+        if (online != null) {
+            return infoAbout(ctx, online);
+        }
+        UUID uuid = DeathQuotaManager.resolvePlayer(server, target);
+        if (uuid == null) {
+            ctx.getSource().sendError(Text.literal("Unknown player " + target));
+            return 0;
+        }
+        ServerPlayerEntity byUuid = server.getPlayerManager().getPlayer(uuid);
+        if (byUuid != null) {
+            return infoAbout(ctx, byUuid);
+        }
+        trace(ctx, QuotaTrace.Command.INFO, uuid, 0);
+        ctx.getSource().sendFeedback(() -> DeathQuotaManager.describeOffline(server, uuid, target), false);
+        return 1;
+    }
+
     private static int infoAbout(CommandContext<ServerCommandSource> ctx, ServerPlayerEntity target) {
+        trace(ctx, QuotaTrace.Command.INFO, target.getUuid(), 0);
         ctx.getSource().sendFeedback(() -> DeathQuotaManager.describe(target), false);
         return 1;
     }
 
+    private static int showTop(CommandContext<ServerCommandSource> ctx, int count) {
+        trace(ctx, QuotaTrace.Command.TOP, null, count);
+        List<Text> lines = DeathQuotaManager.describeTop(ctx.getSource().getServer(), count);
+        if (lines.isEmpty()) {
+            ctx.getSource().sendFeedback(() -> Text.literal("Nobody has died yet."), false);
+            return 0;
+        }
+        Text header = Text.literal("Most deaths:");
+        ctx.getSource().sendFeedback(() -> header, false);
+        for (Text line : lines) {
+            ctx.getSource().sendFeedback(() -> line, false);
+        }
+        return lines.size();
+    }
+
+    private static int selfRank(CommandContext<ServerCommandSource> ctx) throws CommandSyntaxException {
+        ServerPlayerEntity player = ctx.getSource().getPlayerOrThrow();
+        trace(ctx, QuotaTrace.Command.RANK, player.getUuid(), 0);
+        Text text = DeathQuotaManager.describeRank(ctx.getSource().getServer(), player.getUuid(), player.getName().getString());
+        ctx.getSource().sendFeedback(() -> text, false);
+        return 1;
+    }
+
+    private static int rankOf(CommandContext<ServerCommandSource> ctx, String target) {
+        MinecraftServer server = ctx.getSource().getServer();
+        ServerPlayerEntity online = server.getPlayerManager().getPlayer(target);
+        UUID uuid = online != null ? online.getUuid() : DeathQuotaManager.resolvePlayer(server, target);
+        if (uuid == null) {
+            ctx.getSource().sendError(Text.literal("Unknown player " + target));
+            return 0;
+        }
+        trace(ctx, QuotaTrace.Command.RANK, uuid, 0);
+        Text text = DeathQuotaManager.describeRank(server, uuid, online != null ? online.getName().getString() : target);
+        ctx.getSource().sendFeedback(() -> text, false);
+        return 1;
+    }
+
+    private static CompletableFuture<Suggestions> suggestDimensions(CommandContext<ServerCommandSource> ctx,
+                                                                    SuggestionsBuilder builder) {
+        return CommandSource.suggestIdentifiers(
+            ctx.getSource().getServer().getWorldRegistryKeys().stream().map(RegistryKey::getValue), builder);
+    }
+
+    private static int listByDeaths(CommandContext<ServerCommandSource> ctx, int min, int page) {
+        return listRecords(ctx, "At least " + min + " death(s)", RecordListing.Filter.deathsAtLeast(min), page);
+    }
+
+    private static int listByDimension(CommandContext<ServerCommandSource> ctx, Identifier dimension, int page) {
+        int id = DimensionRegistry.find(dimension.toString());
+        if (id == DimensionRegistry.NO_DIMENSION) {
+            ctx.getSource().sendError(Text.literal("Nobody has died in " + dimension + "."));
+            return 0;
+        }
+        return listRecords(ctx, "Last died in " + dimension, RecordListing.Filter.dimension(id), page);
+    }
+
+    private static int listRecords(CommandContext<ServerCommandSource> ctx, String title, RecordListing.Filter filter,
+                                   int page) {
+        DeathQuotaManager.traceList(ctx.getSource().getServer(), filter, page);
+        List<Text> lines = DeathQuotaManager.describeList(ctx.getSource().getServer(), ctx.getSource().getName(),
+            title, filter, page);
+        for (Text line : lines) {
+            ctx.getSource().sendFeedback(() -> line, false);
+        }
+        // The first line is the header
+        return lines.size() - 1;
+    }
+
+    private static int resetTarget(CommandContext<ServerCommandSource> ctx, String target) {
+        MinecraftServer server = ctx.getSource().getServer();
+        ServerPlayerEntity online = server.getPlayerManager().getPlayer(target);
+        if (online != null) {
+            return resetTarget(ctx, online);
+        }
+        UUID uuid = DeathQuotaManager.resolvePlayer(server, target);
+        if (uuid == null) {
+            ctx.getSource().sendError(Text.literal("Unknown player " + target));
+            return 0;
+        }
+        ServerPlayerEntity byUuid = server.getPlayerManager().getPlayer(uuid);
+        if (byUuid != null) {
+            return resetTarget(ctx, byUuid);
+        }
+        trace(ctx, QuotaTrace.Command.RESET, uuid, 0);
+        DeathQuotaManager.OfflineReset result = DeathQuotaManager.resetOffline(server, uuid);
+        if (result == DeathQuotaManager.OfflineReset.NO_RECORD) {
+            ctx.getSource().sendError(Text.literal(target + " has no death quota record to reset."));
+            return 0;
+        }
+        Text text = Text.literal(result == DeathQuotaManager.OfflineReset.ON_JOIN
+            ? "Death quota for " + target + " will be reset when they next join"
+            : "Reset death quota for " + target + " (offline, 0 deaths now)");
+        ctx.getSource().sendFeedback(() -> text, true);
+        return 1;
+    }
+
     private static int resetTarget(CommandContext<ServerCommandSource> ctx, ServerPlayerEntity target) {
+        trace(ctx, QuotaTrace.Command.RESET, target.getUuid(), 0);
         DeathRecord record = DeathQuotaManager.reset(target);
         Text text = Text.literal("Reset death quota for ").append(target.getDisplayName())
             .append(Text.literal(" (" + record.getDeathCount() + " deaths now)"));
@@ -69,38 +321,215 @@ public final class DeathQuotaCommands {
     }
 
     private static int resetAllPlayers(CommandContext<ServerCommandSource> ctx) {
-        int affected = DeathQuotaManager.resetAll(ctx.getSource().getServer());
-        Text feedback = Text.literal("Reset death quotas for " + affected + " stored player(s).");
-        ctx.getSource().sendFeedback(() -> feedback, true);
-        ctx.getSource().getServer().getPlayerManager().getPlayerList()
-                .forEach(player -> player.sendMessage(Text.literal("[Death Quota] An operator reset everyone's lives."), false));
-        return affected;
+        trace(ctx, QuotaTrace.Command.RESET_ALL, null, 0);
+        if (!DeathQuotaManager.resetAll(ctx.getSource().getServer(), ctx.getSource())) {
+            ctx.getSource().sendError(Text.literal("The server is still starting; try again in a moment."));
+            return 0;
+        }
+        return 1;
     }
 
     private static int setDeathMessageForAll(CommandContext<ServerCommandSource> ctx, boolean enabled) {
         MinecraftServer server = ctx.getSource().getServer();
+        trace(ctx, QuotaTrace.Command.DEATH_MESSAGES, null, enabled ? 1 : 0);
         DeathQuotaConfig config = DeathQuotaConfig.get(server);
         config.setShowDeathLocationMessages(enabled);
-        // Force immediate save to avoid singleplayer caching issues
-        server.getOverworld().getPersistentStateManager().save();
         Text feedback = Text.literal("Death location messages are now " + (enabled ? "enabled" : "disabled") + " globally.");
         ctx.getSource().sendFeedback(() -> feedback, true);
-        server.getPlayerManager().getPlayerList()
-                .forEach(player -> player.sendMessage(Text.literal("[Death Quota] Death location messages are now " + (enabled ? "enabled" : "disabled") + "."), false));
+        DeathQuotaManager.broadcast(server, ctx.getSource(), "deathmsg",
+                Text.literal("[Death Quota] Death location messages are now " + (enabled ? "enabled" : "disabled") + "."));
         return enabled ? 1 : 0;
     }
 
     private static int setMaxLives(CommandContext<ServerCommandSource> ctx, int value) {
-        ServerCommandSource source = ctx.getSource();
-        MinecraftServer server = source.getServer();
-        DeathQuotaConfig config = DeathQuotaConfig.get(server);
-        config.setMaxLives(value);
-        // Force immediate save to avoid singleplayer caching issues
-        server.getOverworld().getPersistentStateManager().save();
-        int changes = DeathQuotaState.get(server).reconcileLocks(config.getMaxLives());
-        server.getPlayerManager().getPlayerList().forEach(DeathQuotaManager::applyPostRespawnState);
-        Text feedback = Text.literal("Set max lives to " + config.getMaxLives() + ". Adjusted " + changes + " stored record(s).");
-        source.sendFeedback(() -> feedback, true);
-        return config.getMaxLives();
+        trace(ctx, QuotaTrace.Command.SET_MAX, null, value);
+        if (!DeathQuotaManager.setMaxLives(ctx.getSource().getServer(), ctx.getSource(), value)) {
+            ctx.getSource().sendError(Text.literal("The server is still starting; try again in a moment."));
+            return 0;
+        }
+        return value;
+    }
+
+    private static int setBulkBudget(CommandContext<ServerCommandSource> ctx, int micros) {
+        int applied = DeathQuotaManager.setBulkBudget(ctx.getSource().getServer(), micros);
+        Text feedback = Text.literal("Bulk commands may now use up to " + applied + " microseconds per tick.");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return applied;
+    }
+
+    private static int cancelBulk(CommandContext<ServerCommandSource> ctx) {
+        String cancelled = DeathQuotaManager.cancelBulk(ctx.getSource().getServer());
+        if (cancelled == null) {
+            ctx.getSource().sendError(Text.literal("No bulk command is running."));
+            return 0;
+        }
+        Text feedback = Text.literal("Cancelled " + cancelled + ".");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    private static int showStats(CommandContext<ServerCommandSource> ctx) {
+        List<Text> lines = DeathQuotaManager.describeStats(ctx.getSource().getServer());
+        for (Text line : lines) {
+            ctx.getSource().sendFeedback(() -> line, false);
+        }
+        return lines.size();
+    }
+
+    private static int setRecordCacheSize(CommandContext<ServerCommandSource> ctx, int records) {
+        int applied = DeathQuotaManager.setRecordCacheSize(ctx.getSource().getServer(), records);
+        Text feedback = Text.literal("Keeping up to " + applied + " offline player record(s) in memory.");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return applied;
+    }
+
+    private static int showStorage(CommandContext<ServerCommandSource> ctx) {
+        MinecraftServer server = ctx.getSource().getServer();
+        String active = DeathQuotaManager.activeStorage(server);
+        StorageBackend configured = DeathQuotaConfig.get(server).getStorage();
+        String text = "Death records are saved to " + active + ".";
+        if (!configured.id().equals(active)) {
+            text += " Switching to " + configured.id() + " on the next server start.";
+        }
+        Text feedback = Text.literal(text);
+        ctx.getSource().sendFeedback(() -> feedback, false);
+        return 1;
+    }
+
+    private static int setStorage(CommandContext<ServerCommandSource> ctx, StorageBackend backend) {
+        MinecraftServer server = ctx.getSource().getServer();
+        if (!backend.isAvailable()) {
+            ctx.getSource().sendError(Text.literal("The " + backend.id()
+                + " backend needs the SQLite JDBC driver (sqlite-jdbc) on the server's classpath."));
+            return 0;
+        }
+        DeathQuotaConfig.get(server).setStorage(backend);
+        Text feedback = backend.id().equals(DeathQuotaManager.activeStorage(server))
+            ? Text.literal("Death records stay in " + backend.id() + ".")
+            : Text.literal("Death records will move to " + backend.id() + " on the next server start.");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    private static int showPools(CommandContext<ServerCommandSource> ctx) {
+        List<Text> lines = DeathQuotaManager.describePools(ctx.getSource().getServer());
+        for (Text line : lines) {
+            ctx.getSource().sendFeedback(() -> line, false);
+        }
+        // The first line is the header
+        return lines.size() - 1;
+    }
+
+    private static int setPoolMode(CommandContext<ServerCommandSource> ctx, PoolMode mode) {
+        DeathQuotaManager.setPoolMode(ctx.getSource().getServer(), mode);
+        Text feedback = Text.literal("Life pools are now " + mode.id() + ".");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    private static int setPoolLives(CommandContext<ServerCommandSource> ctx, int lives) {
+        int applied = DeathQuotaManager.setPoolLives(ctx.getSource().getServer(), lives);
+        Text feedback = Text.literal("The server and team pools now have " + applied + " lives.");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return applied;
+    }
+
+    private static int setPoolGroup(CommandContext<ServerCommandSource> ctx, String group, int lives) {
+        if (!DeathQuotaManager.setPoolGroup(ctx.getSource().getServer(), group, lives)) {
+            ctx.getSource().sendError(Text.literal(group + " is reserved for the server pool."));
+            return 0;
+        }
+        Text feedback = Text.literal("Pool group " + group + " has " + lives + " lives.");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return lives;
+    }
+
+    private static int deletePoolGroup(CommandContext<ServerCommandSource> ctx, String group) {
+        if (!DeathQuotaManager.deletePoolGroup(ctx.getSource().getServer(), group)) {
+            ctx.getSource().sendError(Text.literal("No pool group named " + group + "."));
+            return 0;
+        }
+        Text feedback = Text.literal("Deleted pool group " + group + ".");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    private static int addToPoolGroup(CommandContext<ServerCommandSource> ctx, String group, String target) {
+        UUID uuid = resolveTarget(ctx, target);
+        if (uuid == null) {
+            return 0;
+        }
+        if (!DeathQuotaManager.addToPoolGroup(ctx.getSource().getServer(), group, uuid)) {
+            ctx.getSource().sendError(Text.literal("No pool group named " + group + "."));
+            return 0;
+        }
+        Text feedback = Text.literal("Added " + target + " to pool group " + group + ".");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    private static int removeFromPoolGroup(CommandContext<ServerCommandSource> ctx, String target) {
+        UUID uuid = resolveTarget(ctx, target);
+        if (uuid == null) {
+            return 0;
+        }
+        String group = DeathQuotaManager.removeFromPoolGroup(ctx.getSource().getServer(), uuid);
+        if (group == null) {
+            ctx.getSource().sendError(Text.literal(target + " is not in a pool group."));
+            return 0;
+        }
+        Text feedback = Text.literal("Removed " + target + " from pool group " + group + ".");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    private static int resetPool(CommandContext<ServerCommandSource> ctx, String pool) {
+        if (!DeathQuotaManager.resetPool(ctx.getSource().getServer(), pool)) {
+            ctx.getSource().sendError(Text.literal("No pool named " + pool + "."));
+            return 0;
+        }
+        Text feedback = Text.literal("Pool " + pool + " has all its lives back.");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    /**
+     * UUID of the online or known player {@code target}, or null after
+     * telling the source they are unknown.
+     */
+    private static UUID resolveTarget(CommandContext<ServerCommandSource> ctx, String target) {
+        MinecraftServer server = ctx.getSource().getServer();
+        ServerPlayerEntity online = server.getPlayerManager().getPlayer(target);
+        UUID uuid = online != null ? online.getUuid() : DeathQuotaManager.resolvePlayer(server, target);
+        if (uuid == null) {
+            ctx.getSource().sendError(Text.literal("Unknown player " + target));
+        }
+        return uuid;
+    }
+
+    private static int startTrace(CommandContext<ServerCommandSource> ctx) {
+        Path file = DeathQuotaManager.startTrace(ctx.getSource().getServer());
+        if (file == null) {
+            ctx.getSource().sendError(Text.literal("Could not start a trace; see the server log."));
+            return 0;
+        }
+        Text feedback = Text.literal("Recording death quota events to " + file.getFileName() + ".");
+        ctx.getSource().sendFeedback(() -> feedback, true);
+        return 1;
+    }
+
+    private static int stopTrace(CommandContext<ServerCommandSource> ctx) {
+        Text summary = DeathQuotaManager.stopTrace(ctx.getSource().getServer());
+        if (summary == null) {
+            ctx.getSource().sendError(Text.literal("No trace is being recorded."));
+            return 0;
+        }
+        ctx.getSource().sendFeedback(() -> summary, true);
+        return 1;
+    }
+
+    private static void trace(CommandContext<ServerCommandSource> ctx, QuotaTrace.Command command, UUID target,
+                              int argument) {
+        DeathQuotaManager.traceCommand(ctx.getSource().getServer(), command, target, argument);
     }
 }
@@ -0,0 +1,142 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.DeathQuotaMod;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link BulkTask}s at the end of each server tick within a fixed time
+ * budget, so a command touching every record or every online player spreads
+ * over as many ticks as it needs instead of stalling one.
+ *
+ * Tasks run one at a time, in the order they were submitted. At least one
+ * step runs per tick so a task always makes progress, however small the
+ * budget. Whoever submitted a task gets a progress line every couple of
+ * seconds while it runs and a summary when it finishes or is cancelled.
+ * Server thread only.
+ */
+public final class BulkOperations {
+    public static final int DEFAULT_BUDGET_MICROS = 2_000;
+    public static final int MIN_BUDGET_MICROS = 50;
+    // A tick is 50 ms; past this a bulk command would cost more than it saves
+    public static final int MAX_BUDGET_MICROS = 40_000;
+
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Deque<Running> queue = new ArrayDeque<>();
+    private Running current;
+    private long budgetNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_BUDGET_MICROS);
+
+    static int clampBudget(int micros) {
+        return Math.max(MIN_BUDGET_MICROS, Math.min(MAX_BUDGET_MICROS, micros));
+    }
+
+    void setBudgetMicros(int micros) {
+        budgetNanos = TimeUnit.MICROSECONDS.toNanos(clampBudget(micros));
+    }
+
+    /**
+     * Queues {@code task}, reporting to {@code source}. It starts on the next
+     * tick, or once the tasks ahead of it are done.
+     */
+    void submit(ServerCommandSource source, BulkTask task) {
+        if (current != null || !queue.isEmpty()) {
+            BulkTask ahead = current != null ? current.task : queue.peekLast().task;
+            Text queued = Text.literal("Queued " + task.name() + " behind " + ahead.name() + ".");
+            source.sendFeedback(() -> queued, false);
+        }
+        queue.add(new Running(source, task));
+    }
+
+    /**
+     * Cancels the running task, or the next queued one if none has started,
+     * and returns its name; null when there is nothing to cancel. Tasks run
+     * between ticks, so the cancelled task always stops at a step boundary.
+     * Tasks queued behind it still run.
+     */
+    public String cancel() {
+        if (current == null) {
+            Running next = queue.poll();
+            return next != null ? next.task.name() : null;
+        }
+        Running cancelled = current;
+        current = null;
+        finish(cancelled, true);
+        return cancelled.task.name();
+    }
+
+    public boolean isBusy() {
+        return current != null || !queue.isEmpty();
+    }
+
+    void tick() {
+        if (current == null && queue.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        long deadline = started + budgetNanos;
+        do {
+            if (current == null) {
+                current = queue.poll();
+                if (current == null) {
+                    return;
+                }
+                current.lastReport = started;
+                current.task.start();
+            }
+            if (!current.task.step()) {
+                Running done = current;
+                current = null;
+                finish(done, false);
+            }
+        } while (System.nanoTime() < deadline);
+        if (current != null && System.nanoTime() - current.lastReport >= PROGRESS_INTERVAL_NANOS) {
+            current.lastReport = System.nanoTime();
+            reportProgress(current);
+        }
+    }
+
+    /**
+     * Cancels everything on shutdown. Whatever already ran stays applied.
+     */
+    void close() {
+        if (current != null) {
+            BulkTask task = current.task;
+            DeathQuotaMod.LOGGER.warn("Server stopped during {} ({}/{} {}), the rest was not applied",
+                task.name(), task.done(), task.total(), task.unit());
+            finish(current, true);
+            current = null;
+        }
+        queue.clear();
+    }
+
+    private static void reportProgress(Running running) {
+        BulkTask task = running.task;
+        int percent = task.total() == 0 ? 100 : (int) (100L * task.done() / task.total());
+        Text progress = Text.literal("[Death Quota] " + task.name() + ": " + percent + "% ("
+            + task.done() + "/" + task.total() + " " + task.unit() + ")");
+        running.source.sendFeedback(() -> progress, false);
+    }
+
+    private static void finish(Running running, boolean cancelled) {
+        Text summary = running.task.finish(cancelled);
+        if (summary != null) {
+            running.source.sendFeedback(() -> summary, true);
+        }
+    }
+
+    private static final class Running {
+        private final ServerCommandSource source;
+        private final BulkTask task;
+        private long lastReport;
+
+        private Running(ServerCommandSource source, BulkTask task) {
+            this.source = source;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package net.deathquota.mod.death;
+
+import net.minecraft.text.Text;
+
+/**
+ * One admin operation split into steps small enough to run a few per tick.
+ *
+ * {@link BulkOperations} calls {@link #start()} on the tick the task reaches
+ * the front of the queue, then {@link #step()} until it reports nothing is
+ * left or the task is cancelled, and finally {@link #finish(boolean)}. All
+ * calls happen on the server thread. Every step must leave the records in a
+ * state that is safe to save, since a save can run between any two steps.
+ */
+abstract class BulkTask {
+    private final String name;
+
+    BulkTask(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Short label used in progress and queue messages, e.g. "reset-all".
+     */
+    String name() {
+        return name;
+    }
+
+    void start() {
+    }
+
+    /**
+     * Runs one bounded unit of work. Returns false once the task is done.
+     */
+    abstract boolean step();
+
+    abstract int done();
+
+    abstract int total();
+
+    /**
+     * Unit {@link #done()} and {@link #total()} are counted in, e.g. "shards".
+     */
+    abstract String unit();
+
+    /**
+     * Closes the task and returns the line reported to whoever started it, or
+     * null for none. {@code cancelled} is true when it stopped before its last step.
+     */
+    abstract Text finish(boolean cancelled);
+}
@@ -0,0 +1,229 @@
+package net.deathquota.mod.death;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link BulkTask}s behind the admin commands.
+ */
+final class BulkTasks {
+    private BulkTasks() {
+    }
+
+    /**
+     * Resets every record, {@link #RESET_CHUNK} records of a shard per step,
+     * then tells each online player one per step. Stopping part way finishes
+     * the shard being reset, so whole shards are reset; see
+     * {@link DeathQuotaState#beginResetAll()}.
+     */
+    static final class ResetAll extends BulkTask {
+        // Records reset per step, so a step stays well inside the tick budget however large a shard grows
+        static final int RESET_CHUNK = 256;
+
+        private final MinecraftServer server;
+        private final DeathQuotaState state;
+        private int shard;
+        private int reset;
+        private List<ServerPlayerEntity> players;
+        private int notified;
+
+        ResetAll(MinecraftServer server, DeathQuotaState state) {
+            super("reset-all");
+            this.server = server;
+            this.state = state;
+        }
+
+        @Override
+        void start() {
+            // Records kept with offline players' data are reset as each of them joins
+            reset += state.beginResetAll();
+        }
+
+        @Override
+        boolean step() {
+            if (shard < DeathRecordStore.SHARD_COUNT) {
+                if (!state.isResettingShard()) {
+                    state.beginResetShard(shard);
+                }
+                reset += state.resetShardChunk(RESET_CHUNK);
+                if (!state.isResettingShard() && ++shard == DeathRecordStore.SHARD_COUNT) {
+                    state.endResetAll();
+                    players = new ArrayList<>(server.getPlayerManager().getPlayerList());
+                }
+                return true;
+            }
+            if (notified < players.size()) {
+                ServerPlayerEntity player = players.get(notified++);
+                if (!player.isDisconnected()) {
+                    ((DeathQuotaPlayer) player).deathQuota$unbindRecord();
+                    player.sendMessage(Text.literal("[Death Quota] An operator reset everyone's lives."), false);
+                }
+            }
+            return notified < players.size();
+        }
+
+        @Override
+        int done() {
+            return shard;
+        }
+
+        @Override
+        int total() {
+            return DeathRecordStore.SHARD_COUNT;
+        }
+
+        @Override
+        String unit() {
+            return "shards";
+        }
+
+        @Override
+        Text finish(boolean cancelled) {
+            if (shard < DeathRecordStore.SHARD_COUNT) {
+                if (state.isResettingShard()) {
+                    // Its reset is already journaled as a whole
+                    reset += state.resetShardChunk(Integer.MAX_VALUE);
+                    shard++;
+                }
+                state.endResetAll();
+                return Text.literal("Cancelled reset-all after " + shard + "/" + DeathRecordStore.SHARD_COUNT
+                    + " shards; " + reset + " stored player(s) were reset, the rest keep their deaths.");
+            }
+            return Text.literal("Reset death quotas for " + reset + " stored player(s).");
+        }
+    }
+
+    /**
+     * Applies a new max lives. The lock change itself is one histogram sum;
+     * the steps re-apply respawn state to online players whose lock flipped,
+     * one per step, since that can mean a game-mode change and a teleport.
+     */
+    static final class MaxLives extends BulkTask {
+        private final MinecraftServer server;
+        private final int maxLives;
+        private final List<ServerPlayerEntity> flipped = new ArrayList<>();
+        private int changes;
+        private int applied;
+
+        MaxLives(MinecraftServer server, int maxLives) {
+            super("setmax");
+            this.server = server;
+            this.maxLives = maxLives;
+        }
+
+        @Override
+        void start() {
+            List<ServerPlayerEntity> players = server.getPlayerManager().getPlayerList();
+            boolean[] wasLocked = new boolean[players.size()];
+            for (int i = 0; i < wasLocked.length; i++) {
+                wasLocked[i] = DeathQuotaManager.isSpectatorLocked(players.get(i));
+            }
+            DeathQuotaConfig config = DeathQuotaConfig.get(server);
+            int previous = config.getMaxLives();
+            config.setMaxLives(maxLives);
+            changes = DeathQuotaState.get(server).lockChanges(previous, config.getMaxLives());
+            if (changes == 0) {
+                return;
+            }
+            for (int i = 0; i < wasLocked.length; i++) {
+                ServerPlayerEntity player = players.get(i);
+                if (DeathQuotaManager.isSpectatorLocked(player) != wasLocked[i]) {
+                    flipped.add(player);
+                }
+            }
+        }
+
+        @Override
+        boolean step() {
+            if (applied < flipped.size()) {
+                ServerPlayerEntity player = flipped.get(applied++);
+                if (!player.isDisconnected()) {
+                    DeathQuotaManager.applyPostRespawnState(player);
+                }
+            }
+            return applied < flipped.size();
+        }
+
+        @Override
+        int done() {
+            return applied;
+        }
+
+        @Override
+        int total() {
+            return flipped.size();
+        }
+
+        @Override
+        String unit() {
+            return "players";
+        }
+
+        @Override
+        Text finish(boolean cancelled) {
+            String summary = "Set max lives to " + DeathQuotaConfig.get(server).getMaxLives() + ". Adjusted "
+                + changes + " stored record(s).";
+            if (cancelled) {
+                summary += " Stopped updating online players after " + applied + "/" + flipped.size()
+                    + "; the rest catch up on respawn.";
+            }
+            return Text.literal(summary);
+        }
+    }
+
+    /**
+     * Sends one message to everyone online, one player per step.
+     */
+    static final class Broadcast extends BulkTask {
+        private final MinecraftServer server;
+        private final Text message;
+        private List<ServerPlayerEntity> players = List.of();
+        private int sent;
+
+        Broadcast(MinecraftServer server, String name, Text message) {
+            super(name);
+            this.server = server;
+            this.message = message;
+        }
+
+        @Override
+        void start() {
+            players = new ArrayList<>(server.getPlayerManager().getPlayerList());
+        }
+
+        @Override
+        boolean step() {
+            if (sent < players.size()) {
+                ServerPlayerEntity player = players.get(sent++);
+                if (!player.isDisconnected()) {
+                    player.sendMessage(message, false);
+                }
+            }
+            return sent < players.size();
+        }
+
+        @Override
+        int done() {
+            return sent;
+        }
+
+        @Override
+        int total() {
+            return players.size();
+        }
+
+        @Override
+        String unit() {
+            return "players";
+        }
+
+        @Override
+        Text finish(boolean cancelled) {
+            return null;
+        }
+    }
+}
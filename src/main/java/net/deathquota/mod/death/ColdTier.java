@@ -0,0 +1,197 @@
+package net.deathquota.mod.death;
+
+import java.util.Arrays;
+
+/**
+ * Cold columns of a {@link DeathRecordStore}: last death position, rotation
+ * and message, one entry per record whose cold columns are resident.
+ *
+ * Entries are linked into an LRU list (head = most recently used) so the
+ * store can walk up from the least recently used one when it trims the tier
+ * back under its limit. Freed entries are reused before the table grows. The
+ * tier knows which slot owns each entry but nothing about pins or shards;
+ * the store decides what may be dropped. Server thread only.
+ */
+final class ColdTier {
+    static final int DEFAULT_LIMIT = 4096;
+
+    private int[] owners;
+    private long[] positions;
+    private float[] yaws;
+    private float[] pitches;
+    private String[] messages;
+    private int[] lruPrev;
+    private int[] lruNext;
+    private int lruHead = -1;
+    private int lruTail = -1;
+    private int count;
+    private int highWater;
+    private int[] free = new int[0];
+    private int freeCount;
+    private int limit = DEFAULT_LIMIT;
+
+    ColdTier(int capacity) {
+        owners = new int[capacity];
+        positions = new long[capacity];
+        yaws = new float[capacity];
+        pitches = new float[capacity];
+        messages = new String[capacity];
+        lruPrev = new int[capacity];
+        lruNext = new int[capacity];
+    }
+
+    /**
+     * Number of resident entries.
+     */
+    int count() {
+        return count;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    void setLimit(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    boolean overLimit() {
+        return count > limit;
+    }
+
+    int owner(int entry) {
+        return owners[entry];
+    }
+
+    /**
+     * Entry used least recently, or -1 when the tier is empty.
+     */
+    int leastRecent() {
+        return lruTail;
+    }
+
+    /**
+     * Entry used just more recently than {@code entry}, or -1 when it is the most recent.
+     */
+    int moreRecent(int entry) {
+        return lruPrev[entry];
+    }
+
+    /**
+     * Takes an entry for {@code slot} as the most recently used one. Its
+     * columns hold whatever the entry last held; clear or fill them.
+     */
+    int allocate(int slot) {
+        int entry;
+        if (freeCount > 0) {
+            entry = free[--freeCount];
+        } else {
+            if (highWater == owners.length) {
+                grow(owners.length * 2);
+            }
+            entry = highWater++;
+        }
+        owners[entry] = slot;
+        link(entry);
+        count++;
+        return entry;
+    }
+
+    void release(int entry) {
+        unlink(entry);
+        clear(entry);
+        owners[entry] = -1;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.max(8, freeCount * 2));
+        }
+        free[freeCount++] = entry;
+        count--;
+    }
+
+    /**
+     * Marks {@code entry} as the most recently used.
+     */
+    void touch(int entry) {
+        if (lruHead == entry) {
+            return;
+        }
+        unlink(entry);
+        link(entry);
+    }
+
+    void clear(int entry) {
+        positions[entry] = 0L;
+        yaws[entry] = 0f;
+        pitches[entry] = 0f;
+        messages[entry] = null;
+    }
+
+    long position(int entry) {
+        return positions[entry];
+    }
+
+    void setPosition(int entry, long position) {
+        positions[entry] = position;
+    }
+
+    float yaw(int entry) {
+        return yaws[entry];
+    }
+
+    void setYaw(int entry, float yaw) {
+        yaws[entry] = yaw;
+    }
+
+    float pitch(int entry) {
+        return pitches[entry];
+    }
+
+    void setPitch(int entry, float pitch) {
+        pitches[entry] = pitch;
+    }
+
+    String message(int entry) {
+        return messages[entry];
+    }
+
+    void setMessage(int entry, String message) {
+        messages[entry] = message;
+    }
+
+    private void link(int entry) {
+        lruPrev[entry] = -1;
+        lruNext[entry] = lruHead;
+        if (lruHead >= 0) {
+            lruPrev[lruHead] = entry;
+        }
+        lruHead = entry;
+        if (lruTail < 0) {
+            lruTail = entry;
+        }
+    }
+
+    private void unlink(int entry) {
+        int prev = lruPrev[entry];
+        int next = lruNext[entry];
+        if (prev >= 0) {
+            lruNext[prev] = next;
+        } else {
+            lruHead = next;
+        }
+        if (next >= 0) {
+            lruPrev[next] = prev;
+        } else {
+            lruTail = prev;
+        }
+    }
+
+    private void grow(int capacity) {
+        owners = Arrays.copyOf(owners, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        yaws = Arrays.copyOf(yaws, capacity);
+        pitches = Arrays.copyOf(pitches, capacity);
+        messages = Arrays.copyOf(messages, capacity);
+        lruPrev = Arrays.copyOf(lruPrev, capacity);
+        lruNext = Arrays.copyOf(lruNext, capacity);
+    }
+}
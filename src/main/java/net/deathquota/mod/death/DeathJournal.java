@@ -0,0 +1,576 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.util.DeathQuotaMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of quota mutations kept next to the record shards.
+ *
+ * The server thread encodes entries and queues them; a single writer thread
+ * drains whatever has queued up, appends it and fsyncs once per batch, so a
+ * tick's worth of deaths costs one sync rather than one per entry. Record
+ * changes are logged as images of every loaded column, which makes replay idempotent:
+ * replaying a segment the snapshot already covers lands on the same state.
+ *
+ * The log is split into numbered segments. Every snapshot rotates to a new
+ * segment (seeded with the current config), and once the snapshot is on disk
+ * the segments before it are deleted. On startup all remaining segments are
+ * replayed, in order, on top of the loaded shards.
+ *
+ * Life pools ride along when the journal is given them: each change is
+ * logged as the new value, and each segment is seeded with every pool.
+ *
+ * Each entry is framed as length, CRC32 and payload; replay stops at the
+ * first torn or corrupt entry of a segment. An append that fails part way is
+ * cut back out of the segment, and the failure is counted and reported to the
+ * state, which then saves every shard so nothing rests on the lost entries.
+ */
+final class DeathJournal {
+    private static final byte OP_RECORD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_RESET_SHARD = 3;
+    private static final byte OP_MAX_LIVES = 4;
+    private static final byte OP_DEATH_MESSAGES = 5;
+    // Life pools, each entry an absolute value so replaying one twice changes nothing
+    private static final byte OP_POOLS_CLEAR = 6;
+    private static final byte OP_POOL_MODE = 7;
+    private static final byte OP_POOL_LIVES = 8;
+    private static final byte OP_POOL = 9;
+    private static final byte OP_POOL_DELETE = 10;
+    private static final byte OP_POOL_MEMBER = 11;
+
+    // Largest legitimate entry is a record image with a long death message
+    private static final int MAX_ENTRY_BYTES = 1 << 18;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal_(\\d+)\\.log");
+    private static final Object CLOSE = new Object();
+
+    private final Path directory;
+    private final DeathQuotaConfig config;
+    private final LifePools pools;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private long segment;
+    private Thread writer;
+    // Set by the writer when an append failed, so entries after it may not survive a crash
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    DeathJournal(Path directory, DeathQuotaConfig config) {
+        this(directory, config, null);
+    }
+
+    /**
+     * Journal that also logs and replays {@code pools}, which may be null for
+     * a journal that only carries records and config.
+     */
+    DeathJournal(Path directory, DeathQuotaConfig config, LifePools pools) {
+        this.directory = directory;
+        this.config = config;
+        this.pools = pools;
+    }
+
+    /**
+     * Replays every segment on disk into {@code store} and the config, then
+     * starts the writer on a fresh segment. Returns the number of entries applied.
+     */
+    int open(DeathRecordStore store) {
+        List<Long> segments = segments();
+        int applied = 0;
+        for (long id : segments) {
+            applied += replay(segmentFile(id), store);
+        }
+        segment = segments.isEmpty() ? 0L : segments.get(segments.size() - 1) + 1;
+        if (applied > 0) {
+            DeathQuotaMod.LOGGER.info("Replayed {} death quota journal entries from {} segment(s)", applied, segments.size());
+        }
+        writer = new Thread(new Writer(segment), "Death Quota Journal");
+        writer.setDaemon(true);
+        writer.start();
+        appendConfig();
+        return applied;
+    }
+
+    /**
+     * Replays every segment on disk into {@code store} and the config without
+     * starting the writer, for a world whose records are leaving the journal
+     * behind. Returns the number of entries applied.
+     */
+    int replayOnly(DeathRecordStore store) {
+        int applied = 0;
+        for (long id : segments()) {
+            applied += replay(segmentFile(id), store);
+        }
+        return applied;
+    }
+
+    /**
+     * Deletes every segment on disk. Only while the writer is not running, and
+     * once what the segments hold has been saved elsewhere.
+     */
+    void deleteSegments() {
+        for (long id : segments()) {
+            try {
+                Files.deleteIfExists(segmentFile(id));
+            } catch (IOException e) {
+                DeathQuotaMod.LOGGER.warn("Failed to delete death quota journal segment {}", segmentFile(id), e);
+            }
+        }
+    }
+
+    void appendRecord(DeathRecordStore store, int slot) {
+        try {
+            out.writeByte(OP_RECORD);
+            store.writeImage(out, slot);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    void appendRemove(UUID uuid) {
+        try {
+            out.writeByte(OP_REMOVE);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    void appendResetShard(int shard) {
+        try {
+            out.writeByte(OP_RESET_SHARD);
+            out.writeByte(shard);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    void appendMaxLives(int maxLives) {
+        try {
+            out.writeByte(OP_MAX_LIVES);
+            out.writeInt(maxLives);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    void appendDeathMessages(boolean enabled) {
+        try {
+            out.writeByte(OP_DEATH_MESSAGES);
+            out.writeBoolean(enabled);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    void appendPoolMode(PoolMode mode) {
+        try {
+            out.writeByte(OP_POOL_MODE);
+            out.writeUTF(mode.id());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    void appendPoolLives(int lives) {
+        try {
+            out.writeByte(OP_POOL_LIVES);
+            out.writeInt(lives);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    /**
+     * Logs a pool's lives and deaths as they are now, creating it on replay if needed.
+     */
+    void appendPool(LifePools.Pool pool) {
+        try {
+            out.writeByte(OP_POOL);
+            out.writeUTF(pool.id);
+            out.writeInt(pool.lives());
+            out.writeInt(pool.deaths());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    void appendPoolDelete(String id) {
+        try {
+            out.writeByte(OP_POOL_DELETE);
+            out.writeUTF(id);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    /**
+     * Logs that {@code uuid} is now in the custom group {@code group}, or in none when it is null.
+     */
+    void appendPoolMember(UUID uuid, String group) {
+        try {
+            out.writeByte(OP_POOL_MEMBER);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            out.writeUTF(group != null ? group : "");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+    }
+
+    /**
+     * True, once, after the writer failed to append an entry. What the journal
+     * holds may then be short of what the server has, until a save of every
+     * shard covers it again.
+     */
+    boolean takeFailure() {
+        return failed.getAndSet(false);
+    }
+
+    /**
+     * Switches to a new segment and returns the id of the one just closed.
+     * Everything appended before this call lives in segments up to that id.
+     */
+    long rotate() {
+        long closed = segment++;
+        queue.add(new Rotate(segment));
+        appendConfig();
+        return closed;
+    }
+
+    /**
+     * Deletes segments up to and including {@code segmentId} once the writer
+     * reaches this point. Call only after a snapshot covering them is on disk.
+     */
+    void compactThrough(long segmentId) {
+        queue.add(new Compact(segmentId));
+    }
+
+    /**
+     * Flushes queued entries and stops the writer thread.
+     */
+    void close() {
+        if (writer == null) {
+            return;
+        }
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    private void appendConfig() {
+        // Seeds each segment so config changes survive compaction even before the config file is written
+        appendMaxLives(config.getMaxLives());
+        appendDeathMessages(config.isShowDeathLocationMessages());
+        if (pools != null) {
+            appendPools();
+        }
+    }
+
+    /**
+     * Seeds the segment with every pool, since pools are saved with the state
+     * file on its own schedule and compaction must not drop changes it has
+     * not written yet. Replay starts over from this copy.
+     */
+    private void appendPools() {
+        try {
+            out.writeByte(OP_POOLS_CLEAR);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        submit();
+        appendPoolMode(pools.mode());
+        appendPoolLives(pools.lives());
+        for (LifePools.Pool pool : pools.pools()) {
+            appendPool(pool);
+            for (UUID member : pool.members()) {
+                appendPoolMember(member, pool.id);
+            }
+        }
+    }
+
+    private void submit() {
+        queue.add(buffer.toByteArray());
+        buffer.reset();
+    }
+
+    private int replay(Path file, DeathRecordStore store) {
+        int applied = 0;
+        CRC32 crc = new CRC32();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_ENTRY_BYTES) {
+                    DeathQuotaMod.LOGGER.warn("Stopping replay of {} at an entry of invalid length {}", file, length);
+                    break;
+                }
+                int checksum = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    DeathQuotaMod.LOGGER.warn("Stopping replay of {} at a corrupt entry", file);
+                    break;
+                }
+                apply(payload, store);
+                applied++;
+            }
+        } catch (EOFException e) {
+            DeathQuotaMod.LOGGER.warn("Ignoring torn entry at the end of {}", file);
+        } catch (IOException | RuntimeException e) {
+            DeathQuotaMod.LOGGER.error("Failed to replay death quota journal {}", file, e);
+        }
+        return applied;
+    }
+
+    private void apply(byte[] payload, DeathRecordStore store) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        switch (op) {
+            case OP_RECORD -> store.changed(store.readImage(in));
+            case OP_REMOVE -> store.remove(new UUID(in.readLong(), in.readLong()));
+            case OP_RESET_SHARD -> store.resetShard(in.readUnsignedByte());
+            case OP_MAX_LIVES -> config.setMaxLives(in.readInt());
+            case OP_DEATH_MESSAGES -> config.setShowDeathLocationMessages(in.readBoolean());
+            case OP_POOLS_CLEAR, OP_POOL_MODE, OP_POOL_LIVES, OP_POOL, OP_POOL_DELETE, OP_POOL_MEMBER -> {
+                if (pools != null) {
+                    applyPool(op, in);
+                }
+            }
+            default -> throw new IOException("Unknown journal op " + op);
+        }
+    }
+
+    private void applyPool(byte op, DataInputStream in) throws IOException {
+        switch (op) {
+            case OP_POOLS_CLEAR -> pools.clear();
+            case OP_POOL_MODE -> pools.setMode(PoolMode.byId(in.readUTF()));
+            case OP_POOL_LIVES -> pools.setLives(in.readInt());
+            case OP_POOL -> pools.restorePool(in.readUTF(), in.readInt(), in.readInt());
+            case OP_POOL_DELETE -> pools.deleteGroup(in.readUTF());
+            case OP_POOL_MEMBER -> {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                String group = in.readUTF();
+                if (group.isEmpty()) {
+                    pools.removeMember(uuid);
+                } else {
+                    pools.addMember(group, uuid);
+                }
+            }
+            default -> throw new IOException("Unknown journal op " + op);
+        }
+    }
+
+    private List<Long> segments() {
+        List<Long> ids = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return ids;
+        }
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    ids.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.error("Failed to list death quota journal segments in {}", directory, e);
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private Path segmentFile(long id) {
+        return directory.resolve(String.format(Locale.ROOT, "journal_%010d.log", id));
+    }
+
+    private record Rotate(long segment) {
+    }
+
+    private record Compact(long throughSegment) {
+    }
+
+    /**
+     * Owns the open segment. Runs until it drains {@link #CLOSE}.
+     */
+    private final class Writer implements Runnable {
+        private final CRC32 crc = new CRC32();
+        private final List<Object> batch = new ArrayList<>();
+        private long segmentId;
+        private FileChannel channel;
+        // A frame could not be cut back out of the segment; later entries wait for the next one
+        private boolean broken;
+
+        private Writer(long segmentId) {
+            this.segmentId = segmentId;
+        }
+
+        @Override
+        public void run() {
+            boolean running = true;
+            while (running) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(batch);
+                boolean wrote = false;
+                for (Object item : batch) {
+                    if (item instanceof byte[] payload) {
+                        wrote |= write(payload);
+                    } else if (item instanceof Rotate rotate) {
+                        sync(wrote);
+                        wrote = false;
+                        closeChannel();
+                        broken = false;
+                        segmentId = rotate.segment();
+                    } else if (item instanceof Compact compact) {
+                        deleteThrough(compact.throughSegment());
+                    } else if (item == CLOSE) {
+                        running = false;
+                    }
+                }
+                sync(wrote);
+                batch.clear();
+            }
+            closeChannel();
+        }
+
+        private boolean write(byte[] payload) {
+            if (broken) {
+                // Already reported; the full save the failure forces covers what is dropped here
+                return false;
+            }
+            long start = -1L;
+            try {
+                if (channel == null) {
+                    Files.createDirectories(directory);
+                    channel = FileChannel.open(segmentFile(segmentId), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    // The segment's entries are only durable once its name is
+                    ShardedRecordStorage.syncDirectory(directory);
+                }
+                start = channel.size();
+                crc.reset();
+                crc.update(payload);
+                ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+                frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+                return true;
+            } catch (IOException e) {
+                DeathQuotaMod.LOGGER.error("Failed to append to death quota journal", e);
+                cutBack(start);
+                fail();
+                return false;
+            }
+        }
+
+        /**
+         * Drops the part of a frame that made it into the segment, since replay
+         * stops at it and would lose every entry appended after. When that
+         * fails too the segment takes no more entries until the next rotate.
+         */
+        private void cutBack(long start) {
+            if (channel == null || start < 0L) {
+                return;
+            }
+            try {
+                channel.truncate(start);
+            } catch (IOException e) {
+                DeathQuotaMod.LOGGER.error("Failed to cut a torn entry out of death quota journal segment {}",
+                    segmentFile(segmentId), e);
+                closeChannel();
+                broken = true;
+            }
+        }
+
+        private void fail() {
+            DeathQuotaMetrics.JOURNAL_FAILURES.increment();
+            failed.set(true);
+        }
+
+        private void sync(boolean wrote) {
+            if (wrote && channel != null) {
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    DeathQuotaMod.LOGGER.error("Failed to sync death quota journal", e);
+                    fail();
+                }
+            }
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    DeathQuotaMod.LOGGER.error("Failed to close death quota journal segment", e);
+                }
+                channel = null;
+            }
+        }
+
+        private void deleteThrough(long throughSegment) {
+            for (long id : segments()) {
+                if (id > throughSegment || id == segmentId) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(segmentFile(id));
+                } catch (IOException e) {
+                    DeathQuotaMod.LOGGER.warn("Failed to delete compacted journal segment {}", segmentFile(id), e);
+                }
+            }
+        }
+    }
+}
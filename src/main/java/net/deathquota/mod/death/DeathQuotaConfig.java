@@ -22,34 +22,48 @@ public final class DeathQuotaConfig extends PersistentState {
                     Codec.INT.optionalFieldOf("maxLives", DeathQuotaMod.DEFAULT_MAX_DEATHS)
                             .forGetter(config -> config.maxLives),
                     Codec.BOOL.optionalFieldOf("showDeathLocationMessages", true)
-                            .forGetter(config -> config.showDeathLocationMessages)
+                            .forGetter(config -> config.showDeathLocationMessages),
+                    Codec.INT.optionalFieldOf("recordCacheSize", DeathRecordStore.DEFAULT_COLD_LIMIT)
+                            .forGetter(config -> config.recordCacheSize),
+                    Codec.INT.optionalFieldOf("bulkBudgetMicros", BulkOperations.DEFAULT_BUDGET_MICROS)
+                            .forGetter(config -> config.bulkBudgetMicros),
+                    StorageBackend.CODEC.optionalFieldOf("storage", StorageBackend.NBT)
+                            .forGetter(config -> config.storage)
             ).apply(instance, DeathQuotaConfig::fromValues)
     );
 
-    // Cross-version compatible state type - uses reflection to handle API differences
-    private static final Object STATE_TYPE = PersistentStateCompat.createType(
-        STORAGE_KEY,
-        DeathQuotaConfig::new,
-        DeathQuotaConfig::readFromNbt,
-        CODEC,
-        DataFixTypeCompat.persistentDataType()
-    );
-
     private int maxLives = DeathQuotaMod.DEFAULT_MAX_DEATHS;
     private boolean showDeathLocationMessages = true;
+    private int recordCacheSize = DeathRecordStore.DEFAULT_COLD_LIMIT;
+    private int bulkBudgetMicros = BulkOperations.DEFAULT_BUDGET_MICROS;
+    private StorageBackend storage = StorageBackend.NBT;
+    private DeathJournal journal;
 
-    private static DeathQuotaConfig fromValues(int maxLives, boolean showDeathLocationMessages) {
+    private static DeathQuotaConfig fromValues(int maxLives, boolean showDeathLocationMessages, int recordCacheSize,
+                                               int bulkBudgetMicros, StorageBackend storage) {
         DeathQuotaConfig config = new DeathQuotaConfig();
         config.maxLives = Math.max(1, maxLives);
         config.showDeathLocationMessages = showDeathLocationMessages;
+        config.recordCacheSize = Math.max(1, recordCacheSize);
+        config.bulkBudgetMicros = BulkOperations.clampBudget(bulkBudgetMicros);
+        config.storage = storage;
         return config;
     }
 
     public static DeathQuotaConfig get(MinecraftServer server) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        return handles != null ? handles.config() : resolve(server);
+    }
+
+    static DeathQuotaConfig resolve(MinecraftServer server) {
         ServerWorld overworld = server.getOverworld();
         LegacyPersistentDataMigrator.migrate(server, "three_life_config", STORAGE_KEY);
         PersistentStateManager manager = overworld.getPersistentStateManager();
-        return PersistentStateCompat.get(manager, STATE_TYPE, DeathQuotaConfig::readFromNbt, DeathQuotaConfig::new, STORAGE_KEY);
+        return PersistentStateCompat.get(manager, StateType.INSTANCE, DeathQuotaConfig::readFromNbt, DeathQuotaConfig::new, STORAGE_KEY);
+    }
+
+    void attachJournal(DeathJournal journal) {
+        this.journal = journal;
     }
 
     private static DeathQuotaConfig readFromNbt(NbtCompound nbt) {
@@ -90,6 +104,53 @@ public final class DeathQuotaConfig extends PersistentState {
         if (this.maxLives != clamped) {
             this.maxLives = clamped;
             markDirty();
+            if (journal != null) {
+                journal.appendMaxLives(clamped);
+            }
+        }
+    }
+
+    /**
+     * Number of offline players' records kept fully in memory; online players are always kept.
+     */
+    public int getRecordCacheSize() {
+        return recordCacheSize;
+    }
+
+    public void setRecordCacheSize(int recordCacheSize) {
+        int clamped = Math.max(1, recordCacheSize);
+        if (this.recordCacheSize != clamped) {
+            this.recordCacheSize = clamped;
+            markDirty();
+        }
+    }
+
+    /**
+     * Server-thread time per tick that bulk admin commands (reset-all, setmax) may spend.
+     */
+    public int getBulkBudgetMicros() {
+        return bulkBudgetMicros;
+    }
+
+    public void setBulkBudgetMicros(int bulkBudgetMicros) {
+        int clamped = BulkOperations.clampBudget(bulkBudgetMicros);
+        if (this.bulkBudgetMicros != clamped) {
+            this.bulkBudgetMicros = clamped;
+            markDirty();
+        }
+    }
+
+    /**
+     * Backend death records are saved to. Read at startup, so a change takes effect on the next start.
+     */
+    public StorageBackend getStorage() {
+        return storage;
+    }
+
+    public void setStorage(StorageBackend storage) {
+        if (this.storage != storage) {
+            this.storage = storage;
+            markDirty();
         }
     }
 
@@ -102,6 +163,9 @@ public final class DeathQuotaConfig extends PersistentState {
         if (this.showDeathLocationMessages != enabled) {
             this.showDeathLocationMessages = enabled;
             markDirty();
+            if (journal != null) {
+                journal.appendDeathMessages(enabled);
+            }
             DeathQuotaMod.LOGGER.info("Config marked dirty, showDeathLocationMessages now: {}", this.showDeathLocationMessages);
         }
     }
@@ -111,4 +175,18 @@ public final class DeathQuotaConfig extends PersistentState {
             into.copyFrom(compound);
         }
     }
+
+    /**
+     * Holds the reflective state type, so a config can be constructed without a server.
+     */
+    private static final class StateType {
+        // Cross-version compatible state type - uses reflection to handle API differences
+        private static final Object INSTANCE = PersistentStateCompat.createType(
+            STORAGE_KEY,
+            DeathQuotaConfig::new,
+            DeathQuotaConfig::readFromNbt,
+            CODEC,
+            DataFixTypeCompat.persistentDataType()
+        );
+    }
 }
@@ -0,0 +1,181 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.util.DeathQuotaMetrics;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.WorldSavePath;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Per-server registry of the resolved quota state and config.
+ *
+ * Resolving either one runs the legacy file migrator and the reflective
+ * PersistentStateCompat lookup, so it is done once on SERVER_STARTED and
+ * dropped again on SERVER_STOPPED. Every lookup in between is a field read.
+ * Lookups outside that window (or for a different server instance) fall back
+ * to a direct, uncached resolve. The same hooks drive the sharded record
+ * save alongside every world save, the per-tick journal flush and the
+ * {@link BulkOperations} queue. They also own the optional {@link TraceRecorder},
+ * started from {@code /deathquota trace start} or, to capture a whole session,
+ * with {@code -Ddeathquota.trace=true}.
+ */
+public final class DeathQuotaHandles {
+    private static final DateTimeFormatter TRACE_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static volatile DeathQuotaHandles active;
+
+    private final MinecraftServer server;
+    private final DeathQuotaState state;
+    private final DeathQuotaConfig config;
+    private final PlayerNameIndex names;
+    private final BulkOperations bulk = new BulkOperations();
+    private final QuotaRules<ServerPlayerEntity> rules;
+    private TraceRecorder trace;
+
+    private DeathQuotaHandles(MinecraftServer server, DeathQuotaState state, DeathQuotaConfig config, PlayerNameIndex names) {
+        this.server = server;
+        this.state = state;
+        this.config = config;
+        this.names = names;
+        this.rules = new QuotaRules<>(new MinecraftRuntime(server));
+        bulk.setBudgetMicros(config.getBulkBudgetMicros());
+    }
+
+    static void registerLifecycleHooks() {
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            DeathQuotaHandles handles = resolve(server);
+            active = handles;
+            DeathQuotaMetrics.bindRecordCounts(handles.state::size, handles.state::residentCount);
+            if (Boolean.getBoolean("deathquota.trace")) {
+                handles.startTrace();
+            }
+        });
+
+        // Fires for autosaves, /save-all and the final save on shutdown, before vanilla writes its PersistentStates
+        ServerLifecycleEvents.BEFORE_SAVE.register((server, flush, force) -> {
+            DeathQuotaHandles current = active(server);
+            if (current != null) {
+                current.state.saveShards(flush || force);
+            }
+        });
+
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            DeathQuotaHandles current = active(server);
+            if (current != null) {
+                // Bulk steps first, so what they change goes out with this tick's journal flush
+                current.bulk.tick();
+                current.state.flushJournal();
+            }
+        });
+
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            DeathQuotaHandles current = active;
+            if (current != null && current.server == server) {
+                active = null;
+                DeathQuotaMetrics.bindRecordCounts(null, null);
+                current.bulk.close();
+                current.stopTrace();
+                current.state.close();
+            }
+            DimensionRegistry.clearWorlds();
+        });
+
+        // Worlds loaded after the table was built, such as by dimension mods, are picked up on the next lookup
+        ServerWorldEvents.LOAD.register((server, world) -> DimensionRegistry.clearWorlds());
+        ServerWorldEvents.UNLOAD.register((server, world) -> DimensionRegistry.clearWorlds());
+    }
+
+    /**
+     * Returns the cached handles for {@code server}, or null when the server has
+     * not finished starting (or has already stopped).
+     */
+    static DeathQuotaHandles active(MinecraftServer server) {
+        DeathQuotaHandles current = active;
+        return current != null && current.server == server ? current : null;
+    }
+
+    private static DeathQuotaHandles resolve(MinecraftServer server) {
+        DeathQuotaState state = DeathQuotaState.resolve(server);
+        DeathQuotaConfig config = DeathQuotaConfig.resolve(server);
+        state.setRecordCacheSize(config.getRecordCacheSize());
+        state.openJournal(config);
+        PlayerNameIndex names = PlayerNameIndex.load(
+            ShardedRecordStorage.directoryFor(server).resolve(PlayerNameIndex.FILE_NAME),
+            FabricLoader.getInstance().getGameDir().resolve("usercache.json"));
+        DeathQuotaMod.LOGGER.debug("Indexed {} known player names", names.size());
+        return new DeathQuotaHandles(server, state, config, names);
+    }
+
+    public MinecraftServer server() {
+        return server;
+    }
+
+    public DeathQuotaState state() {
+        return state;
+    }
+
+    public DeathQuotaConfig config() {
+        return config;
+    }
+
+    public PlayerNameIndex names() {
+        return names;
+    }
+
+    public BulkOperations bulk() {
+        return bulk;
+    }
+
+    public QuotaRules<ServerPlayerEntity> rules() {
+        return rules;
+    }
+
+    /**
+     * The running trace, or null when nothing is being recorded.
+     */
+    TraceRecorder trace() {
+        return trace;
+    }
+
+    /**
+     * Starts a trace under {@code <world>/deathquota-traces} and returns its
+     * file, or the file already being written. Null when it cannot be created.
+     */
+    Path startTrace() {
+        if (trace != null) {
+            return trace.file();
+        }
+        Path file = server.getSavePath(WorldSavePath.ROOT).resolve("deathquota-traces")
+            .resolve("trace-" + LocalDateTime.now().format(TRACE_NAME) + ".dqt");
+        try {
+            trace = TraceRecorder.open(file, server.getTicks());
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.warn("Failed to start death quota trace {}", file, e);
+            return null;
+        }
+        DeathQuotaMod.LOGGER.info("Recording death quota trace to {}", file);
+        return file;
+    }
+
+    /**
+     * Finishes the running trace and returns it, or null when none was running.
+     */
+    TraceRecorder stopTrace() {
+        TraceRecorder stopped = trace;
+        if (stopped != null) {
+            trace = null;
+            stopped.close();
+            DeathQuotaMod.LOGGER.info("Wrote {} events to death quota trace {}", stopped.events(), stopped.file());
+        }
+        return stopped;
+    }
+}
@@ -4,126 +4,419 @@ import net.fabricmc.fabric.api.entity.event.v1.ServerLivingEntityEvents;
 import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
-import net.minecraft.entity.damage.DamageSource;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.MutableText;
 import net.minecraft.text.Text;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.GameMode;
-import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.util.DeathQuotaMetrics;
 import net.deathquota.mod.util.ServerCompat;
-import net.deathquota.mod.util.TeleportCompat;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public final class DeathQuotaManager {
+    private static final int LOCK_AUDIT_INTERVAL_TICKS = 100;
+
     private DeathQuotaManager() {
     }
 
     public static void registerEventHooks() {
+        DeathQuotaHandles.registerLifecycleHooks();
+        PlayerRecordAttachments.register();
+
         ServerLivingEntityEvents.AFTER_DEATH.register((entity, damageSource) -> {
             if (entity instanceof ServerPlayerEntity player) {
-                handleDeath(player, damageSource);
+                MinecraftServer server = ServerCompat.getServer(player);
+                TraceRecorder trace = trace(server);
+                if (trace != null) {
+                    trace.death(server.getTicks(), player.getUuid(), DimensionRegistry.idOf(ServerCompat.getWorld(player)),
+                        player.getBlockPos().asLong(), player.getYaw(), player.getPitch());
+                }
+                rules(server).handleDeath(player, damageSource.getDeathMessage(player).getString());
             }
         });
 
-        ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) ->
-                ServerCompat.getServer(newPlayer).execute(() -> applyPostRespawnState(newPlayer)));
+        ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) -> {
+            MinecraftServer server = ServerCompat.getServer(newPlayer);
+            trace(server, QuotaTrace.Event.RESPAWN, newPlayer.getUuid());
+            DeathQuotaState.get(server).respawnPlayer(newPlayer);
+            rules(server).onRespawn(newPlayer);
+        });
+
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+            trace(server, QuotaTrace.Event.JOIN, handler.player.getUuid());
+            DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+            if (handles != null) {
+                handles.names().put(handler.player.getName().getString(), handler.player.getUuid());
+            }
+            DeathQuotaState.get(server).joinPlayer(handler.player);
+            rules(server).onJoin(handler.player);
+        });
 
-        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) ->
-            server.execute(() -> applyPostRespawnState(handler.player)));
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            trace(server, QuotaTrace.Event.DISCONNECT, handler.player.getUuid());
+            rules(server).onDisconnect(handler.player);
+        });
 
-        // Continuously enforce spectator mode for locked players (1.21.5 compatibility)
+        // ServerPlayerEntityMixin rejects game-mode changes for locked players; this only
+        // catches paths that bypass changeGameMode (1.21.5 respawn quirks, other mods).
         ServerTickEvents.END_SERVER_TICK.register(server -> {
-            for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-                if (isSpectatorLocked(player) && player.interactionManager.getGameMode() != GameMode.SPECTATOR) {
-                    DeathQuotaMod.LOGGER.warn("Player {} escaped spectator lock, re-enforcing", player.getName().getString());
-                    player.changeGameMode(GameMode.SPECTATOR);
-                }
+            if (server.getTicks() % LOCK_AUDIT_INTERVAL_TICKS == 0) {
+                rules(server).auditSpectatorLocks(server.getPlayerManager().getPlayerList());
             }
         });
     }
 
-    private static void handleDeath(ServerPlayerEntity player, DamageSource source) {
+    /**
+     * The quota rules for {@code server}: the cached instance once it has
+     * started, otherwise a throwaway one over the uncached lookups.
+     */
+    static QuotaRules<ServerPlayerEntity> rules(MinecraftServer server) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        return handles != null ? handles.rules() : new QuotaRules<>(new MinecraftRuntime(server));
+    }
+
+    private static QuotaRules<ServerPlayerEntity> rules(ServerPlayerEntity player) {
+        return rules(ServerCompat.getServer(player));
+    }
+
+    private static TraceRecorder trace(MinecraftServer server) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        return handles != null ? handles.trace() : null;
+    }
+
+    private static void trace(MinecraftServer server, QuotaTrace.Event event, UUID player) {
+        TraceRecorder trace = trace(server);
+        if (trace != null) {
+            trace.event(server.getTicks(), event, player);
+        }
+    }
+
+    /**
+     * Records a client's PERFORM_RESPAWN request in the running trace, if any.
+     * The packet handler first runs on the network thread and is then re-run
+     * on the server thread, so only the second call is recorded.
+     */
+    public static void traceRespawnRequest(ServerPlayerEntity player) {
         MinecraftServer server = ServerCompat.getServer(player);
-        DeathQuotaState state = DeathQuotaState.get(server);
-        DeathRecord record = state.recordDeath(player.getUuid());
-        int maxLives = getMaxLives(server);
-        record.increment(maxLives);
-        ServerWorld playerWorld = ServerCompat.getWorld(player);
-        record.setLastDeath(player.getBlockPos(),
-            playerWorld.getRegistryKey().getValue().toString(),
-            player.getYaw(),
-            player.getPitch(),
-            playerWorld.getTime());
-        record.setLastDeathMessage(source.getDeathMessage(player).getString());
-        state.overwrite(player.getUuid(), record);
-
-        sendDeathLocationMessage(player, record);
+        if (server != null && server.isOnThread()) {
+            trace(server, QuotaTrace.Event.RESPAWN_REQUEST, player.getUuid());
+        }
+    }
 
-        int remaining = Math.max(0, maxLives - record.getDeathCount());
-        MutableText feedback = Text.literal("[Death Quota] ");
-        if (record.isSpectatorLocked()) {
-            feedback.append(Text.literal("No remaining lives. You'll respawn as a spectator."));
-        } else {
-            feedback.append(Text.literal("Lives remaining: " + remaining + "/" + maxLives));
+    /**
+     * Records an operator command in the running trace, if any. {@code target}
+     * is the player it is about, or null.
+     */
+    public static void traceCommand(MinecraftServer server, QuotaTrace.Command command, UUID target, int argument) {
+        TraceRecorder trace = trace(server);
+        if (trace != null) {
+            trace.command(server.getTicks(), command, target, argument, 0, null);
         }
-        player.sendMessage(feedback, false);
-        DeathQuotaMod.LOGGER.debug("Player {} now has {} deaths recorded", player.getName().getString(), record.getDeathCount());
     }
 
-    public static void applyPostRespawnState(ServerPlayerEntity player) {
-        DeathQuotaState state = DeathQuotaState.get(ServerCompat.getServer(player));
-        Optional<DeathRecord> record = state.get(player.getUuid());
-        record.ifPresent(current -> {
-            if (current.isSpectatorLocked()) {
-                forceSpectator(player, current);
-                // Add delayed enforcement for 1.21.5 compatibility where gamemode might not stick immediately
-                ServerCompat.getServer(player).execute(() -> {
-                    if (player.interactionManager.getGameMode() != GameMode.SPECTATOR) {
-                        DeathQuotaMod.LOGGER.warn("Player {} escaped spectator lock, re-enforcing", player.getName().getString());
-                        player.changeGameMode(GameMode.SPECTATOR);
-                    }
-                });
-            } else {
-                notifyLives(player, current);
-            }
-        });
+    public static void traceList(MinecraftServer server, RecordListing.Filter filter, int page) {
+        TraceRecorder trace = trace(server);
+        if (trace != null) {
+            trace.command(server.getTicks(), QuotaTrace.Command.LIST, null, filter.value(), page, filter);
+        }
     }
 
-    private static void notifyLives(ServerPlayerEntity player, DeathRecord record) {
-        int configuredMax = getMaxLives(ServerCompat.getServer(player));
-        int remaining = Math.max(0, configuredMax - record.getDeathCount());
-        player.sendMessage(Text.literal("[Death Quota] Lives remaining: " + remaining + "/" + configuredMax), true);
+    /**
+     * Starts recording a trace and returns its file (or the one already being
+     * written). Null when the server has not finished starting or the file
+     * could not be created.
+     */
+    public static Path startTrace(MinecraftServer server) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        return handles != null ? handles.startTrace() : null;
+    }
+
+    /**
+     * Finishes the running trace and describes it, or returns null when none was running.
+     */
+    public static Text stopTrace(MinecraftServer server) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        TraceRecorder stopped = handles != null ? handles.stopTrace() : null;
+        if (stopped == null) {
+            return null;
+        }
+        return Text.literal("Wrote " + stopped.events() + " event(s) to " + stopped.file().getFileName() + ".");
+    }
+
+    public static void applyPostRespawnState(ServerPlayerEntity player) {
+        rules(player).applyPostRespawnState(player);
     }
 
     public static boolean isSpectatorLocked(ServerPlayerEntity player) {
-        return DeathQuotaState.get(ServerCompat.getServer(player)).get(player.getUuid())
-                .map(DeathRecord::isSpectatorLocked)
-                .orElse(false);
+        return rules(player).isSpectatorLocked(player);
     }
 
     public static DeathRecord ensureRecord(ServerPlayerEntity player) {
-        DeathQuotaState state = DeathQuotaState.get(ServerCompat.getServer(player));
-        return state.get(player.getUuid()).orElseGet(() -> {
-            DeathRecord record = new DeathRecord();
-            state.overwrite(player.getUuid(), record);
-            return record;
-        });
+        return rules(player).ensureRecord(player);
     }
 
     public static DeathRecord reset(ServerPlayerEntity player) {
-        DeathQuotaState state = DeathQuotaState.get(ServerCompat.getServer(player));
-        DeathRecord record = ensureRecord(player);
+        return rules(player).reset(player);
+    }
+
+    /**
+     * Queues a reset of every stored record on the bulk queue. Returns false
+     * when the server has not finished starting.
+     */
+    public static boolean resetAll(MinecraftServer server, ServerCommandSource source) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        if (handles == null) {
+            return false;
+        }
+        handles.bulk().submit(source, new BulkTasks.ResetAll(server, handles.state()));
+        return true;
+    }
+
+    /**
+     * Queues a max-lives change on the bulk queue; it applies once the tasks
+     * ahead of it are done. Returns false when the server has not finished starting.
+     */
+    public static boolean setMaxLives(MinecraftServer server, ServerCommandSource source, int maxLives) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        if (handles == null) {
+            return false;
+        }
+        handles.bulk().submit(source, new BulkTasks.MaxLives(server, maxLives));
+        return true;
+    }
+
+    /**
+     * Sends {@code message} to every online player through the bulk queue.
+     */
+    public static void broadcast(MinecraftServer server, ServerCommandSource source, String name, Text message) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        if (handles != null) {
+            handles.bulk().submit(source, new BulkTasks.Broadcast(server, name, message));
+        }
+    }
+
+    /**
+     * Cancels the running bulk command and returns its name, or null when none is running.
+     */
+    public static String cancelBulk(MinecraftServer server) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        return handles != null ? handles.bulk().cancel() : null;
+    }
+
+    public static int setBulkBudget(MinecraftServer server, int micros) {
+        DeathQuotaConfig config = DeathQuotaConfig.get(server);
+        config.setBulkBudgetMicros(micros);
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        if (handles != null) {
+            handles.bulk().setBudgetMicros(config.getBulkBudgetMicros());
+        }
+        return config.getBulkBudgetMicros();
+    }
+
+    /**
+     * Resolves a command target that may be offline: a known player name
+     * (ignoring case) or a literal UUID. Returns null when neither matches.
+     */
+    public static UUID resolvePlayer(MinecraftServer server, String nameOrUuid) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        UUID known = handles != null ? handles.names().find(nameOrUuid) : null;
+        if (known != null) {
+            return known;
+        }
+        try {
+            return UUID.fromString(nameOrUuid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Feeds up to {@code limit} known player names starting with {@code prefix} to {@code sink}.
+     */
+    public static void suggestPlayerNames(MinecraftServer server, String prefix, int limit, Consumer<String> sink) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        if (handles != null) {
+            handles.names().complete(prefix, limit, sink);
+        }
+    }
+
+    /**
+     * Describes a player who is not online, without creating a record for them.
+     */
+    public static Text describeOffline(MinecraftServer server, UUID uuid, String name) {
+        DeathQuotaState state = DeathQuotaState.get(server);
+        if (keptWithPlayer(server, state, uuid)) {
+            return Text.literal(name + " (offline): record is kept with their player data and shown once they join");
+        }
+        DeathRecord record = state.find(uuid);
+        int deaths = record != null ? record.getDeathCount() : 0;
+        int remaining = Math.max(0, getMaxLives(server) - deaths);
+        MutableText text = Text.literal(name + " (offline)")
+                .append(Text.literal(": deaths=" + deaths))
+                .append(Text.literal(", remaining=" + remaining));
+        if (record != null && record.isSpectatorLocked()) {
+            text.append(Text.literal(" (LOCKED)"));
+        }
+        return text;
+    }
+
+    /**
+     * Outcome of {@link #resetOffline(MinecraftServer, UUID)}.
+     */
+    public enum OfflineReset {
+        RESET,
+        // Kept with their player data, which is only read when they join
+        ON_JOIN,
+        NO_RECORD
+    }
+
+    /**
+     * Resets a player who is not online. In player mode a record kept with
+     * their player data is reset when they next join; that is only queued for
+     * players the server has seen, so a mistyped UUID is not kept forever.
+     */
+    public static OfflineReset resetOffline(MinecraftServer server, UUID uuid) {
+        DeathQuotaState state = DeathQuotaState.get(server);
+        if (keptWithPlayer(server, state, uuid)) {
+            state.resetOnJoin(uuid);
+            return OfflineReset.ON_JOIN;
+        }
+        DeathRecord record = state.find(uuid);
+        if (record == null) {
+            return OfflineReset.NO_RECORD;
+        }
         record.reset();
-        state.overwrite(player.getUuid(), record);
-        return record;
+        return OfflineReset.RESET;
+    }
+
+    // Only players in the name index (the user cache and everyone seen joining) can have player data
+    private static boolean keptWithPlayer(MinecraftServer server, DeathQuotaState state, UUID uuid) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        return state.keptWithPlayer(uuid) && handles != null && handles.names().knows(uuid);
+    }
+
+    /**
+     * Leaderboard lines for ranks 1..{@code count}, most deaths first.
+     */
+    public static List<Text> describeTop(MinecraftServer server, int count) {
+        DeathQuotaState state = DeathQuotaState.get(server);
+        List<Text> lines = new ArrayList<>();
+        int rank = 1;
+        for (DeathRecord record : state.ranked(1, count)) {
+            lines.add(Text.literal("#" + rank++ + " " + displayName(server, record.getUuid()) + " - "
+                + record.getDeathCount() + " death(s)" + (record.isSpectatorLocked() ? " (LOCKED)" : "")));
+        }
+        return lines;
+    }
+
+    /**
+     * Describes where {@code uuid} stands on the leaderboard.
+     */
+    public static Text describeRank(MinecraftServer server, UUID uuid, String name) {
+        DeathQuotaState state = DeathQuotaState.get(server);
+        int rank = state.rank(uuid);
+        if (rank == 0) {
+            return Text.literal(name + " has no deaths and is not ranked.");
+        }
+        DeathRecord record = state.find(uuid);
+        return Text.literal(name + " is #" + rank + " of " + state.rankedCount() + " with "
+            + record.getDeathCount() + " death(s).");
+    }
+
+    /**
+     * Header and record lines for one page of {@code filter}, as shown to
+     * {@code viewer}. Out-of-range pages are clamped to the last one.
+     */
+    public static List<Text> describeList(MinecraftServer server, String viewer, String title,
+                                          RecordListing.Filter filter, int page) {
+        RecordListing.Page shown = DeathQuotaState.get(server).list(viewer, filter, page);
+        List<Text> lines = new ArrayList<>(shown.records().size() + 1);
+        lines.add(Text.literal(title + " - page " + shown.page() + "/" + shown.pages() + " ("
+            + shown.total() + " record(s)):"));
+        for (DeathRecord record : shown.records()) {
+            String line = displayName(server, record.getUuid()) + " - " + record.getDeathCount() + " death(s)";
+            if (record.isSpectatorLocked()) {
+                line += " (LOCKED)";
+            }
+            Optional<String> dimension = record.getLastDeathDimension();
+            if (dimension.isPresent()) {
+                line += ", last died in " + dimension.get();
+            }
+            lines.add(Text.literal(line));
+        }
+        return lines;
+    }
+
+    /**
+     * Counters and latencies from {@link DeathQuotaMetrics}, plus the last shard save.
+     */
+    public static List<Text> describeStats(MinecraftServer server) {
+        List<Text> lines = new ArrayList<>();
+        lines.add(Text.literal("Deaths processed: " + DeathQuotaMetrics.DEATHS_PROCESSED.sum()
+            + ", locks applied: " + DeathQuotaMetrics.LOCKS_APPLIED.sum()
+            + ", lock escapes re-enforced: " + DeathQuotaMetrics.LOCK_ESCAPES.sum()));
+        lines.add(Text.literal("Records: " + DeathQuotaMetrics.records() + " stored, "
+            + DeathQuotaMetrics.residentRecords() + " fully resident"));
+        lines.add(Text.literal("Death handling: " + latency(DeathQuotaMetrics.DEATH_LATENCY)
+            + "; respawn state: " + latency(DeathQuotaMetrics.RESPAWN_LATENCY)));
+        lines.add(Text.literal("Saves: " + DeathQuotaMetrics.SAVE_WRITE_LATENCY.count() + ", writing "
+            + latency(DeathQuotaMetrics.SAVE_WRITE_LATENCY) + ", on the server thread "
+            + latency(DeathQuotaMetrics.SAVE_TICK_LATENCY) + ", " + DeathQuotaMetrics.BYTES_SAVED.sum() + " bytes in total"));
+        lines.add(Text.literal("Journal write failures: " + DeathQuotaMetrics.JOURNAL_FAILURES.sum()));
+        DeathQuotaState state = DeathQuotaState.get(server);
+        lines.add(Text.literal("Storage: " + state.storageBackend()));
+        lines.add(Text.literal("Players: " + state.knownPlayers() + " known, " + state.lockedPlayers() + " locked"));
+        ShardedRecordStorage.SaveResult last = state.lastSave();
+        if (last != null) {
+            lines.add(Text.literal("Last save: " + Long.bitCount(last.writtenShards()) + " shard(s), "
+                + last.bytesWritten() + " bytes in " + TimeUnit.NANOSECONDS.toMillis(last.durationNanos()) + " ms"
+                + (last.failedShards() != 0L ? ", " + Long.bitCount(last.failedShards()) + " failed" : "")));
+        }
+        lines.add(Text.literal("Reflective persistent-state fallbacks: " + DeathQuotaMetrics.REFLECTIVE_FALLBACKS.sum()));
+        return lines;
+    }
+
+    private static String latency(DeathQuotaMetrics.LatencyHistogram histogram) {
+        if (histogram.count() == 0L) {
+            return "no samples";
+        }
+        return String.format(Locale.ROOT, "mean %.2f ms, p99 <= %.2f ms, max %.2f ms",
+            histogram.meanMillis(), histogram.percentileMillis(0.99), histogram.maxMillis());
+    }
+
+    private static String displayName(MinecraftServer server, UUID uuid) {
+        ServerPlayerEntity online = server.getPlayerManager().getPlayer(uuid);
+        if (online != null) {
+            return online.getName().getString();
+        }
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        String known = handles != null ? handles.names().nameOf(uuid) : null;
+        return known != null ? known : uuid.toString();
+    }
+
+    public static int setRecordCacheSize(MinecraftServer server, int records) {
+        DeathQuotaConfig config = DeathQuotaConfig.get(server);
+        config.setRecordCacheSize(records);
+        DeathQuotaState.get(server).setRecordCacheSize(config.getRecordCacheSize());
+        return config.getRecordCacheSize();
     }
 
-    public static int resetAll(MinecraftServer server) {
-        return DeathQuotaState.get(server).resetAll();
+    /**
+     * Name of the backend records are saved to in this run; a change in the
+     * config only applies from the next start.
+     */
+    public static String activeStorage(MinecraftServer server) {
+        return DeathQuotaState.get(server).storageBackend();
     }
 
     public static int getMaxLives(MinecraftServer server) {
@@ -132,63 +425,104 @@ public final class DeathQuotaManager {
 
     public static Text describe(ServerPlayerEntity player) {
         DeathRecord record = ensureRecord(player);
-        int maxLives = getMaxLives(ServerCompat.getServer(player));
+        MinecraftServer server = ServerCompat.getServer(player);
+        int maxLives = getMaxLives(server);
         int remaining = Math.max(0, maxLives - record.getDeathCount());
         MutableText text = Text.literal(player.getName().getString())
                 .append(Text.literal(": deaths=" + record.getDeathCount()))
                 .append(Text.literal(", remaining=" + remaining));
-        if (record.isSpectatorLocked()) {
+        LifePools.Pool pool = DeathQuotaState.get(server).pools().poolOf(player.getUuid());
+        if (pool != null) {
+            text.append(Text.literal(", pool " + pool.id + "=" + pool.remaining() + "/" + pool.lives()));
+        }
+        if (isSpectatorLocked(player)) {
             text.append(Text.literal(" (LOCKED)"));
         }
         return text;
     }
 
-    private static void forceSpectator(ServerPlayerEntity player, DeathRecord record) {
-        record.setSpectatorLocked(true);
-        DeathQuotaState.get(ServerCompat.getServer(player)).overwrite(player.getUuid(), record);
-        if (player.interactionManager.getGameMode() != GameMode.SPECTATOR) {
-            player.changeGameMode(GameMode.SPECTATOR);
+    /**
+     * The pool mode, the lives of the server and team pools, and one line
+     * per pool with its lives left and members online.
+     */
+    public static List<Text> describePools(MinecraftServer server) {
+        LifePools pools = DeathQuotaState.get(server).pools();
+        List<Text> lines = new ArrayList<>();
+        lines.add(Text.literal("Life pools: " + pools.mode().id() + ", " + pools.lives()
+            + " lives per server or team pool"));
+        List<LifePools.Pool> sorted = new ArrayList<>(pools.pools());
+        sorted.sort(Comparator.comparing(pool -> pool.id));
+        for (LifePools.Pool pool : sorted) {
+            String line = pool.id + " - " + pool.remaining() + "/" + pool.lives() + " lives left, "
+                + pool.onlineCount() + " member(s) online";
+            if (LifePools.isGroup(pool.id)) {
+                line += " of " + pool.memberCount();
+            }
+            lines.add(Text.literal(pool.exhausted() ? line + " (LOCKED)" : line));
         }
-        teleportToLastDeath(player, record);
-        player.sendMessage(Text.literal("[Death Quota] You exhausted all lives. Spectate or disconnect."), false);
+        return lines;
     }
 
-    private static void teleportToLastDeath(ServerPlayerEntity player, DeathRecord record) {
-        if (record.getLastDeathPos().isEmpty()) {
-            return;
-        }
-        record.getLastDeathDimension().ifPresentOrElse(dimensionId -> {
-            MinecraftServer server = ServerCompat.getServer(player);
-            ServerWorld targetWorld = server.getWorld(ServerWorld.OVERWORLD);
-            for (ServerWorld world : server.getWorlds()) {
-                if (world.getRegistryKey().getValue().toString().equals(dimensionId)) {
-                    targetWorld = world;
-                    break;
-                }
+    /**
+     * Ids of the pools that exist, for command suggestions.
+     */
+    public static List<String> poolIds(MinecraftServer server, boolean groupsOnly) {
+        List<String> ids = new ArrayList<>();
+        for (LifePools.Pool pool : DeathQuotaState.get(server).pools().pools()) {
+            if (!groupsOnly || LifePools.isGroup(pool.id)) {
+                ids.add(pool.id);
             }
-            BlockPos pos = record.getLastDeathPos().orElse(player.getBlockPos());
-            // Use TeleportCompat for cross-version compatibility (1.21.0-1.21.1 vs 1.21.2+)
-            TeleportCompat.teleportToPos(player, targetWorld, pos, record.getLastYaw(), record.getLastPitch());
-        }, () -> {
-            BlockPos pos = record.getLastDeathPos().orElse(player.getBlockPos());
-            TeleportCompat.teleportToPos(player, pos, record.getLastYaw(), record.getLastPitch());
+        }
+        return ids;
+    }
+
+    public static void setPoolMode(MinecraftServer server, PoolMode mode) {
+        changePools(server, pools -> {
+            pools.setMode(mode);
+            return null;
+        });
+    }
+
+    public static int setPoolLives(MinecraftServer server, int lives) {
+        return changePools(server, pools -> {
+            pools.setLives(lives);
+            return pools.lives();
         });
     }
 
-    private static void sendDeathLocationMessage(ServerPlayerEntity player, DeathRecord record) {
-        // Check global config setting
-        DeathQuotaConfig config = DeathQuotaConfig.get(ServerCompat.getServer(player));
-        boolean enabled = config.isShowDeathLocationMessages();
-        DeathQuotaMod.LOGGER.debug("sendDeathLocationMessage: enabled={}", enabled);
-        if (!enabled) {
-            return;
-        }
-        MutableText message = Text.literal("[Death Quota] ");
-        record.getLastDeathPos().ifPresentOrElse(pos -> {
-            String dimension = record.getLastDeathDimension().orElse("unknown");
-            message.append(Text.literal("Death at " + pos.getX() + ", " + pos.getY() + ", " + pos.getZ()))
-                    .append(Text.literal(" in " + dimension));
-        }, () -> message.append(Text.literal("Death location unavailable.")));
-        player.sendMessage(message, false);
+    /**
+     * Creates the custom group {@code group} or changes its lives. Returns
+     * false when the name belongs to the server or a team pool.
+     */
+    public static boolean setPoolGroup(MinecraftServer server, String group, int lives) {
+        return changePools(server, pools -> pools.setGroup(group, lives));
+    }
+
+    public static boolean deletePoolGroup(MinecraftServer server, String group) {
+        return changePools(server, pools -> pools.deleteGroup(group));
+    }
+
+    public static boolean addToPoolGroup(MinecraftServer server, String group, UUID uuid) {
+        return changePools(server, pools -> pools.addMember(group, uuid));
+    }
+
+    /**
+     * Takes {@code uuid} out of their custom group and returns its name, or
+     * null when they were in none.
+     */
+    public static String removeFromPoolGroup(MinecraftServer server, UUID uuid) {
+        return changePools(server, pools -> {
+            LifePools.Pool pool = pools.removeMember(uuid);
+            return pool != null ? pool.id : null;
+        });
+    }
+
+    public static boolean resetPool(MinecraftServer server, String id) {
+        return changePools(server, pools -> pools.reset(id));
+    }
+
+    private static <T> T changePools(MinecraftServer server, Function<LifePools, T> change) {
+        LifePools pools = DeathQuotaState.get(server).pools();
+        return rules(server).refreshPools(server.getPlayerManager().getPlayerList(), () -> change.apply(pools));
     }
 }
@@ -0,0 +1,19 @@
+package net.deathquota.mod.death;
+
+/**
+ * Duck interface mixed into ServerPlayerEntity so lock checks can read the
+ * player's DeathRecord from a field instead of hashing into DeathQuotaState.
+ *
+ * A player is "bound" once the state has been consulted for them; a bound
+ * player with a null record simply has no deaths on file. Bindings are set on
+ * join and respawn and dropped whenever a command rewrites records in bulk.
+ */
+public interface DeathQuotaPlayer {
+    boolean deathQuota$isRecordBound();
+
+    DeathRecord deathQuota$getBoundRecord();
+
+    void deathQuota$bindRecord(DeathRecord record);
+
+    void deathQuota$unbindRecord();
+}
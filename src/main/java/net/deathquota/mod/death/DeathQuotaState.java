@@ -2,71 +2,432 @@ package net.deathquota.mod.death;
 
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
 import net.minecraft.nbt.NbtOps;
 import net.minecraft.registry.RegistryWrapper;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
-import net.minecraft.util.Uuids;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.world.PersistentState;
 import net.minecraft.world.PersistentStateManager;
 import net.deathquota.mod.DeathQuotaMod;
 import net.deathquota.mod.util.DataFixTypeCompat;
+import net.deathquota.mod.util.DeathQuotaEvents;
+import net.deathquota.mod.util.DeathQuotaMetrics;
 import net.deathquota.mod.util.PersistentStateCompat;
 
-import java.util.Map;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.IntPredicate;
 
+/**
+ * Per-world death quota state.
+ *
+ * Records live in a {@link DeathRecordStore} persisted through
+ * {@link ShardedRecordStorage} to the configured {@link StorageBackend}; the
+ * vanilla PersistentState file only carries records written by older
+ * versions, which are moved into the backend on the first save after load. Mutations between saves are made durable by the
+ * {@link DeathJournal}, which is replayed over the shards on startup.
+ * Only the hot columns of offline players are resident; see
+ * {@link DeathRecordStore} for the cold tier and its LRU bound.
+ *
+ * With {@link StorageBackend#PLAYER} there is no backend or journal: records
+ * are saved on the players through {@link PlayerRecordAttachments}, and the
+ * state file carries the pending records and the summary of the rest.
+ */
 public final class DeathQuotaState extends PersistentState {
     private static final String STORAGE_KEY = DeathQuotaMod.MOD_ID + "_quota";
 
     public static final Codec<DeathQuotaState> CODEC = RecordCodecBuilder.create(instance ->
             instance.group(
-                    Codec.unboundedMap(Uuids.CODEC, DeathRecord.CODEC)
-                            .optionalFieldOf("records", Map.of())
-                            .forGetter(state -> state.records)
-            ).apply(instance, DeathQuotaState::fromRecords)
+                    DeathRecordStore.Selection.CODEC
+                            .optionalFieldOf("records")
+                            .forGetter(DeathQuotaState::recordsToSave),
+                    PlayerRecordAttachments.Summary.CODEC
+                            .optionalFieldOf("players")
+                            .forGetter(state -> Optional.ofNullable(state.players != null ? state.players.summary(state.store) : state.savedSummary)),
+                    LifePools.CODEC
+                            .optionalFieldOf("pools")
+                            .forGetter(state -> state.pools.isEmpty() ? Optional.empty() : Optional.of(state.pools))
+            ).apply(instance, DeathQuotaState::fromStore)
     );
 
-    // Cross-version compatible state type bridging all 1.21.x flavors via reflection
-    private static final Object STATE_TYPE = PersistentStateCompat.createType(
-        STORAGE_KEY,           // storage ID (not MOD_ID!)
-        DeathQuotaState::new,  // constructor
-        DeathQuotaState::readFromNbt,  // NBT reader (unused in modern API)
-        CODEC,                 // serialization codec
-        DataFixTypeCompat.persistentDataType()  // fix type (can be null)
-    );
 
-    private final Map<UUID, DeathRecord> records = new Object2ObjectOpenHashMap<>();
+    private final DeathRecordStore store;
+    private ShardedRecordStorage storage;
+    private DeathJournal journal;
+    private final Set<UUID> onlinePlayers = new HashSet<>();
+    private final RecordListing listing = new RecordListing();
+    private LifePools pools;
+    // Records decoded from the vanilla state file stay in it until the shards holding them are written
+    private boolean legacyRecordsPending;
+    private PlayerRecordAttachments players;
+    // Summary read from the state file, kept until storage is attached
+    private PlayerRecordAttachments.Summary savedSummary;
+    // Directory of the backends whose records were moved into the state file, retired on close
+    private Path retireOnClose;
+    // Player mode: where evicted pending records are read back from, and what the state file holds
+    private PlayerRecordAttachments.StateFileRecords pendingFile;
+    private boolean pendingChanged;
+    private PlayerRecordAttachments.Summary writtenSummary;
+
+    public DeathQuotaState() {
+        this(new DeathRecordStore());
+    }
+
+    private DeathQuotaState(DeathRecordStore store) {
+        this.store = store;
+        usePools(new LifePools());
+    }
 
-    private static DeathQuotaState fromRecords(Map<UUID, DeathRecord> records) {
-        DeathQuotaState state = new DeathQuotaState();
-        state.records.putAll(records);
+    private static DeathQuotaState fromStore(Optional<DeathRecordStore.Selection> records,
+                                             Optional<PlayerRecordAttachments.Summary> summary,
+                                             Optional<LifePools> pools) {
+        DeathQuotaState state = records.map(selection -> new DeathQuotaState(selection.store()))
+                .orElseGet(DeathQuotaState::new);
+        state.savedSummary = summary.orElse(null);
+        pools.ifPresent(state::usePools);
         return state;
     }
 
+    private void usePools(LifePools pools) {
+        this.pools = pools;
+        pools.setOnChange(this::markDirty);
+    }
+
+    /**
+     * The shared life pools, saved with this state.
+     */
+    LifePools pools() {
+        return pools;
+    }
+
+    /**
+     * Records that go in the state file: every record while records from an
+     * older version are still to be written to the backend, and in player
+     * mode those not saved with an online player.
+     */
+    private Optional<DeathRecordStore.Selection> recordsToSave() {
+        if (legacyRecordsPending) {
+            return Optional.of(new DeathRecordStore.Selection(store, slot -> true));
+        }
+        if (players == null || !players.primary()) {
+            return Optional.empty();
+        }
+        IntPredicate pending = slot -> !players.isSynced(store.uuidAt(slot));
+        for (int slot = 0; slot < store.slotLimit(); slot++) {
+            if (store.isLive(slot) && pending.test(slot)) {
+                return Optional.of(new DeathRecordStore.Selection(store, pending));
+            }
+        }
+        return Optional.empty();
+    }
+
     private static DeathQuotaState readFromNbt(NbtCompound nbt) {
         DeathQuotaState state = CODEC.parse(NbtOps.INSTANCE, nbt)
                 .resultOrPartial(error -> DeathQuotaMod.LOGGER.error("Failed to read death quota state: {}", error))
                 .orElseGet(DeathQuotaState::new);
-        DeathQuotaMod.LOGGER.debug("Loaded death quota state with {} records", state.records.size());
+        DeathQuotaMod.LOGGER.debug("Loaded death quota state with {} records", state.store.size());
         return state;
     }
 
     public static DeathQuotaState get(MinecraftServer server) {
+        DeathQuotaHandles handles = DeathQuotaHandles.active(server);
+        return handles != null ? handles.state() : resolve(server);
+    }
+
+    static DeathQuotaState resolve(MinecraftServer server) {
         ServerWorld overworld = server.getOverworld();
         LegacyPersistentDataMigrator.migrate(server, "three_life_quota", STORAGE_KEY);
         PersistentStateManager manager = overworld.getPersistentStateManager();
-        return PersistentStateCompat.get(
+        DeathQuotaState state = PersistentStateCompat.get(
             manager, 
-            STATE_TYPE, 
+            StateType.INSTANCE, 
             DeathQuotaState::readFromNbt, 
             DeathQuotaState::new, 
             STORAGE_KEY
         );
+        state.attachConfig(DeathQuotaConfig.get(server));
+        state.attachStorage(server);
+        return state;
+    }
+
+    private void attachStorage(MinecraftServer server) {
+        if (players != null) {
+            return;
+        }
+        StorageBackend backend = DeathQuotaConfig.get(server).getStorage();
+        players = new PlayerRecordAttachments(server, backend == StorageBackend.PLAYER, savedSummary);
+        savedSummary = null;
+        if (players.primary()) {
+            attachPlayerStorage(server);
+            return;
+        }
+        storage = ShardedRecordStorage.forServer(server, backend);
+        int legacyRecords = store.size();
+        // The backend is always at least as new as records left in the state file, so it loads on top
+        storage.load(store);
+        if (legacyRecords > 0) {
+            DeathQuotaMod.LOGGER.info("Migrating {} death records from {} to {}", legacyRecords, STORAGE_KEY, storage.directory());
+            legacyRecordsPending = true;
+            store.markAllDirty();
+        }
+        DeathQuotaMod.LOGGER.debug("Loaded {} death records from the {} backend", store.size(), storage.backendName());
+    }
+
+    private void attachPlayerStorage(MinecraftServer server) {
+        Path directory = ShardedRecordStorage.directoryFor(server);
+        if (!players.migrated()) {
+            // Records in the state file predate the backends', so the backends load on top
+            int moved = players.migrate(directory, store, DeathQuotaConfig.get(server), pools);
+            retireOnClose = directory;
+            if (moved > 0) {
+                markDirty();
+            }
+        } else if (PlayerRecordAttachments.hasBackendFiles(directory)) {
+            // Migrated and saved by an earlier run that stopped before retiring them
+            PlayerRecordAttachments.retire(directory);
+        }
+        // Pending records are read back from the state file, but the file may predate this version's
+        // layout, so they stay resident until the first save has rewritten it
+        pendingFile = new PlayerRecordAttachments.StateFileRecords(stateFile(server));
+        store.setColdLoader(pendingFile);
+        store.markAllDirty();
+        pendingChanged = store.size() > 0;
+        store.forgetRemoved();
+        store.setJournaling(true);
+        DeathQuotaMod.LOGGER.debug("Loaded {} pending death records; the rest are kept with player data", store.size());
+    }
+
+    private static Path stateFile(MinecraftServer server) {
+        return server.getSavePath(WorldSavePath.ROOT).resolve("data").resolve(STORAGE_KEY + ".dat");
+    }
+
+    /**
+     * Replays the journal over the loaded shards and pools and starts
+     * journaling every later mutation of the records, the pools and {@code config}.
+     */
+    void openJournal(DeathQuotaConfig config) {
+        if (journal != null || storage == null) {
+            return;
+        }
+        journal = new DeathJournal(storage.directory(), config, pools);
+        journal.open(store);
+        store.setJournaling(true);
+        config.attachJournal(journal);
+        pools.attachJournal(journal);
+    }
+
+    /**
+     * Waits for any in-flight shard save, closes the storage backend and stops
+     * the journal. Runs once the server's final save has been issued.
+     */
+    void close() {
+        if (retireOnClose != null) {
+            // The final save has written the migrated records to the state file
+            PlayerRecordAttachments.retire(retireOnClose);
+            retireOnClose = null;
+        }
+        if (storage != null) {
+            finishSave(storage.close(store));
+            storage = null;
+        }
+        if (journal != null) {
+            flushJournal();
+            journal.close();
+            journal = null;
+            store.setJournaling(false);
+            pools.attachJournal(null);
+        }
+    }
+
+    /**
+     * Queues images of the records changed since the last flush. Runs at the
+     * end of every tick, so one tick's changes share one fsync. In player mode
+     * the changes are written to the players' attachments instead.
+     */
+    void flushJournal() {
+        if (journal != null && journal.takeFailure()) {
+            // Entries the journal lost are only safe once every shard has been saved again
+            DeathQuotaMod.LOGGER.warn("The death quota journal failed to write; saving every shard");
+            store.markAllDirty();
+            saveShards(false);
+        }
+        if (!store.hasJournalSlots()) {
+            return;
+        }
+        if (journal != null) {
+            for (int slot : store.takeJournalSlots()) {
+                journal.appendRecord(store, slot);
+            }
+        } else if (players != null && players.primary() && players.flush(store, store.takeJournalSlots())) {
+            pendingChanged = true;
+        }
+    }
+
+    /**
+     * Takes a joining player's record from their data attachment, if any.
+     * Runs before the quota rules see the join.
+     */
+    public void joinPlayer(ServerPlayerEntity player) {
+        if (players != null) {
+            // A pending record taken onto its player leaves the state file
+            pendingChanged |= isPending(player.getUuid());
+            players.join(store, player);
+        }
+    }
+
+    /**
+     * Carries the record attachment over to a respawned player entity.
+     */
+    public void respawnPlayer(ServerPlayerEntity player) {
+        if (players != null) {
+            players.respawn(store, player);
+        }
+    }
+
+    /**
+     * Saves the shards changed since the last save. Runs from the server's save
+     * hook, ahead of the vanilla PersistentState write. The shards are
+     * snapshotted here and written on the save thread; with {@code flush} (the
+     * shutdown save and {@code /save-all flush}) the call waits for the write.
+     * If the previous save is still running this one is skipped, and its
+     * shards go out with the next save.
+     */
+    public void saveShards(boolean flush) {
+        if (storage == null) {
+            if (players != null && players.primary()) {
+                // Attachments are written with player data; the state file carries the rest
+                flushJournal();
+                // The previous save has written the state file, so the records it holds can be evicted
+                // and read back from it
+                pendingFile.invalidate();
+                store.setSavingShards(0L);
+                store.trimCold();
+                if (pendingChanged || !Objects.equals(players.summary(store), writtenSummary)) {
+                    markDirty();
+                } else {
+                    // Only records saved with online players changed; the file already holds the rest
+                    store.takeDirtyShards();
+                }
+            }
+            return;
+        }
+        long started = System.nanoTime();
+        DeathQuotaEvents.RecordsSaved event = new DeathQuotaEvents.RecordsSaved();
+        event.begin();
+        flushJournal();
+        finishSave(storage.collect(store, flush));
+        long dirty = storage.isSaving() ? 0L : store.dirtyShards();
+        if (dirty != 0L) {
+            long covered = journal != null ? journal.rotate() : -1L;
+            int resetting = store.resettingShard();
+            if (journal != null && resetting >= 0) {
+                // The segments this save lets go of hold the reset of a shard that is only part
+                // applied; repeat it in the new one, followed by the records changed since
+                journal.appendResetShard(resetting);
+                store.rejournalTouched(resetting);
+                flushJournal();
+            }
+            storage.startSave(store, covered);
+            if (flush) {
+                finishSave(storage.collect(store, true));
+            }
+        }
+        DeathQuotaMetrics.SAVE_TICK_LATENCY.record(System.nanoTime() - started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.shards = Long.bitCount(dirty);
+            event.flush = flush;
+            event.commit();
+        }
+    }
+
+    /**
+     * Result of the last completed shard save (duration and bytes written), or null before the first one.
+     */
+    ShardedRecordStorage.SaveResult lastSave() {
+        return storage != null ? storage.lastSave() : null;
+    }
+
+    /**
+     * Name of the backend records are being saved to, or null before storage is attached.
+     */
+    String storageBackend() {
+        if (players != null && players.primary()) {
+            return PlayerRecordAttachments.NAME;
+        }
+        return storage != null ? storage.backendName() : null;
+    }
+
+    /**
+     * Number of players with a record, including those only kept with offline
+     * players' data in player mode.
+     */
+    public int knownPlayers() {
+        return store.size() + (players != null ? players.offlineCount(0) : 0);
+    }
+
+    /**
+     * Number of players at or past the max lives, counted like {@link #knownPlayers()}.
+     */
+    public int lockedPlayers() {
+        int maxLives = store.maxLives();
+        return store.countWithDeathsAtLeast(maxLives) + (players != null ? players.offlineCount(maxLives) : 0);
+    }
+
+    /**
+     * True when {@code uuid} has no record in memory but may have one saved
+     * with their player data, which can only be read once they join.
+     */
+    public boolean keptWithPlayer(UUID uuid) {
+        return players != null && players.primary() && store.slotOf(uuid) < 0;
+    }
+
+    private boolean isPending(UUID uuid) {
+        return players != null && players.primary() && store.slotOf(uuid) >= 0 && !players.isSynced(uuid);
+    }
+
+    /**
+     * Resets an offline player whose record is kept with their player data
+     * when they next join.
+     */
+    public void resetOnJoin(UUID uuid) {
+        if (players != null) {
+            players.resetOnJoin(uuid);
+        }
+    }
+
+    long totalBytesSaved() {
+        return storage != null ? storage.totalBytesWritten() : 0L;
+    }
+
+    private void finishSave(ShardedRecordStorage.SaveResult result) {
+        if (result == null) {
+            return;
+        }
+        DeathQuotaMetrics.SAVE_WRITE_LATENCY.record(result.durationNanos());
+        DeathQuotaMetrics.BYTES_SAVED.add(result.bytesWritten());
+        if (result.failedShards() != 0L) {
+            return;
+        }
+        // Everything up to the save's journal segment is now forced to disk in the backend
+        if (journal != null && result.journalSegment() >= 0L) {
+            journal.compactThrough(result.journalSegment());
+        }
+        if (legacyRecordsPending) {
+            // Every shard made it to disk, so the state file can drop its copy of the records
+            legacyRecordsPending = false;
+            markDirty();
+        }
     }
 
     /**
@@ -89,6 +450,12 @@ public final class DeathQuotaState extends PersistentState {
         CODEC.encodeStart(NbtOps.INSTANCE, this)
                 .resultOrPartial(error -> DeathQuotaMod.LOGGER.error("Failed to write death quota state: {}", error))
                 .ifPresent(tag -> copyInto(nbt, tag));
+        if (players != null && players.primary()) {
+            pendingChanged = false;
+            writtenSummary = players.summary(store);
+            // Kept resident until the next save, when this write is known to be on disk
+            store.setSavingShards(store.takeDirtyShards());
+        }
         return nbt;
     }
 
@@ -99,51 +466,203 @@ public final class DeathQuotaState extends PersistentState {
     }
 
     public DeathRecord recordDeath(UUID uuid) {
-        DeathRecord record = records.computeIfAbsent(uuid, ignored -> new DeathRecord());
-        markDirty();
-        return record;
+        int slot = slotFor(uuid);
+        store.changed(slot);
+        return new DeathRecord(store, slot);
+    }
+
+    public DeathRecord getOrCreate(UUID uuid) {
+        return new DeathRecord(store, slotFor(uuid));
+    }
+
+    /**
+     * Pins an online player's record in memory, or releases it to the LRU
+     * once they leave. Players without a record are pinned when one is created.
+     */
+    public void setOnline(UUID uuid, boolean online) {
+        if (online ? !onlinePlayers.add(uuid) : !onlinePlayers.remove(uuid)) {
+            return;
+        }
+        int slot = store.slotOf(uuid);
+        if (slot >= 0) {
+            store.setPinned(slot, online);
+        }
+        if (!online && players != null && players.primary()) {
+            // Their attachment gets any change from this tick before the record leaves the store
+            flushJournal();
+            players.leave(store, uuid);
+        }
+        if (!online) {
+            store.trimCold();
+        }
+    }
+
+    /**
+     * Caps how many offline records keep their full data in memory.
+     */
+    void setRecordCacheSize(int records) {
+        store.setColdLimit(records);
+    }
+
+    private int slotFor(UUID uuid) {
+        int slot = store.getOrCreateSlot(uuid);
+        if (!store.pinned(slot) && onlinePlayers.contains(uuid)) {
+            store.setPinned(slot, true);
+        }
+        return slot;
     }
 
     public Optional<DeathRecord> get(UUID uuid) {
-        return Optional.ofNullable(records.get(uuid));
+        return Optional.ofNullable(find(uuid));
+    }
+
+    /**
+     * Variant of {@link #get(UUID)} for hot paths that skips the Optional; returns null when absent.
+     */
+    public DeathRecord find(UUID uuid) {
+        int slot = store.slotOf(uuid);
+        return slot < 0 ? null : new DeathRecord(store, slot);
     }
 
-    public void overwrite(UUID uuid, DeathRecord updated) {
-        records.put(uuid, updated);
-        markDirty();
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Number of records whose cold columns are in memory.
+     */
+    int residentCount() {
+        return store.residentCount();
+    }
+
+    /**
+     * One-based leaderboard position of {@code uuid} (most deaths first, ties
+     * to whoever reached the count earliest), or 0 when they have no deaths.
+     */
+    public int rank(UUID uuid) {
+        int slot = store.slotOf(uuid);
+        return slot < 0 ? 0 : store.rankOf(slot);
+    }
+
+    /**
+     * Number of records with at least one death.
+     */
+    public int rankedCount() {
+        return store.rankedCount();
+    }
+
+    /**
+     * Up to {@code count} records in leaderboard order, starting at the one-based {@code fromRank}.
+     */
+    public List<DeathRecord> ranked(int fromRank, int count) {
+        List<DeathRecord> records = new ArrayList<>(Math.min(count, store.rankedCount()));
+        store.forEachRanked(fromRank, slot -> {
+            records.add(new DeathRecord(store, slot));
+            return records.size() < count;
+        });
+        return records;
+    }
+
+    /**
+     * One page of the records matching {@code filter}. Asking for the page
+     * after the one {@code viewer} was last shown continues from where that
+     * page ended; see {@link RecordListing}.
+     */
+    public RecordListing.Page list(String viewer, RecordListing.Filter filter, int page) {
+        return listing.page(store, viewer, filter, page);
     }
 
     public void remove(UUID uuid) {
-        if (records.remove(uuid) != null) {
-            markDirty();
+        // Flush first so a pending image of this record cannot land after its removal
+        flushJournal();
+        pendingChanged |= isPending(uuid);
+        if (store.remove(uuid) && journal != null) {
+            journal.appendRemove(uuid);
+        }
+        if (players != null && players.primary()) {
+            store.forgetRemoved();
         }
     }
 
-    public int resetAll() {
-        if (records.isEmpty()) {
-            return 0;
-        }
-        records.values().forEach(DeathRecord::reset);
-        markDirty();
-        return records.size();
+    /**
+     * Starts a reset of every record, applied one shard at a time by
+     * {@link #beginResetShard(int)} and {@link #resetShardChunk(int)}, and
+     * closed by {@link #endResetAll()}. A shard's reset is journaled as a unit
+     * before its records are reset a chunk at a time, so a crash part way
+     * through replays whole shards reset and never a torn one. Records changed after this
+     * call, such as by a death while the reset runs, keep their newer state.
+     * Life pools get all their lives back here. Returns how many records kept
+     * only with offline players' data were reset; those are applied when each
+     * player next joins.
+     */
+    int beginResetAll() {
+        // Images queued so far describe records as they were before the reset
+        flushJournal();
+        store.beginBulkReset();
+        pools.resetAll();
+        return players != null ? players.resetAll() : 0;
     }
 
-    public int reconcileLocks(int maxLives) {
-        if (records.isEmpty()) {
-            return 0;
-        }
-        int changes = 0;
-        for (DeathRecord record : records.values()) {
-            boolean shouldLock = record.getDeathCount() >= maxLives;
-            if (record.isSpectatorLocked() != shouldLock) {
-                record.setSpectatorLocked(shouldLock);
-                changes++;
-            }
+    /**
+     * Journals the reset of {@code shard} and starts applying it through
+     * {@link #resetShardChunk(int)}.
+     */
+    void beginResetShard(int shard) {
+        if (journal != null) {
+            journal.appendResetShard(shard);
         }
-        if (changes > 0) {
-            markDirty();
+        if (players != null && players.primary() && !store.slotsInShard(shard).isEmpty()) {
+            // Pending records are reset in place, without passing through the journal slots
+            pendingChanged = true;
         }
-        return changes;
+        store.beginShardReset(shard);
+    }
+
+    /**
+     * Resets up to {@code records} more records of the shard being reset and
+     * returns how many were reset.
+     */
+    int resetShardChunk(int records) {
+        return store.resetShardChunk(records);
+    }
+
+    boolean isResettingShard() {
+        return store.resettingShard() >= 0;
+    }
+
+    void endResetAll() {
+        store.endBulkReset();
+    }
+
+    /**
+     * Takes the lock threshold from {@code config} from now on, so a record
+     * is locked exactly when the config's max lives says it is.
+     */
+    public void attachConfig(DeathQuotaConfig config) {
+        store.useMaxLives(config::getMaxLives);
     }
 
+    /**
+     * Number of records a change of max lives from {@code from} to {@code to}
+     * locks or unlocks. Lock state is derived from the death count, so this
+     * costs the same for ten records as for half a million.
+     */
+    public int lockChanges(int from, int to) {
+        return store.lockChanges(from, to);
+    }
+
+    /**
+     * Holds the reflective state type, so constructing a state without a
+     * server (as the simulator does) never touches PersistentStateCompat.
+     */
+    private static final class StateType {
+        // Cross-version compatible state type bridging all 1.21.x flavors via reflection
+        private static final Object INSTANCE = PersistentStateCompat.createType(
+            STORAGE_KEY,           // storage ID (not MOD_ID!)
+            DeathQuotaState::new,  // constructor
+            DeathQuotaState::readFromNbt,  // NBT reader (unused in modern API)
+            CODEC,                 // serialization codec
+            DataFixTypeCompat.persistentDataType()  // fix type (can be null)
+        );
+    }
 }
@@ -1,121 +1,154 @@
 package net.deathquota.mod.death;
 
 import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.BlockPos;
-import net.deathquota.mod.util.NbtCompat;
 
 import java.util.Optional;
-
+import java.util.UUID;
+
+/**
+ * Lightweight view over one slot of a {@link DeathRecordStore}.
+ *
+ * Views hold no data of their own, so they are cheap to hand out and stay
+ * valid for as long as the record exists in the store. Obtain them through
+ * {@link DeathQuotaState}; mutations write straight into the store's columns
+ * and mark the record's shard dirty.
+ */
 public final class DeathRecord {
-    public static final Codec<DeathRecord> CODEC = NbtCompound.CODEC.xmap(DeathRecord::fromNbt, DeathRecord::toNbt);
-
-    private int deathCount;
-    private boolean spectatorLocked;
-    private BlockPos lastDeathPos;
-    private String lastDeathDimension;
-    private String lastDeathMessage;
-    private long lastDeathGameTime;
-    private float lastYaw;
-    private float lastPitch;
-
-    public int increment(int maxLives) {
-        deathCount++;
-        if (deathCount >= maxLives) {
-            spectatorLocked = true;
-        }
+    private final DeathRecordStore store;
+    private final int slot;
+
+    DeathRecord(DeathRecordStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+
+    public UUID getUuid() {
+        return store.uuidAt(slot);
+    }
+
+    public int increment() {
+        int deathCount = store.deaths(slot) + 1;
+        store.setDeaths(slot, deathCount);
+        store.changed(slot);
         return deathCount;
     }
 
     public int getDeathCount() {
-        return deathCount;
+        return store.deaths(slot);
     }
 
+    /**
+     * True while the death count is at or above the current max lives.
+     */
     public boolean isSpectatorLocked() {
-        return spectatorLocked;
+        return store.locked(slot);
     }
 
-    public void setSpectatorLocked(boolean spectatorLocked) {
-        this.spectatorLocked = spectatorLocked;
+    public Optional<BlockPos> getLastDeathPos() {
+        return store.hasPosition(slot) ? Optional.of(BlockPos.fromLong(store.position(slot))) : Optional.empty();
     }
 
-    public Optional<BlockPos> getLastDeathPos() {
-        return Optional.ofNullable(lastDeathPos);
+    /**
+     * True when a last death position is recorded; a death at the origin counts.
+     */
+    public boolean hasLastDeathPos() {
+        return store.hasPosition(slot);
+    }
+
+    /**
+     * Last death position as {@link BlockPos#asLong()}; only meaningful when
+     * {@link #hasLastDeathPos()}, since the origin packs to 0 as well.
+     */
+    public long getLastDeathPackedPos() {
+        return store.position(slot);
     }
 
     public Optional<String> getLastDeathDimension() {
-        return Optional.ofNullable(lastDeathDimension);
+        return Optional.ofNullable(store.dimensionName(slot));
+    }
+
+    /**
+     * Interned {@link DimensionRegistry} id of the last death's dimension, or
+     * {@link DimensionRegistry#NO_DIMENSION}.
+     */
+    public int getLastDeathDimensionId() {
+        return store.dimension(slot);
     }
 
     public Optional<String> getLastDeathMessage() {
-        return Optional.ofNullable(lastDeathMessage);
+        return Optional.ofNullable(store.message(slot));
     }
 
     public long getLastDeathGameTime() {
-        return lastDeathGameTime;
+        return store.time(slot);
     }
 
     public float getLastYaw() {
-        return lastYaw;
+        return store.yaw(slot);
     }
 
     public float getLastPitch() {
-        return lastPitch;
+        return store.pitch(slot);
     }
 
     public void setLastDeath(BlockPos pos, String dimensionId, float yaw, float pitch, long gameTime) {
-        this.lastDeathPos = pos;
-        this.lastDeathDimension = dimensionId;
-        this.lastYaw = yaw;
-        this.lastPitch = pitch;
-        this.lastDeathGameTime = gameTime;
+        setLastDeath(pos, DimensionRegistry.intern(dimensionId), yaw, pitch, gameTime);
+    }
+
+    public void setLastDeath(BlockPos pos, int dimensionId, float yaw, float pitch, long gameTime) {
+        store.setLastDeath(slot, pos != null, pos == null ? 0L : pos.asLong(), dimensionId, yaw, pitch, gameTime);
+        store.changed(slot);
+    }
+
+    public void setLastDeath(long packedPos, int dimensionId, float yaw, float pitch, long gameTime) {
+        store.setLastDeath(slot, true, packedPos, dimensionId, yaw, pitch, gameTime);
+        store.changed(slot);
     }
 
     public void setLastDeathMessage(String message) {
-        this.lastDeathMessage = message;
+        store.setMessage(slot, message);
+        store.changed(slot);
     }
 
     public void reset() {
-        deathCount = 0;
-        spectatorLocked = false;
-        lastDeathPos = null;
-        lastDeathDimension = null;
-        lastDeathMessage = null;
-        lastDeathGameTime = 0L;
-        lastYaw = 0;
-        lastPitch = 0;
+        store.reset(slot);
+        store.changed(slot);
     }
 
     public NbtCompound toNbt() {
-        NbtCompound nbt = new NbtCompound();
-        nbt.putInt("deaths", deathCount);
-        nbt.putBoolean("locked", spectatorLocked);
-        if (lastDeathPos != null) {
-            nbt.putLong("pos", lastDeathPos.asLong());
-        }
-        if (lastDeathDimension != null) {
-            nbt.putString("dimension", lastDeathDimension);
-        }
-        if (lastDeathMessage != null) {
-            nbt.putString("message", lastDeathMessage);
-        }
-        nbt.putLong("time", lastDeathGameTime);
-        nbt.putFloat("yaw", lastYaw);
-        nbt.putFloat("pitch", lastPitch);
-        return nbt;
-    }
-
-    public static DeathRecord fromNbt(NbtCompound nbt) {
-        DeathRecord record = new DeathRecord();
-        // Use NbtCompat for cross-version compatibility (1.21.0-1.21.1 vs 1.21.2+)
-        record.deathCount = NbtCompat.getInt(nbt, "deaths", 0);
-        record.spectatorLocked = NbtCompat.getBoolean(nbt, "locked", false);
-        NbtCompat.getBlockPos(nbt, "pos").ifPresent(value -> record.lastDeathPos = value);
-        NbtCompat.getOptionalString(nbt, "dimension").ifPresent(value -> record.lastDeathDimension = value);
-        NbtCompat.getOptionalString(nbt, "message").ifPresent(value -> record.lastDeathMessage = value);
-        record.lastDeathGameTime = NbtCompat.getLong(nbt, "time", 0L);
-        record.lastYaw = NbtCompat.getFloat(nbt, "yaw", 0f);
-        record.lastPitch = NbtCompat.getFloat(nbt, "pitch", 0f);
-        return record;
+        return store.toNbt(slot);
+    }
+
+    /**
+     * Detached copy of this record's fields, as {@link Values#CODEC} encodes them.
+     */
+    public Values values() {
+        return store.values(slot);
+    }
+
+    /**
+     * One record's fields, detached from the store. {@link #CODEC} is the
+     * field-level codec for the on-disk layout: deaths, locked, pos,
+     * dimension, message, time, yaw and pitch, with fields that hold their
+     * default value omitted and read back as defaults. The store streams
+     * every record through it.
+     */
+    public record Values(int deaths, boolean locked, Optional<Long> pos, Optional<String> dimension,
+                         Optional<String> message, long time, float yaw, float pitch) {
+        public static final Codec<Values> CODEC = RecordCodecBuilder.create(instance ->
+                instance.group(
+                        Codec.INT.optionalFieldOf("deaths", 0).forGetter(Values::deaths),
+                        Codec.BOOL.optionalFieldOf("locked", false).forGetter(Values::locked),
+                        Codec.LONG.optionalFieldOf("pos").forGetter(Values::pos),
+                        Codec.STRING.optionalFieldOf("dimension").forGetter(Values::dimension),
+                        Codec.STRING.optionalFieldOf("message").forGetter(Values::message),
+                        Codec.LONG.optionalFieldOf("time", 0L).forGetter(Values::time),
+                        Codec.FLOAT.optionalFieldOf("yaw", 0f).forGetter(Values::yaw),
+                        Codec.FLOAT.optionalFieldOf("pitch", 0f).forGetter(Values::pitch)
+                ).apply(instance, Values::new)
+        );
     }
 }
@@ -0,0 +1,1144 @@
+package net.deathquota.mod.death;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.RecordBuilder;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.util.NbtCompat;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtOps;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+/**
+ * Columnar storage for every DeathRecord in a world.
+ *
+ * Each player occupies an int slot; the slot's fields live in parallel
+ * primitive arrays so a record costs a few dozen bytes instead of a UUID, a
+ * DeathRecord, a BlockPos and two Strings. UUIDs are mapped to slots through
+ * an open-addressing table keyed on their msb/lsb halves. Slots are stable
+ * for the lifetime of a record, which is what lets a {@link DeathRecord} act
+ * as a plain (store, slot) view.
+ *
+ * Columns come in two tiers. The hot tier (UUID, death count, last death
+ * time and dimension, flag bits) is resident for every record, so lock
+ * checks, reset-all and the order indexes never touch the disk. The cold
+ * tier (last death position, rotation and message) is a {@link ColdTier}
+ * bounded by an LRU: a slot's cold entry is loaded through the
+ * {@link ColdLoader} the first time it is read, and least recently used
+ * entries are dropped again once their shard is safely on disk. Records of
+ * online players are pinned and never dropped.
+ *
+ * Records are also partitioned into {@link #SHARD_COUNT} shards by UUID hash.
+ * A {@link ShardTracker} keeps each shard's slots, which shards changed since
+ * the last save and which UUIDs left them, so {@link ShardedRecordStorage}
+ * can rewrite just the shards that changed. Changed records are flagged as
+ * well, for backends that write rows, not shards.
+ *
+ * Lock state is not stored: a record is locked while its death count is at
+ * least the max lives, read from whatever {@link #useMaxLives(IntSupplier)}
+ * was given (the config, once the state is attached to it). A histogram of
+ * death counts is kept up to date on every write, so counting the records a
+ * max lives change locks or unlocks is a constant-time bucket sum instead of
+ * a pass over every record.
+ *
+ * The {@link OrderIndexes} order the records for queries, by death count
+ * and by last death dimension, and are updated in O(log n) whenever the
+ * columns they are keyed on change.
+ */
+final class DeathRecordStore {
+    static final int NO_DIMENSION = DimensionRegistry.NO_DIMENSION;
+    // One bit per shard in the dirty mask, so this cannot exceed 64
+    static final int SHARD_COUNT = 64;
+    static final int DEFAULT_COLD_LIMIT = ColdTier.DEFAULT_LIMIT;
+    // One bucket per death count the max-lives range can tell apart; the last also holds everything above
+    static final int HISTOGRAM_BUCKETS = 100;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final byte FLAG_LIVE = 1;
+    private static final byte FLAG_JOURNAL_PENDING = 4;
+    private static final byte FLAG_PINNED = 8;
+    private static final byte FLAG_BULK_TOUCHED = 16;
+    // Changed since the last snapshot its backend saved; row-level backends write only these
+    private static final byte FLAG_UNSAVED = 32;
+    // The cold position column holds a last death position; any packed value, 0 (the origin) included, is valid
+    private static final byte FLAG_HAS_POS = 64;
+
+    // coldRefs values below zero; anything else is an index into the cold table
+    private static final int COLD_DEFAULT = -2;
+    private static final int COLD_UNLOADED = -1;
+    // How far eviction walks up from the LRU tail looking for a clean entry
+    private static final int EVICTION_SCAN = 64;
+
+    /**
+     * Streams the records map straight into and out of the columns: a map from
+     * UUID string to one record each, encoded by {@link DeathRecord.Values#CODEC}.
+     */
+    static final Codec<DeathRecordStore> CODEC = new Codec<>() {
+        @Override
+        public <T> DataResult<Pair<DeathRecordStore, T>> decode(DynamicOps<T> ops, T input) {
+            return ops.getMapValues(input).map(entries -> {
+                DeathRecordStore store = new DeathRecordStore();
+                entries.forEach(entry -> store.decodeEntry(ops, entry.getFirst(), entry.getSecond()));
+                return Pair.of(store, input);
+            });
+        }
+
+        @Override
+        public <T> DataResult<T> encode(DeathRecordStore store, DynamicOps<T> ops, T prefix) {
+            return store.encodeRecords(ops, prefix, slot -> true);
+        }
+    };
+
+    /**
+     * Some of a store's live records, picked by slot, so they can be encoded
+     * straight from the columns instead of being copied into a store of their own.
+     */
+    record Selection(DeathRecordStore store, IntPredicate slots) {
+        /**
+         * Encodes the picked records as {@link DeathRecordStore#CODEC} encodes a
+         * whole store; decodes every record.
+         */
+        static final Codec<Selection> CODEC = new Codec<>() {
+            @Override
+            public <T> DataResult<Pair<Selection, T>> decode(DynamicOps<T> ops, T input) {
+                return DeathRecordStore.CODEC.decode(ops, input)
+                    .map(pair -> pair.mapFirst(store -> new Selection(store, slot -> true)));
+            }
+
+            @Override
+            public <T> DataResult<T> encode(Selection selection, DynamicOps<T> ops, T prefix) {
+                return selection.store.encodeRecords(ops, prefix, selection.slots);
+            }
+        };
+    }
+
+    /**
+     * Fetches the stored compound of a record whose cold columns are not resident.
+     */
+    interface ColdLoader {
+        /**
+         * Returns the record's compound as last saved, or null when it has never been saved.
+         */
+        NbtCompound load(UUID uuid, int shard);
+    }
+
+    // Open-addressing index: bucket -> slot + 1, 0 marks an empty bucket
+    private int[] index;
+    private int indexMask;
+
+    // Hot tier, one entry per slot
+    private long[] uuidMost;
+    private long[] uuidLeast;
+    private int[] deaths;
+    private long[] times;
+    private int[] dimensions;
+    private byte[] flags;
+    private int[] coldRefs;
+
+    private final int[] deathHistogram = new int[HISTOGRAM_BUCKETS];
+    private IntSupplier maxLives = () -> DeathQuotaMod.DEFAULT_MAX_DEATHS;
+    private final OrderIndexes order = new OrderIndexes();
+
+    private final ColdTier coldTier = new ColdTier(INITIAL_CAPACITY);
+    private ColdLoader coldLoader;
+
+    private int highWater;
+    private int size;
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+
+    private final ShardTracker shards = new ShardTracker();
+
+    private boolean journaling;
+    private final IntArrayList journalSlots = new IntArrayList();
+
+    // Slots changed while a shard-by-shard reset is running; the reset leaves them alone
+    private boolean bulkReset;
+    private final IntArrayList bulkTouched = new IntArrayList();
+    // Shard a chunked reset is part way through, or -1, and the position in its slot list it has reached
+    private int resettingShard = -1;
+    private int resetCursor;
+
+    DeathRecordStore() {
+        allocateColumns(INITIAL_CAPACITY);
+        index = new int[INITIAL_CAPACITY * 2];
+        indexMask = index.length - 1;
+    }
+
+    /**
+     * Marks the shard holding {@code slot} as needing a rewrite.
+     */
+    void changed(int slot) {
+        shards.markDirty(shardOfSlot(slot));
+        flags[slot] |= FLAG_UNSAVED;
+        if (journaling && (flags[slot] & FLAG_JOURNAL_PENDING) == 0) {
+            flags[slot] |= FLAG_JOURNAL_PENDING;
+            journalSlots.add(slot);
+        }
+        if (bulkReset && (flags[slot] & FLAG_BULK_TOUCHED) == 0) {
+            flags[slot] |= FLAG_BULK_TOUCHED;
+            bulkTouched.add(slot);
+        }
+    }
+
+    /**
+     * Starts collecting changed slots for {@link DeathJournal}; see {@link #takeJournalSlots()}.
+     */
+    void setJournaling(boolean journaling) {
+        this.journaling = journaling;
+    }
+
+    /**
+     * Returns the live slots changed since the last call, each once, and clears the list.
+     */
+    int[] takeJournalSlots() {
+        int[] slots = new int[journalSlots.size()];
+        int count = 0;
+        for (int i = 0; i < journalSlots.size(); i++) {
+            int slot = journalSlots.getInt(i);
+            if ((flags[slot] & FLAG_JOURNAL_PENDING) != 0) {
+                flags[slot] &= ~FLAG_JOURNAL_PENDING;
+                if (isLive(slot)) {
+                    slots[count++] = slot;
+                }
+            }
+        }
+        journalSlots.clear();
+        return count == slots.length ? slots : Arrays.copyOf(slots, count);
+    }
+
+    boolean hasJournalSlots() {
+        return !journalSlots.isEmpty();
+    }
+
+    static int shardOf(UUID uuid) {
+        return shardOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    static int shardOf(long most, long least) {
+        // High bits of the mix, so shard choice is independent of the index bucket (low bits)
+        return (int) (HashCommon.mix(most ^ least) >>> 58);
+    }
+
+    int shardOfSlot(int slot) {
+        return shardOf(uuidMost[slot], uuidLeast[slot]);
+    }
+
+    /**
+     * Live slots belonging to {@code shard}. The list is owned by the store; do not modify it.
+     */
+    IntArrayList slotsInShard(int shard) {
+        return shards.slots(shard);
+    }
+
+    long dirtyShards() {
+        return shards.dirty();
+    }
+
+    /**
+     * Returns the dirty mask and clears it; callers re-mark shards they failed to write.
+     */
+    long takeDirtyShards() {
+        return shards.takeDirty();
+    }
+
+    void markShardsDirty(long mask) {
+        shards.markDirty(mask);
+    }
+
+    void markAllDirty() {
+        shards.markAllDirty();
+        for (int slot = 0; slot < highWater; slot++) {
+            if (isLive(slot)) {
+                flags[slot] |= FLAG_UNSAVED;
+            }
+        }
+    }
+
+    /**
+     * Puts a snapshot the backend failed to write back in line for the next
+     * save: its shard is dirty again, the records it carried that still exist
+     * are unsaved again, and its removals are pending again.
+     */
+    void restoreSnapshot(ShardSnapshot snapshot) {
+        shards.markDirty(snapshot.shard);
+        for (int i = 0; i < snapshot.size(); i++) {
+            int slot = slotOf(snapshot.uuidMost(i), snapshot.uuidLeast(i));
+            if (slot >= 0) {
+                flags[slot] |= FLAG_UNSAVED;
+            }
+        }
+        shards.restoreRemoved(snapshot.shard, snapshot.removed());
+    }
+
+    /**
+     * Drops the removals recorded for every shard, for a store whose records
+     * are not saved shard by shard and so never snapshots them.
+     */
+    void forgetRemoved() {
+        shards.forgetRemoved();
+    }
+
+    /**
+     * Shards captured by a save that has not completed yet. Their cold entries
+     * are not evictable, since reloading them would read the previous file.
+     */
+    void setSavingShards(long mask) {
+        shards.setSaving(mask);
+    }
+
+    void setColdLoader(ColdLoader coldLoader) {
+        this.coldLoader = coldLoader;
+    }
+
+    void setColdLimit(int coldLimit) {
+        coldTier.setLimit(coldLimit);
+        trimCold();
+    }
+
+    int coldLimit() {
+        return coldTier.limit();
+    }
+
+    /**
+     * Number of records whose cold columns are currently resident.
+     */
+    int residentCount() {
+        return coldTier.count();
+    }
+
+    boolean isColdResident(int slot) {
+        return coldRefs[slot] != COLD_UNLOADED;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Exclusive upper bound for slot iteration; check {@link #isLive(int)} for each slot below it.
+     */
+    int slotLimit() {
+        return highWater;
+    }
+
+    boolean isLive(int slot) {
+        return (flags[slot] & FLAG_LIVE) != 0;
+    }
+
+    UUID uuidAt(int slot) {
+        return new UUID(uuidMost[slot], uuidLeast[slot]);
+    }
+
+    int slotOf(UUID uuid) {
+        return slotOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    int slotOf(long most, long least) {
+        int bucket = bucketOf(most, least);
+        while (true) {
+            int entry = index[bucket];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (uuidMost[slot] == most && uuidLeast[slot] == least) {
+                return slot;
+            }
+            bucket = (bucket + 1) & indexMask;
+        }
+    }
+
+    int getOrCreateSlot(UUID uuid) {
+        return getOrCreateSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    int getOrCreateSlot(long most, long least) {
+        int existing = slotOf(most, least);
+        if (existing >= 0) {
+            return existing;
+        }
+        if ((size + 1) * 2 > index.length) {
+            rehash(index.length * 2);
+        }
+        int slot = allocateSlot();
+        uuidMost[slot] = most;
+        uuidLeast[slot] = least;
+        flags[slot] = FLAG_LIVE | FLAG_UNSAVED;
+        coldRefs[slot] = COLD_DEFAULT;
+        deaths[slot] = 0;
+        times[slot] = 0L;
+        dimensions[slot] = NO_DIMENSION;
+        deathHistogram[0]++;
+        reindex(slot);
+        int bucket = bucketOf(most, least);
+        while (index[bucket] != 0) {
+            bucket = (bucket + 1) & indexMask;
+        }
+        index[bucket] = slot + 1;
+        size++;
+        int shard = shardOf(most, least);
+        shards.add(shard, slot);
+        shards.markDirty(shard);
+        return slot;
+    }
+
+    boolean remove(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        int bucket = bucketOf(most, least);
+        int slot;
+        while (true) {
+            int entry = index[bucket];
+            if (entry == 0) {
+                return false;
+            }
+            slot = entry - 1;
+            if (uuidMost[slot] == most && uuidLeast[slot] == least) {
+                break;
+            }
+            bucket = (bucket + 1) & indexMask;
+        }
+        // Backward-shift deletion keeps every probe chain intact without tombstones
+        int hole = bucket;
+        int next = (hole + 1) & indexMask;
+        while (index[next] != 0) {
+            int moved = index[next] - 1;
+            int home = bucketOf(uuidMost[moved], uuidLeast[moved]);
+            if (((next - home) & indexMask) >= ((next - hole) & indexMask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+            next = (next + 1) & indexMask;
+        }
+        index[hole] = 0;
+
+        int shard = shardOf(most, least);
+        if (shard == resettingShard) {
+            // Keep the chunked reset from skipping or repeating a slot as another takes this one's place
+            resetCursor = shards.remove(shard, slot, resetCursor);
+        } else {
+            shards.remove(shard, slot, 0);
+        }
+        shards.markDirty(shard);
+        shards.addRemoved(shard, most, least);
+        clearSlot(slot);
+        deathHistogram[0]--;
+        order.remove(slot);
+        flags[slot] = 0;
+        uuidMost[slot] = 0L;
+        uuidLeast[slot] = 0L;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(8, freeCount * 2));
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+        return true;
+    }
+
+    int deaths(int slot) {
+        return deaths[slot];
+    }
+
+    void setDeaths(int slot, int value) {
+        deathHistogram[bucket(deaths[slot])]--;
+        deathHistogram[bucket(value)]++;
+        deaths[slot] = value;
+        reindex(slot);
+    }
+
+    // Keeps the order indexes in step with the hot columns they are keyed on
+    private void reindex(int slot) {
+        order.update(slot, deaths[slot], times[slot], dimensions[slot]);
+    }
+
+    boolean locked(int slot) {
+        return deaths[slot] >= maxLives.getAsInt();
+    }
+
+    int maxLives() {
+        return maxLives.getAsInt();
+    }
+
+    /**
+     * Sets where the lock threshold comes from; until called it is
+     * {@link DeathQuotaMod#DEFAULT_MAX_DEATHS}.
+     */
+    void useMaxLives(IntSupplier maxLives) {
+        this.maxLives = maxLives;
+    }
+
+    /**
+     * Number of live records with exactly {@code deathCount} deaths; the last
+     * bucket counts every record at or above it.
+     */
+    int recordsWithDeaths(int deathCount) {
+        return deathHistogram[bucket(deathCount)];
+    }
+
+    static int bucket(int deathCount) {
+        return Math.min(Math.max(deathCount, 0), HISTOGRAM_BUCKETS - 1);
+    }
+
+    boolean pinned(int slot) {
+        return (flags[slot] & FLAG_PINNED) != 0;
+    }
+
+    /**
+     * Pins or unpins a record's cold columns. Pinning loads them right away so
+     * later reads for an online player never wait on the disk.
+     */
+    void setPinned(int slot, boolean pinned) {
+        if (pinned) {
+            flags[slot] |= FLAG_PINNED;
+            readCold(slot);
+        } else {
+            flags[slot] &= ~FLAG_PINNED;
+        }
+    }
+
+    /**
+     * True when the record has a last death position, loading its cold columns if needed.
+     */
+    boolean hasPosition(int slot) {
+        return readCold(slot) >= 0 && (flags[slot] & FLAG_HAS_POS) != 0;
+    }
+
+    /**
+     * Packed BlockPos of the last death; only meaningful when {@link #hasPosition(int)}.
+     */
+    long position(int slot) {
+        int cold = readCold(slot);
+        return cold < 0 ? 0L : coldTier.position(cold);
+    }
+
+    private void setHasPosition(int slot, boolean hasPosition) {
+        if (hasPosition) {
+            flags[slot] |= FLAG_HAS_POS;
+        } else {
+            flags[slot] &= ~FLAG_HAS_POS;
+        }
+    }
+
+    int dimension(int slot) {
+        return dimensions[slot];
+    }
+
+    String dimensionName(int slot) {
+        return DimensionRegistry.name(dimension(slot));
+    }
+
+    float yaw(int slot) {
+        int cold = readCold(slot);
+        return cold < 0 ? 0f : coldTier.yaw(cold);
+    }
+
+    float pitch(int slot) {
+        int cold = readCold(slot);
+        return cold < 0 ? 0f : coldTier.pitch(cold);
+    }
+
+    long time(int slot) {
+        return times[slot];
+    }
+
+    private void setLastDeathKey(int slot, int dimensionId, long time) {
+        dimensions[slot] = dimensionId;
+        times[slot] = time;
+        reindex(slot);
+    }
+
+    /**
+     * One-based leaderboard position of {@code slot}, or 0 when it has no deaths.
+     */
+    int rankOf(int slot) {
+        return deaths[slot] > 0 ? order.rank(slot) : 0;
+    }
+
+    /**
+     * Number of records on the leaderboard, i.e. with at least one death.
+     */
+    int rankedCount() {
+        return size - deathHistogram[0];
+    }
+
+    /**
+     * Passes slots in leaderboard order, starting at the one-based {@code fromRank},
+     * to {@code sink} until it returns false or the records with deaths run out.
+     */
+    void forEachRanked(int fromRank, IntPredicate sink) {
+        order.forEachInDeathOrder(fromRank, slot -> deaths[slot] > 0 && sink.test(slot));
+    }
+
+    /**
+     * Every live record keyed on (-deaths, last death time): most deaths first,
+     * records without deaths last. The tree is owned by the store; do not modify it.
+     */
+    SlotTreap deathOrder() {
+        return order.deathOrder();
+    }
+
+    /**
+     * Records with a last death keyed on (dimension id, -last death time): grouped
+     * by dimension, most recent first. The tree is owned by the store; do not modify it.
+     */
+    SlotTreap dimensionOrder() {
+        return order.dimensionOrder();
+    }
+
+    /**
+     * Number of live records with at least {@code deathCount} deaths, from the
+     * histogram. Exact for counts below {@value #HISTOGRAM_BUCKETS}.
+     */
+    int countWithDeathsAtLeast(int deathCount) {
+        if (deathCount <= 0) {
+            return size;
+        }
+        int count = 0;
+        for (int bucket = bucket(deathCount); bucket < HISTOGRAM_BUCKETS; bucket++) {
+            count += deathHistogram[bucket];
+        }
+        return count;
+    }
+
+    String message(int slot) {
+        int cold = readCold(slot);
+        return cold < 0 ? null : coldTier.message(cold);
+    }
+
+    void setLastDeath(int slot, boolean hasPosition, long packedPos, int dimensionId, float yaw, float pitch,
+                      long gameTime) {
+        int cold = writeCold(slot);
+        setHasPosition(slot, hasPosition);
+        coldTier.setPosition(cold, hasPosition ? packedPos : 0L);
+        coldTier.setYaw(cold, yaw);
+        coldTier.setPitch(cold, pitch);
+        setLastDeathKey(slot, dimensionId, gameTime);
+    }
+
+    void setMessage(int slot, String message) {
+        coldTier.setMessage(writeCold(slot), message);
+    }
+
+    void reset(int slot) {
+        clearSlot(slot);
+        flags[slot] = (byte) (FLAG_LIVE | FLAG_UNSAVED | (flags[slot] & (FLAG_JOURNAL_PENDING | FLAG_PINNED | FLAG_BULK_TOUCHED)));
+    }
+
+    /**
+     * Starts a reset that is applied one shard at a time through
+     * {@link #beginShardReset(int)} and {@link #resetShardChunk(int)}. Records
+     * changed from now on are considered newer than the reset and are skipped by it.
+     */
+    void beginBulkReset() {
+        bulkReset = true;
+    }
+
+    void endBulkReset() {
+        for (int i = 0; i < bulkTouched.size(); i++) {
+            flags[bulkTouched.getInt(i)] &= ~FLAG_BULK_TOUCHED;
+        }
+        bulkTouched.clear();
+        bulkReset = false;
+    }
+
+    /**
+     * Resets every record of {@code shard} and returns how many were reset.
+     */
+    int resetShard(int shard) {
+        beginShardReset(shard);
+        return resetShardChunk(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Starts resetting {@code shard} in chunks through {@link #resetShardChunk(int)}.
+     */
+    void beginShardReset(int shard) {
+        resettingShard = shard;
+        resetCursor = 0;
+    }
+
+    /**
+     * Shard a chunked reset is part way through, or -1 when none is.
+     */
+    int resettingShard() {
+        return resettingShard;
+    }
+
+    /**
+     * Resets up to {@code records} more records of the shard being reset and
+     * returns how many were reset; the shard is done, and marked dirty, once
+     * {@link #resettingShard()} is back to -1. During a bulk reset, records
+     * changed since it began are kept and marked changed again, so their
+     * journal image lands after the shard's reset entry.
+     */
+    int resetShardChunk(int records) {
+        if (resettingShard < 0) {
+            return 0;
+        }
+        IntArrayList slots = shards.slots(resettingShard);
+        int end = (int) Math.min(slots.size(), (long) resetCursor + records);
+        int reset = 0;
+        for (; resetCursor < end; resetCursor++) {
+            int slot = slots.getInt(resetCursor);
+            if ((flags[slot] & FLAG_BULK_TOUCHED) != 0) {
+                changed(slot);
+                continue;
+            }
+            reset(slot);
+            reset++;
+        }
+        if (resetCursor >= slots.size()) {
+            if (!slots.isEmpty()) {
+                shards.markDirty(resettingShard);
+            }
+            resettingShard = -1;
+        }
+        return reset;
+    }
+
+    /**
+     * Marks the records of {@code shard} changed since the bulk reset began
+     * as changed again, so their journal images follow a reset entry for the
+     * shard that is written after this call.
+     */
+    void rejournalTouched(int shard) {
+        for (int i = 0; i < bulkTouched.size(); i++) {
+            int slot = bulkTouched.getInt(i);
+            if (isLive(slot) && shardOfSlot(slot) == shard) {
+                flags[slot] &= ~FLAG_JOURNAL_PENDING;
+                changed(slot);
+            }
+        }
+    }
+
+    /**
+     * Number of records whose lock state differs between a max lives of
+     * {@code from} and one of {@code to}: the histogram buckets between the two.
+     * Thresholds are expected within 1..{@value #HISTOGRAM_BUCKETS} - 1, where the count is exact.
+     */
+    int lockChanges(int from, int to) {
+        int changes = 0;
+        for (int bucket = bucket(Math.min(from, to)); bucket < bucket(Math.max(from, to)); bucket++) {
+            changes += deathHistogram[bucket];
+        }
+        return changes;
+    }
+
+    /**
+     * Drops least recently used cold entries until the resident count is back
+     * under the limit. Only entries that are unpinned and whose shard has no
+     * unsaved or in-flight changes are dropped, so the limit is soft: it can be
+     * exceeded until the next save completes.
+     */
+    void trimCold() {
+        int cold = coldTier.leastRecent();
+        int scanned = 0;
+        while (coldTier.overLimit() && cold >= 0 && scanned < EVICTION_SCAN) {
+            int previous = coldTier.moreRecent(cold);
+            int slot = coldTier.owner(cold);
+            if (!pinned(slot) && shards.isSettled(shardOfSlot(slot))) {
+                releaseCold(slot);
+                coldRefs[slot] = COLD_UNLOADED;
+            } else {
+                scanned++;
+            }
+            cold = previous;
+        }
+    }
+
+    NbtCompound toNbt(int slot) {
+        int cold = readCold(slot);
+        String dimension = DimensionRegistry.name(dimensions[slot]);
+        if (cold < 0) {
+            return recordNbt(deaths[slot], locked(slot), times[slot], dimension, false, 0L, null, 0f, 0f);
+        }
+        return recordNbt(deaths[slot], locked(slot), times[slot], dimension, (flags[slot] & FLAG_HAS_POS) != 0,
+            coldTier.position(cold), coldTier.message(cold), coldTier.yaw(cold), coldTier.pitch(cold));
+    }
+
+    static NbtCompound recordNbt(int deaths, boolean locked, long time, String dimension, boolean hasPos, long pos,
+                                 String message, float yaw, float pitch) {
+        NbtCompound nbt = new NbtCompound();
+        putHot(nbt, deaths, locked, time, dimension);
+        // Present whenever a position is recorded, so a death at the origin keeps its location
+        if (hasPos) {
+            nbt.putLong("pos", pos);
+        }
+        if (message != null) {
+            nbt.putString("message", message);
+        }
+        if (yaw != 0f) {
+            nbt.putFloat("yaw", yaw);
+        }
+        if (pitch != 0f) {
+            nbt.putFloat("pitch", pitch);
+        }
+        return nbt;
+    }
+
+    // "locked" is derived, but still written so older versions of the mod read the same lock state
+    static void putHot(NbtCompound nbt, int deaths, boolean locked, long time, String dimension) {
+        if (deaths != 0) {
+            nbt.putInt("deaths", deaths);
+        } else {
+            nbt.remove("deaths");
+        }
+        if (locked) {
+            nbt.putBoolean("locked", true);
+        } else {
+            nbt.remove("locked");
+        }
+        if (time != 0L) {
+            nbt.putLong("time", time);
+        } else {
+            nbt.remove("time");
+        }
+        if (dimension != null) {
+            nbt.putString("dimension", dimension);
+        } else {
+            nbt.remove("dimension");
+        }
+    }
+
+    /**
+     * Writes one record in the journal's binary layout: the resident columns
+     * (UUID, deaths, last death time and dimension), then the cold ones if
+     * they are loaded. A record changed without its cold columns loaded
+     * leaves them out, so journaling it does not pull them in from disk.
+     */
+    void writeImage(DataOutput out, int slot) throws IOException {
+        out.writeLong(uuidMost[slot]);
+        out.writeLong(uuidLeast[slot]);
+        out.writeInt(deaths[slot]);
+        out.writeLong(times[slot]);
+        String dimension = DimensionRegistry.name(dimensions[slot]);
+        out.writeUTF(dimension == null ? "" : dimension);
+        boolean resident = isColdResident(slot);
+        out.writeBoolean(resident);
+        if (!resident) {
+            return;
+        }
+        int cold = readCold(slot);
+        out.writeBoolean(cold >= 0 && (flags[slot] & FLAG_HAS_POS) != 0);
+        out.writeLong(cold < 0 ? 0L : coldTier.position(cold));
+        out.writeFloat(cold < 0 ? 0f : coldTier.yaw(cold));
+        out.writeFloat(cold < 0 ? 0f : coldTier.pitch(cold));
+        String message = cold < 0 ? null : coldTier.message(cold);
+        out.writeBoolean(message != null);
+        if (message != null) {
+            out.writeUTF(message);
+        }
+    }
+
+    /**
+     * Applies a record written by {@link #writeImage(DataOutput, int)}, creating it if needed.
+     */
+    int readImage(DataInput in) throws IOException {
+        int slot = getOrCreateSlot(in.readLong(), in.readLong());
+        setDeaths(slot, in.readInt());
+        long time = in.readLong();
+        setLastDeathKey(slot, DimensionRegistry.intern(in.readUTF()), time);
+        if (!in.readBoolean()) {
+            return slot;
+        }
+        int cold = writeCold(slot);
+        setHasPosition(slot, in.readBoolean());
+        coldTier.setPosition(cold, in.readLong());
+        coldTier.setYaw(cold, in.readFloat());
+        coldTier.setPitch(cold, in.readFloat());
+        coldTier.setMessage(cold, in.readBoolean() ? in.readUTF() : null);
+        return slot;
+    }
+
+    /**
+     * Restores a record from the resident index written alongside its shard.
+     * Its cold columns stay on disk until first read.
+     */
+    void loadIndexed(long most, long least, int deathCount, long time, int dimension) {
+        int slot = getOrCreateSlot(most, least);
+        times[slot] = time;
+        dimensions[slot] = dimension;
+        setDeaths(slot, deathCount);
+        releaseCold(slot);
+        coldRefs[slot] = COLD_UNLOADED;
+        // Read back from its backend, so already saved there
+        flags[slot] &= ~FLAG_UNSAVED;
+    }
+
+    /**
+     * Copies one shard's columns so it can be encoded off the server thread.
+     * Records whose cold columns are not resident are copied hot-only and
+     * merged with the previous shard file by the writer.
+     */
+    ShardSnapshot snapshotShard(int shard) {
+        return snapshotShard(shard, false);
+    }
+
+    /**
+     * Copies one shard as {@link #snapshotShard(int)} does, or with
+     * {@code unsavedOnly} just the records changed since the shard's last
+     * snapshot, for backends that write record by record. Either way the
+     * shard's pending removals go with it and the captured records count as
+     * saved from here on; {@link #restoreSnapshot} undoes that when the write fails.
+     */
+    ShardSnapshot snapshotShard(int shard, boolean unsavedOnly) {
+        IntArrayList slots = shards.slots(shard);
+        int n = slots.size();
+        int[] captured;
+        if (unsavedOnly) {
+            captured = new int[n];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int slot = slots.getInt(i);
+                if ((flags[slot] & FLAG_UNSAVED) != 0) {
+                    captured[count++] = slot;
+                }
+            }
+            n = count;
+        } else {
+            captured = slots.toIntArray();
+        }
+        ShardSnapshot snapshot = new ShardSnapshot(shard, n, shards.takeRemoved(shard));
+        for (int i = 0; i < n; i++) {
+            int slot = captured[i];
+            flags[slot] &= ~FLAG_UNSAVED;
+            snapshot.putHot(i, uuidMost[slot], uuidLeast[slot], deaths[slot], locked(slot), times[slot],
+                DimensionRegistry.name(dimensions[slot]));
+            int cold = coldRefs[slot];
+            if (cold == COLD_UNLOADED) {
+                snapshot.putUnloaded(i);
+            } else if (cold >= 0) {
+                snapshot.putCold(i, (flags[slot] & FLAG_HAS_POS) != 0, coldTier.position(cold), coldTier.yaw(cold),
+                    coldTier.pitch(cold), coldTier.message(cold));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Merges a shard written from a {@link ShardSnapshot} into the store, overwriting existing records.
+     */
+    void readShard(NbtCompound records) {
+        NbtOps.INSTANCE.getMapValues(records).result().ifPresent(entries ->
+            entries.forEach(entry -> decodeEntry(NbtOps.INSTANCE, entry.getFirst(), entry.getSecond())));
+    }
+
+    void readNbt(int slot, NbtCompound nbt) {
+        times[slot] = NbtCompat.getLong(nbt, "time", 0L);
+        dimensions[slot] = DimensionRegistry.intern(NbtCompat.getOptionalString(nbt, "dimension").orElse(null));
+        setDeaths(slot, NbtCompat.getInt(nbt, "deaths", 0));
+        readColdNbt(writeCold(slot), nbt);
+    }
+
+    private void readColdNbt(int cold, NbtCompound nbt) {
+        setHasPosition(coldTier.owner(cold), nbt.contains("pos"));
+        coldTier.setPosition(cold, NbtCompat.getLong(nbt, "pos", 0L));
+        coldTier.setMessage(cold, NbtCompat.getOptionalString(nbt, "message").orElse(null));
+        coldTier.setYaw(cold, NbtCompat.getFloat(nbt, "yaw", 0f));
+        coldTier.setPitch(cold, NbtCompat.getFloat(nbt, "pitch", 0f));
+    }
+
+    private <T> DataResult<T> encodeRecords(DynamicOps<T> ops, T prefix, IntPredicate slots) {
+        RecordBuilder<T> builder = ops.mapBuilder();
+        for (int slot = 0; slot < highWater; slot++) {
+            if (isLive(slot) && slots.test(slot)) {
+                builder.add(ops.createString(uuidAt(slot).toString()), encodeSlot(ops, slot));
+            }
+        }
+        return builder.build(prefix);
+    }
+
+    private <T> T encodeSlot(DynamicOps<T> ops, int slot) {
+        // A record whose cold columns were evicted is written from its stored copy without loading them back
+        DeathRecord.Values values = coldRefs[slot] == COLD_UNLOADED ? storedValues(slot) : values(slot);
+        return DeathRecord.Values.CODEC.encodeStart(ops, values).result().orElseGet(ops::empty);
+    }
+
+    /**
+     * Copies one record's fields out of the columns, as {@link DeathRecord.Values#CODEC} encodes them.
+     */
+    DeathRecord.Values values(int slot) {
+        int cold = readCold(slot);
+        boolean hasPos = cold >= 0 && (flags[slot] & FLAG_HAS_POS) != 0;
+        return new DeathRecord.Values(deaths[slot], locked(slot),
+            hasPos ? Optional.of(coldTier.position(cold)) : Optional.empty(),
+            Optional.ofNullable(DimensionRegistry.name(dimensions[slot])),
+            Optional.ofNullable(cold < 0 ? null : coldTier.message(cold)),
+            times[slot], cold < 0 ? 0f : coldTier.yaw(cold), cold < 0 ? 0f : coldTier.pitch(cold));
+    }
+
+    /**
+     * A record's fields with its cold ones taken from the stored copy, for a
+     * record whose cold columns are not resident.
+     */
+    private DeathRecord.Values storedValues(int slot) {
+        NbtCompound stored = coldLoader != null ? coldLoader.load(uuidAt(slot), shardOfSlot(slot)) : null;
+        DeathRecord.Values cold = stored == null ? null
+            : DeathRecord.Values.CODEC.parse(NbtOps.INSTANCE, stored).result().orElse(null);
+        return new DeathRecord.Values(deaths[slot], locked(slot),
+            cold != null ? cold.pos() : Optional.empty(),
+            Optional.ofNullable(DimensionRegistry.name(dimensions[slot])),
+            cold != null ? cold.message() : Optional.empty(),
+            times[slot], cold != null ? cold.yaw() : 0f, cold != null ? cold.pitch() : 0f);
+    }
+
+    private void readValues(int slot, DeathRecord.Values values) {
+        times[slot] = values.time();
+        dimensions[slot] = DimensionRegistry.intern(values.dimension().filter(value -> !value.isEmpty()).orElse(null));
+        setDeaths(slot, values.deaths());
+        int cold = writeCold(slot);
+        setHasPosition(slot, values.pos().isPresent());
+        coldTier.setPosition(cold, values.pos().orElse(0L));
+        coldTier.setMessage(cold, values.message().filter(value -> !value.isEmpty()).orElse(null));
+        coldTier.setYaw(cold, values.yaw());
+        coldTier.setPitch(cold, values.pitch());
+    }
+
+    private <T> void decodeEntry(DynamicOps<T> ops, T key, T value) {
+        UUID uuid = ops.getStringValue(key).result().map(DeathRecordStore::parseUuid).orElse(null);
+        if (uuid == null) {
+            DeathQuotaMod.LOGGER.warn("Skipping death record with invalid key {}", key);
+            return;
+        }
+        DeathRecord.Values values = DeathRecord.Values.CODEC.parse(ops, value).result().orElse(null);
+        if (values == null) {
+            DeathQuotaMod.LOGGER.warn("Skipping malformed death record for {}", uuid);
+            return;
+        }
+        readValues(getOrCreateSlot(uuid), values);
+    }
+
+    private static UUID parseUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the slot's cold entry for reading, loading it if needed, or -1
+     * when the record has only default cold values.
+     */
+    private int readCold(int slot) {
+        int cold = coldRefs[slot];
+        if (cold >= 0) {
+            coldTier.touch(cold);
+            return cold;
+        }
+        if (cold == COLD_DEFAULT) {
+            return -1;
+        }
+        NbtCompound stored = coldLoader != null ? coldLoader.load(uuidAt(slot), shardOfSlot(slot)) : null;
+        if (stored == null) {
+            coldRefs[slot] = COLD_DEFAULT;
+            setHasPosition(slot, false);
+            return -1;
+        }
+        // Make room first so the entry being loaded cannot be the one evicted
+        trimCold();
+        cold = allocateCold(slot);
+        readColdNbt(cold, stored);
+        return cold;
+    }
+
+    /**
+     * Returns the slot's cold entry for writing, allocating (and loading, so the
+     * fields not being written survive) as needed.
+     */
+    private int writeCold(int slot) {
+        int cold = readCold(slot);
+        if (cold < 0) {
+            cold = allocateCold(slot);
+            coldTier.clear(cold);
+            setHasPosition(slot, false);
+        }
+        return cold;
+    }
+
+    private int allocateCold(int slot) {
+        int cold = coldTier.allocate(slot);
+        coldRefs[slot] = cold;
+        return cold;
+    }
+
+    private void releaseCold(int slot) {
+        int cold = coldRefs[slot];
+        if (cold < 0) {
+            return;
+        }
+        coldTier.release(cold);
+        coldRefs[slot] = COLD_DEFAULT;
+    }
+
+    private void clearSlot(int slot) {
+        times[slot] = 0L;
+        dimensions[slot] = NO_DIMENSION;
+        setDeaths(slot, 0);
+        // A cleared record has nothing left on disk worth loading
+        releaseCold(slot);
+        coldRefs[slot] = COLD_DEFAULT;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highWater == deaths.length) {
+            growColumns(deaths.length * 2);
+        }
+        return highWater++;
+    }
+
+    private int bucketOf(long most, long least) {
+        return (int) HashCommon.mix(most ^ least) & indexMask;
+    }
+
+    private void rehash(int newLength) {
+        index = new int[newLength];
+        indexMask = newLength - 1;
+        for (int slot = 0; slot < highWater; slot++) {
+            if (!isLive(slot)) {
+                continue;
+            }
+            int bucket = bucketOf(uuidMost[slot], uuidLeast[slot]);
+            while (index[bucket] != 0) {
+                bucket = (bucket + 1) & indexMask;
+            }
+            index[bucket] = slot + 1;
+        }
+    }
+
+    private void allocateColumns(int capacity) {
+        uuidMost = new long[capacity];
+        uuidLeast = new long[capacity];
+        deaths = new int[capacity];
+        times = new long[capacity];
+        dimensions = new int[capacity];
+        flags = new byte[capacity];
+        coldRefs = new int[capacity];
+    }
+
+    private void growColumns(int capacity) {
+        uuidMost = Arrays.copyOf(uuidMost, capacity);
+        uuidLeast = Arrays.copyOf(uuidLeast, capacity);
+        deaths = Arrays.copyOf(deaths, capacity);
+        times = Arrays.copyOf(times, capacity);
+        dimensions = Arrays.copyOf(dimensions, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        coldRefs = Arrays.copyOf(coldRefs, capacity);
+    }
+}
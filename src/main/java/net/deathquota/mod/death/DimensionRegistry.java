@@ -0,0 +1,122 @@
+package net.deathquota.mod.death;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.World;
+
+import java.util.Arrays;
+
+/**
+ * Interns dimension identifiers to small ints for the record store and maps
+ * those ints back to loaded worlds.
+ *
+ * Ids are runtime-only: records persist the dimension string, and the id is
+ * assigned again on load. Interning is keyed on the (already interned)
+ * RegistryKey so recording a death never rebuilds the identifier string, and
+ * the world for an id is a plain array read once the per-server table exists.
+ * The table is rebuilt only when ids were interned after it was built or a
+ * world loaded or unloaded, so looking up a dimension that is not loaded
+ * stays an array read too.
+ */
+public final class DimensionRegistry {
+    public static final int NO_DIMENSION = -1;
+
+    private static final Object2IntOpenHashMap<String> IDS_BY_NAME = new Object2IntOpenHashMap<>();
+    private static final Reference2IntOpenHashMap<RegistryKey<World>> IDS_BY_KEY = new Reference2IntOpenHashMap<>();
+    // Copy-on-write so background save threads can resolve names without locking
+    private static volatile String[] names = new String[0];
+
+    private static MinecraftServer worldsServer;
+    private static ServerWorld[] worlds = new ServerWorld[0];
+    // Number of ids interned when the table was built; ids past it may name worlds the table lacks
+    private static int worldsInterned;
+
+    static {
+        IDS_BY_NAME.defaultReturnValue(NO_DIMENSION);
+        IDS_BY_KEY.defaultReturnValue(NO_DIMENSION);
+    }
+
+    private DimensionRegistry() {
+    }
+
+    public static synchronized int intern(String dimensionId) {
+        if (dimensionId == null || dimensionId.isEmpty()) {
+            return NO_DIMENSION;
+        }
+        int id = IDS_BY_NAME.getInt(dimensionId);
+        if (id == NO_DIMENSION) {
+            String[] current = names;
+            id = current.length;
+            String[] grown = Arrays.copyOf(current, id + 1);
+            grown[id] = dimensionId;
+            names = grown;
+            IDS_BY_NAME.put(dimensionId, id);
+        }
+        return id;
+    }
+
+    /**
+     * Id of an already interned dimension, or {@link #NO_DIMENSION} when no
+     * record has ever named it. Unlike {@link #intern(String)} this never adds one.
+     */
+    public static synchronized int find(String dimensionId) {
+        return dimensionId == null ? NO_DIMENSION : IDS_BY_NAME.getInt(dimensionId);
+    }
+
+    public static synchronized int idOf(ServerWorld world) {
+        RegistryKey<World> key = world.getRegistryKey();
+        int id = IDS_BY_KEY.getInt(key);
+        if (id == NO_DIMENSION) {
+            id = intern(key.getValue().toString());
+            IDS_BY_KEY.put(key, id);
+        }
+        return id;
+    }
+
+    public static String name(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * Returns the loaded world for {@code id}, or null when that dimension is not
+     * loaded on this server. Must be called on the server thread.
+     */
+    public static ServerWorld world(MinecraftServer server, int id) {
+        if (id < 0) {
+            return null;
+        }
+        if (worldsServer != server || names.length != worldsInterned) {
+            // First lookup on this server, or a dimension that was interned after the table was built
+            rebuildWorlds(server);
+        }
+        return id < worlds.length ? worlds[id] : null;
+    }
+
+    /**
+     * Drops the world table, so the next lookup rebuilds it. Called when the
+     * server stops and whenever a world is loaded or unloaded.
+     */
+    static void clearWorlds() {
+        worldsServer = null;
+        worlds = new ServerWorld[0];
+        worldsInterned = 0;
+    }
+
+    private static void rebuildWorlds(MinecraftServer server) {
+        ServerWorld[] table = new ServerWorld[names.length];
+        for (ServerWorld world : server.getWorlds()) {
+            int id = idOf(world);
+            if (id >= table.length) {
+                table = Arrays.copyOf(table, id + 1);
+            }
+            table[id] = world;
+        }
+        worlds = table;
+        worldsServer = server;
+        worldsInterned = names.length;
+    }
+}
@@ -0,0 +1,441 @@
+package net.deathquota.mod.death;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.deathquota.mod.DeathQuotaMod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Shared life pools, on top of every player's own quota. Depending on the
+ * {@link PoolMode} a player draws from the server-wide pool, their scoreboard
+ * team's pool or the custom group they were added to; each of their deaths
+ * takes one life from it, and once it has none left every member is locked
+ * as if they had run out of lives themselves.
+ *
+ * A death is a constant-time update whatever the pool's size: the player's
+ * pool is one map lookup (group membership is indexed by UUID, and team
+ * pools by team name), and lock state is derived from the pool's counter
+ * rather than written to its members. Each pool also tracks which of its
+ * members are online, so locking everyone when it runs out only touches
+ * those; offline members pick the lock up when they join.
+ *
+ * Saved with {@link DeathQuotaState}, and logged to its {@link DeathJournal}
+ * between saves when there is one. Server thread only.
+ */
+final class LifePools {
+    static final String SERVER_POOL = "server";
+    static final int DEFAULT_LIVES = 10;
+    private static final String TEAM_PREFIX = "team:";
+
+    static final Codec<LifePools> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+        PoolMode.CODEC.optionalFieldOf("mode", PoolMode.OFF).forGetter(pools -> pools.mode),
+        Codec.INT.optionalFieldOf("lives", DEFAULT_LIVES).forGetter(pools -> pools.lives),
+        Saved.CODEC.listOf().optionalFieldOf("pools", List.of()).forGetter(LifePools::saved)
+    ).apply(instance, LifePools::new));
+
+    private PoolMode mode = PoolMode.OFF;
+    // Lives of the server and team pools; custom groups have their own
+    private int lives = DEFAULT_LIVES;
+    private final Map<String, Pool> pools = new HashMap<>();
+    private final Map<UUID, Pool> groupMembers = new HashMap<>();
+    // Pool of each online player who has one
+    private final Map<UUID, Pool> onlinePools = new HashMap<>();
+    private Runnable onChange = () -> { };
+    private DeathJournal journal;
+
+    LifePools() {
+    }
+
+    private LifePools(PoolMode mode, int lives, List<Saved> saved) {
+        this.mode = mode;
+        this.lives = Math.max(1, lives);
+        for (Saved entry : saved) {
+            Pool pool = new Pool(entry.id(), isGroup(entry.id()) ? Math.max(1, entry.lives()) : this.lives);
+            pool.deaths = Math.max(0, entry.deaths());
+            pools.put(pool.id, pool);
+            for (String member : entry.members()) {
+                try {
+                    UUID uuid = UUID.fromString(member);
+                    pool.members.add(uuid);
+                    groupMembers.put(uuid, pool);
+                } catch (IllegalArgumentException e) {
+                    DeathQuotaMod.LOGGER.warn("Skipping invalid UUID {} in life pool {}", member, entry.id());
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after every change that needs saving.
+     */
+    void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * Logs every later change to {@code journal}, or stops logging when it is null.
+     */
+    void attachJournal(DeathJournal journal) {
+        this.journal = journal;
+    }
+
+    PoolMode mode() {
+        return mode;
+    }
+
+    /**
+     * Lives of the server and team pools.
+     */
+    int lives() {
+        return lives;
+    }
+
+    /**
+     * True when there is nothing to save: pools off and never used.
+     */
+    boolean isEmpty() {
+        return mode == PoolMode.OFF && lives == DEFAULT_LIVES && pools.isEmpty();
+    }
+
+    Collection<Pool> pools() {
+        return pools.values();
+    }
+
+    Pool pool(String id) {
+        return pools.get(id);
+    }
+
+    /**
+     * Tracks {@code uuid} as an online member of their pool, or drops them
+     * when they leave. {@code team} is their scoreboard team, or null.
+     * Also re-resolves the pool of a player who is already online, such as
+     * one who changed teams.
+     */
+    void setOnline(UUID uuid, String team, boolean online) {
+        moveOnline(uuid, online ? resolve(uuid, team) : null);
+    }
+
+    /**
+     * Forgets which pool every online player is in, for the caller to add
+     * them back under the current mode.
+     */
+    void clearOnline() {
+        for (Pool pool : onlinePools.values()) {
+            pool.online.clear();
+        }
+        onlinePools.clear();
+    }
+
+    /**
+     * Takes a life from the pool of {@code uuid}, who is on {@code team}, and
+     * returns that pool, or null when they are in none.
+     */
+    Pool recordDeath(UUID uuid, String team) {
+        Pool pool = resolve(uuid, team);
+        if (onlinePools.containsKey(uuid)) {
+            moveOnline(uuid, pool);
+        }
+        if (pool == null) {
+            return null;
+        }
+        pool.deaths++;
+        if (journal != null) {
+            journal.appendPool(pool);
+        }
+        onChange.run();
+        return pool;
+    }
+
+    /**
+     * Pool of an online player, or null.
+     */
+    Pool poolOf(UUID uuid) {
+        return onlinePools.get(uuid);
+    }
+
+    /**
+     * True when the online player {@code uuid} is in a pool with no lives left.
+     */
+    boolean locked(UUID uuid) {
+        Pool pool = onlinePools.get(uuid);
+        return pool != null && pool.exhausted();
+    }
+
+    void setMode(PoolMode mode) {
+        this.mode = mode;
+        clearOnline();
+        if (journal != null) {
+            journal.appendPoolMode(mode);
+        }
+        onChange.run();
+    }
+
+    /**
+     * Sets the lives of the server pool and every team pool.
+     */
+    void setLives(int lives) {
+        this.lives = Math.max(1, lives);
+        for (Pool pool : pools.values()) {
+            if (!isGroup(pool.id)) {
+                pool.lives = this.lives;
+            }
+        }
+        if (journal != null) {
+            journal.appendPoolLives(this.lives);
+        }
+        onChange.run();
+    }
+
+    /**
+     * Creates a custom group, or changes the lives of an existing one.
+     * Returns false when {@code id} is reserved for the server or team pools.
+     */
+    boolean setGroup(String id, int lives) {
+        if (!isGroup(id)) {
+            return false;
+        }
+        Pool pool = pools.computeIfAbsent(id, key -> new Pool(key, lives));
+        pool.lives = Math.max(1, lives);
+        if (journal != null) {
+            journal.appendPool(pool);
+        }
+        onChange.run();
+        return true;
+    }
+
+    /**
+     * Deletes a custom group; its members are in no group afterwards.
+     */
+    boolean deleteGroup(String id) {
+        Pool pool = isGroup(id) ? pools.remove(id) : null;
+        if (pool == null) {
+            return false;
+        }
+        for (UUID member : pool.members) {
+            groupMembers.remove(member);
+        }
+        for (UUID member : pool.online) {
+            onlinePools.remove(member);
+        }
+        if (journal != null) {
+            journal.appendPoolDelete(id);
+        }
+        onChange.run();
+        return true;
+    }
+
+    /**
+     * Moves {@code uuid} into the custom group {@code id}, out of any other.
+     */
+    boolean addMember(String id, UUID uuid) {
+        Pool pool = isGroup(id) ? pools.get(id) : null;
+        if (pool == null) {
+            return false;
+        }
+        Pool previous = groupMembers.put(uuid, pool);
+        if (previous != null) {
+            previous.members.remove(uuid);
+        }
+        pool.members.add(uuid);
+        if (onlinePools.containsKey(uuid) && mode == PoolMode.GROUP) {
+            moveOnline(uuid, pool);
+        }
+        if (journal != null) {
+            journal.appendPoolMember(uuid, id);
+        }
+        onChange.run();
+        return true;
+    }
+
+    /**
+     * Takes {@code uuid} out of their custom group, returning it, or null when they were in none.
+     */
+    Pool removeMember(UUID uuid) {
+        Pool pool = groupMembers.remove(uuid);
+        if (pool == null) {
+            return null;
+        }
+        pool.members.remove(uuid);
+        if (onlinePools.get(uuid) == pool) {
+            moveOnline(uuid, null);
+        }
+        if (journal != null) {
+            journal.appendPoolMember(uuid, null);
+        }
+        onChange.run();
+        return pool;
+    }
+
+    /**
+     * Gives a pool all its lives back.
+     */
+    boolean reset(String id) {
+        Pool pool = pools.get(id);
+        if (pool == null) {
+            return false;
+        }
+        pool.deaths = 0;
+        if (journal != null) {
+            journal.appendPool(pool);
+        }
+        onChange.run();
+        return true;
+    }
+
+    /**
+     * Gives every pool all its lives back and returns how many there are.
+     */
+    int resetAll() {
+        for (Pool pool : pools.values()) {
+            pool.deaths = 0;
+            if (journal != null) {
+                journal.appendPool(pool);
+            }
+        }
+        if (!pools.isEmpty()) {
+            onChange.run();
+        }
+        return pools.size();
+    }
+
+    /**
+     * Drops every pool and group membership, for a journal replay that
+     * rebuilds them from a segment's seed.
+     */
+    void clear() {
+        clearOnline();
+        pools.clear();
+        groupMembers.clear();
+        onChange.run();
+    }
+
+    /**
+     * Sets a pool's lives and deaths as logged by the journal, creating it if
+     * needed. The lives of the server and team pools follow {@link #lives()}.
+     */
+    void restorePool(String id, int lives, int deaths) {
+        Pool pool = pools.computeIfAbsent(id, key -> new Pool(key, lives));
+        pool.lives = isGroup(id) ? Math.max(1, lives) : this.lives;
+        pool.deaths = Math.max(0, deaths);
+        onChange.run();
+    }
+
+    static String teamPool(String team) {
+        return TEAM_PREFIX + team;
+    }
+
+    /**
+     * Custom group names are anything but the server pool and team pool ids.
+     */
+    static boolean isGroup(String id) {
+        return !id.equals(SERVER_POOL) && !id.startsWith(TEAM_PREFIX);
+    }
+
+    private Pool resolve(UUID uuid, String team) {
+        return switch (mode) {
+            case OFF -> null;
+            case SERVER -> pools.computeIfAbsent(SERVER_POOL, id -> new Pool(id, lives));
+            case TEAM -> team == null ? null : pools.computeIfAbsent(teamPool(team), id -> new Pool(id, lives));
+            case GROUP -> groupMembers.get(uuid);
+        };
+    }
+
+    private void moveOnline(UUID uuid, Pool pool) {
+        Pool previous = pool != null ? onlinePools.put(uuid, pool) : onlinePools.remove(uuid);
+        if (previous == pool) {
+            return;
+        }
+        if (previous != null) {
+            previous.online.remove(uuid);
+        }
+        if (pool != null) {
+            pool.online.add(uuid);
+        }
+    }
+
+    private List<Saved> saved() {
+        List<Saved> saved = new ArrayList<>(pools.size());
+        for (Pool pool : pools.values()) {
+            List<String> members = new ArrayList<>(pool.members.size());
+            for (UUID member : pool.members) {
+                members.add(member.toString());
+            }
+            saved.add(new Saved(pool.id, pool.lives, pool.deaths, members));
+        }
+        return saved;
+    }
+
+    /**
+     * One pool: its lives, the deaths taken from them, and for custom groups
+     * the members. {@link #online} is the subset of members online now.
+     */
+    static final class Pool {
+        final String id;
+        private int lives;
+        private int deaths;
+        private final Set<UUID> members = new HashSet<>();
+        private final Set<UUID> online = new HashSet<>();
+
+        private Pool(String id, int lives) {
+            this.id = id;
+            this.lives = Math.max(1, lives);
+        }
+
+        int lives() {
+            return lives;
+        }
+
+        int deaths() {
+            return deaths;
+        }
+
+        int remaining() {
+            return Math.max(0, lives - deaths);
+        }
+
+        boolean exhausted() {
+            return deaths >= lives;
+        }
+
+        /**
+         * Members of a custom group; empty for the server and team pools, whose
+         * membership comes from the server and its teams.
+         */
+        int memberCount() {
+            return members.size();
+        }
+
+        Set<UUID> members() {
+            return Collections.unmodifiableSet(members);
+        }
+
+        /**
+         * The online members, as of this call.
+         */
+        List<UUID> online() {
+            return new ArrayList<>(online);
+        }
+
+        int onlineCount() {
+            return online.size();
+        }
+    }
+
+    private record Saved(String id, int lives, int deaths, List<String> members) {
+        static final Codec<Saved> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.STRING.fieldOf("id").forGetter(Saved::id),
+            Codec.INT.optionalFieldOf("lives", DEFAULT_LIVES).forGetter(Saved::lives),
+            Codec.INT.optionalFieldOf("deaths", 0).forGetter(Saved::deaths),
+            Codec.STRING.listOf().optionalFieldOf("members", List.of()).forGetter(Saved::members)
+        ).apply(instance, Saved::new));
+    }
+}
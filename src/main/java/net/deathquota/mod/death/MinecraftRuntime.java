@@ -0,0 +1,136 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.util.ServerCompat;
+import net.deathquota.mod.util.TeleportCompat;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.GameMode;
+
+import java.util.UUID;
+
+/**
+ * {@link QuotaRuntime} over a running server. State and config go through
+ * {@link DeathQuotaState#get} and {@link DeathQuotaConfig#get}, so this works
+ * before the server has finished starting too.
+ */
+final class MinecraftRuntime implements QuotaRuntime<ServerPlayerEntity> {
+    private final MinecraftServer server;
+
+    MinecraftRuntime(MinecraftServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public DeathQuotaState state() {
+        return DeathQuotaState.get(server);
+    }
+
+    @Override
+    public DeathQuotaConfig config() {
+        return DeathQuotaConfig.get(server);
+    }
+
+    @Override
+    public UUID uuid(ServerPlayerEntity player) {
+        return player.getUuid();
+    }
+
+    @Override
+    public String name(ServerPlayerEntity player) {
+        return player.getName().getString();
+    }
+
+    @Override
+    public ServerPlayerEntity player(UUID uuid) {
+        return server.getPlayerManager().getPlayer(uuid);
+    }
+
+    @Override
+    public boolean isSpectator(ServerPlayerEntity player) {
+        return player.interactionManager.getGameMode() == GameMode.SPECTATOR;
+    }
+
+    @Override
+    public void makeSpectator(ServerPlayerEntity player) {
+        player.changeGameMode(GameMode.SPECTATOR);
+    }
+
+    @Override
+    public void teleport(ServerPlayerEntity player, int dimensionId, long packedPos, float yaw, float pitch) {
+        BlockPos pos = BlockPos.fromLong(packedPos);
+        if (dimensionId == DimensionRegistry.NO_DIMENSION) {
+            TeleportCompat.teleportToPos(player, pos, yaw, pitch);
+            return;
+        }
+        ServerWorld targetWorld = DimensionRegistry.world(server, dimensionId);
+        if (targetWorld == null) {
+            targetWorld = server.getWorld(ServerWorld.OVERWORLD);
+        }
+        // Use TeleportCompat for cross-version compatibility (1.21.0-1.21.1 vs 1.21.2+)
+        TeleportCompat.teleportToPos(player, targetWorld, pos, yaw, pitch);
+    }
+
+    @Override
+    public void sendMessage(ServerPlayerEntity player, String message, boolean overlay) {
+        player.sendMessage(Text.literal(message), overlay);
+    }
+
+    @Override
+    public int dimension(ServerPlayerEntity player) {
+        return DimensionRegistry.idOf(ServerCompat.getWorld(player));
+    }
+
+    @Override
+    public long blockPos(ServerPlayerEntity player) {
+        return player.getBlockPos().asLong();
+    }
+
+    @Override
+    public float yaw(ServerPlayerEntity player) {
+        return player.getYaw();
+    }
+
+    @Override
+    public float pitch(ServerPlayerEntity player) {
+        return player.getPitch();
+    }
+
+    @Override
+    public long worldTime(ServerPlayerEntity player) {
+        return ServerCompat.getWorld(player).getTime();
+    }
+
+    @Override
+    public String team(ServerPlayerEntity player) {
+        var team = player.getScoreboardTeam();
+        return team != null ? team.getName() : null;
+    }
+
+    @Override
+    public boolean isRecordBound(ServerPlayerEntity player) {
+        return ((DeathQuotaPlayer) player).deathQuota$isRecordBound();
+    }
+
+    @Override
+    public DeathRecord boundRecord(ServerPlayerEntity player) {
+        return ((DeathQuotaPlayer) player).deathQuota$getBoundRecord();
+    }
+
+    @Override
+    public void bindRecord(ServerPlayerEntity player, DeathRecord record) {
+        ((DeathQuotaPlayer) player).deathQuota$bindRecord(record);
+    }
+
+    @Override
+    public void unbindRecord(ServerPlayerEntity player) {
+        ((DeathQuotaPlayer) player).deathQuota$unbindRecord();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        server.execute(task);
+    }
+}
@@ -0,0 +1,274 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.DeathQuotaMod;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Keeps records as {@link DeathRecordStore#SHARD_COUNT} gzipped NBT files
+ * in the storage directory, the mod's original format.
+ *
+ * Each file holds the records of one shard under a "records" compound, and
+ * a write rewrites the whole shard, so the records it no longer has are
+ * gone without a separate delete. Files are written to a temp sibling,
+ * forced to disk and moved into place, and the directory is synced after,
+ * so neither a crash nor a power loss mid-save leaves a torn shard behind.
+ *
+ * Next to each shard sits a small uncompressed index (UUID, death count,
+ * lock, last death time and dimension per record). A scan reads only the
+ * indexes, so every record is known and lock state and query keys are
+ * resident, while the rest of a record is read from its shard on first use.
+ */
+final class NbtQuotaStore implements QuotaStore {
+    static final String NAME = "nbt";
+
+    private static final String RECORDS_KEY = "records";
+    private static final String VERSION_KEY = "version";
+    private static final int FORMAT_VERSION = 1;
+    private static final int INDEX_VERSION = 1;
+
+    private final Path directory;
+    // Records of the most recently read shard; lookups for offline players tend to cluster
+    private int cachedShard = -1;
+    private NbtCompound cachedRecords;
+
+    NbtQuotaStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    Path shardFile(int shard) {
+        return directory.resolve(String.format(Locale.ROOT, "records_%02d.dat", shard));
+    }
+
+    Path indexFile(int shard) {
+        return directory.resolve(String.format(Locale.ROOT, "index_%02d.dat", shard));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int shard = 0; shard < DeathRecordStore.SHARD_COUNT; shard++) {
+            if (Files.exists(shardFile(shard))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shards with an index only have their index read, unless {@code full};
+     * shards saved before indexes existed are read in full and left dirty so
+     * the next save writes their index.
+     */
+    @Override
+    public long scan(DeathRecordStore store, boolean full) {
+        if (!Files.isDirectory(directory)) {
+            return 0L;
+        }
+        long needsIndex = 0L;
+        long bytes = 0L;
+        for (int shard = 0; shard < DeathRecordStore.SHARD_COUNT; shard++) {
+            if (!full && readIndex(shard, store)) {
+                bytes += fileSize(indexFile(shard));
+                continue;
+            }
+            NbtCompound records = readRecords(shard);
+            if (records != null) {
+                store.readShard(records);
+                bytes += fileSize(shardFile(shard));
+                needsIndex |= 1L << shard;
+            }
+        }
+        // Loading creates slots, which marks their shards dirty; only index-less shards need a rewrite
+        store.takeDirtyShards();
+        if (!full) {
+            store.markShardsDirty(needsIndex);
+        }
+        return bytes;
+    }
+
+    @Override
+    public NbtCompound load(UUID uuid, int shard) {
+        if (cachedShard != shard) {
+            cachedRecords = readRecords(shard);
+            cachedShard = shard;
+        }
+        return cachedRecords != null && cachedRecords.get(uuid.toString()) instanceof NbtCompound record ? record : null;
+    }
+
+    @Override
+    public void afterSave() {
+        // The cached copy may predate the files just written
+        cachedShard = -1;
+        cachedRecords = null;
+    }
+
+    @Override
+    public boolean wholeShards() {
+        return true;
+    }
+
+    /**
+     * Rewrites the shard file, merging records captured without their cold
+     * columns with the previous file, then its index.
+     */
+    @Override
+    public long write(ShardSnapshot snapshot) throws IOException {
+        Files.createDirectories(directory);
+        NbtCompound previous = snapshot.needsPrevious() ? readRecords(snapshot.shard) : null;
+        long bytes = writeShard(snapshot.shard, snapshot.toNbt(previous)) + writeIndex(snapshot);
+        // The renames are durable only once the directory is; the journal covering them goes after this save
+        ShardedRecordStorage.syncDirectory(directory);
+        return bytes;
+    }
+
+    /**
+     * Moves the shard and index files into a {@code retired-nbt} subdirectory.
+     */
+    @Override
+    public void retire() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Path retired = directory.resolve("retired-" + NAME);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{records,index}_*.dat")) {
+            Files.createDirectories(retired);
+            for (Path file : files) {
+                Files.move(file, retired.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.error("Failed to move retired death quota shards into {}", retired, e);
+        }
+        afterSave();
+    }
+
+    @Override
+    public void close() {
+        afterSave();
+    }
+
+    private boolean readIndex(int shard, DeathRecordStore store) {
+        Path file = indexFile(shard);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+            if (version != INDEX_VERSION) {
+                DeathQuotaMod.LOGGER.warn("Ignoring death quota index {} with unknown version {}", file, version);
+                return false;
+            }
+            int[] dimensions = new int[in.readInt()];
+            for (int i = 0; i < dimensions.length; i++) {
+                dimensions[i] = DimensionRegistry.intern(in.readUTF());
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long most = in.readLong();
+                long least = in.readLong();
+                int deaths = in.readInt();
+                long time = in.readLong();
+                int dimension = in.readInt();
+                store.loadIndexed(most, least, deaths, time, dimension < 0 ? DimensionRegistry.NO_DIMENSION : dimensions[dimension]);
+            }
+            return true;
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.error("Failed to read death quota index {}, falling back to the full shard", file, e);
+            return false;
+        }
+    }
+
+    private NbtCompound readRecords(int shard) {
+        Path file = shardFile(shard);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            NbtCompound root = NbtIo.readCompressed(file, NbtSizeTracker.ofUnlimitedBytes());
+            return root.get(RECORDS_KEY) instanceof NbtCompound records ? records : null;
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.error("Failed to read death quota shard {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes one shard file and returns its size on disk.
+     */
+    private long writeShard(int shard, NbtCompound records) throws IOException {
+        Path target = shardFile(shard);
+        if (records.isEmpty()) {
+            Files.deleteIfExists(target);
+            return 0L;
+        }
+        NbtCompound root = new NbtCompound();
+        root.putInt(VERSION_KEY, FORMAT_VERSION);
+        root.put(RECORDS_KEY, records);
+        Path temp = tempFor(target);
+        NbtIo.writeCompressed(root, temp);
+        ShardedRecordStorage.force(temp);
+        moveIntoPlace(temp, target);
+        return Files.size(target);
+    }
+
+    /**
+     * Writes the shard's index after its records, so a present index never
+     * names a record missing from the shard. Returns its size on disk.
+     */
+    private long writeIndex(ShardSnapshot snapshot) throws IOException {
+        Path target = indexFile(snapshot.shard);
+        if (snapshot.size() == 0) {
+            Files.deleteIfExists(target);
+            return 0L;
+        }
+        Path temp = tempFor(target);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(INDEX_VERSION);
+            snapshot.writeIndex(out);
+        }
+        ShardedRecordStorage.force(temp);
+        moveIntoPlace(temp, target);
+        return Files.size(target);
+    }
+
+    /**
+     * Size of {@code file} for load accounting, or 0 when it cannot be read.
+     */
+    static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static Path tempFor(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
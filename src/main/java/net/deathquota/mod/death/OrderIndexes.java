@@ -0,0 +1,54 @@
+package net.deathquota.mod.death;
+
+import java.util.function.IntPredicate;
+
+/**
+ * The two {@link SlotTreap}s that order a {@link DeathRecordStore}'s records
+ * for queries. One is keyed on (-deaths, last death time): most deaths first,
+ * which is both the leaderboard and the death-count index. The other holds
+ * only records with a last death, keyed on (dimension id, -last death time):
+ * grouped by dimension, most recent first. The store calls
+ * {@link #update(int, int, long, int)} whenever a column they are keyed on
+ * changes. Server thread only.
+ */
+final class OrderIndexes {
+    private final SlotTreap byDeaths = new SlotTreap();
+    private final SlotTreap byDimension = new SlotTreap();
+
+    void update(int slot, int deaths, long time, int dimension) {
+        byDeaths.update(slot, -deaths, time);
+        if (dimension == DimensionRegistry.NO_DIMENSION) {
+            byDimension.remove(slot);
+        } else {
+            byDimension.update(slot, dimension, -time);
+        }
+    }
+
+    void remove(int slot) {
+        byDeaths.remove(slot);
+        byDimension.remove(slot);
+    }
+
+    /**
+     * One-based position of {@code slot} in death order.
+     */
+    int rank(int slot) {
+        return byDeaths.rank(slot);
+    }
+
+    /**
+     * Passes slots in death order, starting at the one-based {@code fromRank},
+     * to {@code sink} until it returns false or the records run out.
+     */
+    void forEachInDeathOrder(int fromRank, IntPredicate sink) {
+        byDeaths.forEachFrom(fromRank, sink);
+    }
+
+    SlotTreap deathOrder() {
+        return byDeaths;
+    }
+
+    SlotTreap dimensionOrder() {
+        return byDimension;
+    }
+}
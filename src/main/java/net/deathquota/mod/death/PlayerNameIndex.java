@@ -0,0 +1,355 @@
+package net.deathquota.mod.death;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.deathquota.mod.DeathQuotaMod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Case-insensitive name to UUID index for targeting players who are offline.
+ *
+ * Names are kept in a prefix trie stored as parallel arrays (left-child,
+ * right-sibling, siblings sorted by character), so a few hundred thousand
+ * names cost a handful of int/char arrays rather than a node object per
+ * character. Lookups walk at most sixteen levels, and completion lists the
+ * names under a prefix in alphabetical order without touching the rest.
+ *
+ * Seeded from a names file under {@code data/death_quota/} and the server's
+ * usercache.json, and kept current as players join. Vanilla keeps only the
+ * last thousand players in usercache.json, so every name that changes is
+ * appended to the names file as well, and players who dropped out of the
+ * user cache can still be found. The file is rewritten on load once most
+ * of it is superseded. Server thread only.
+ */
+public final class PlayerNameIndex {
+    private static final int INITIAL_NODES = 1024;
+    private static final int INITIAL_ENTRIES = 256;
+    static final String FILE_NAME = "names.dat";
+    private static final int FILE_VERSION = 1;
+
+    // Node 0 is the root; -1 terminates child and sibling chains
+    private char[] keys = new char[INITIAL_NODES];
+    private int[] firstChild = new int[INITIAL_NODES];
+    private int[] nextSibling = new int[INITIAL_NODES];
+    private int[] entryOf = new int[INITIAL_NODES];
+    private int nodeCount;
+
+    private long[] entryMost = new long[INITIAL_ENTRIES];
+    private long[] entryLeast = new long[INITIAL_ENTRIES];
+    private String[] entryNames = new String[INITIAL_ENTRIES];
+    private int entryCount;
+    // Latest entry seen for each UUID, for naming players in listings
+    private final Object2IntOpenHashMap<UUID> entryByUuid = new Object2IntOpenHashMap<>();
+    // Names file that changes are appended to, or null when the index is not persisted
+    private Path file;
+
+    public PlayerNameIndex() {
+        newNode('\0');
+        entryByUuid.defaultReturnValue(-1);
+    }
+
+    /**
+     * Builds an index from the names file {@code namesFile}, then a vanilla
+     * usercache.json on top, and appends later changes to the names file.
+     * Missing or unreadable files add nothing.
+     */
+    static PlayerNameIndex load(Path namesFile, Path userCache) {
+        PlayerNameIndex index = new PlayerNameIndex();
+        int records = index.readNames(namesFile);
+        // A missing or damaged file is written whole, as is one mostly superseded (a damaged one would hide
+        // whatever is appended after it); names the user cache adds or changes go out with it or are appended below
+        boolean compact = records < 0 || records > 2 * index.size() + INITIAL_ENTRIES;
+        if (compact) {
+            index.readUserCache(userCache);
+            index.writeNames(namesFile);
+        }
+        index.file = namesFile;
+        if (!compact) {
+            index.readUserCache(userCache);
+        }
+        return index;
+    }
+
+    /**
+     * Puts every record of the names file and returns how many there were, or
+     * -1 when there is no file or it could not be read to its end.
+     */
+    private int readNames(Path namesFile) {
+        if (!Files.exists(namesFile)) {
+            return -1;
+        }
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(namesFile)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                DeathQuotaMod.LOGGER.warn("Ignoring player names file {} with unknown version {}", namesFile, version);
+                return -1;
+            }
+            while (true) {
+                long most;
+                try {
+                    most = in.readLong();
+                } catch (EOFException end) {
+                    break;
+                }
+                long least = in.readLong();
+                put(in.readUTF(), new UUID(most, least));
+                records++;
+            }
+        } catch (EOFException e) {
+            DeathQuotaMod.LOGGER.warn("Ignoring torn entry at the end of {}", namesFile);
+            return -1;
+        } catch (IOException | RuntimeException e) {
+            DeathQuotaMod.LOGGER.warn("Failed to read player names from {}", namesFile, e);
+            return -1;
+        }
+        return records;
+    }
+
+    private void readUserCache(Path userCache) {
+        if (!Files.exists(userCache)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(userCache)) {
+            JsonElement root = JsonParser.parseReader(reader);
+            if (root.isJsonArray()) {
+                for (JsonElement element : root.getAsJsonArray()) {
+                    if (element instanceof JsonObject entry && entry.has("name") && entry.has("uuid")) {
+                        UUID uuid = parseUuid(entry.get("uuid").getAsString());
+                        if (uuid != null) {
+                            put(entry.get("name").getAsString(), uuid);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            DeathQuotaMod.LOGGER.warn("Failed to read player names from {}", userCache, e);
+        }
+    }
+
+    /**
+     * Replaces {@code namesFile} with one record per known name.
+     */
+    private void writeNames(Path namesFile) {
+        Path temp = namesFile.resolveSibling(namesFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(namesFile.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                for (int entry = 0; entry < entryCount; entry++) {
+                    out.writeLong(entryMost[entry]);
+                    out.writeLong(entryLeast[entry]);
+                    out.writeUTF(entryNames[entry]);
+                }
+            }
+            try {
+                Files.move(temp, namesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, namesFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.warn("Failed to write player names to {}", namesFile, e);
+        }
+    }
+
+    private void append(String name, UUID uuid) {
+        try {
+            Files.createDirectories(file.getParent());
+            boolean created = !Files.exists(file);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+                if (created) {
+                    out.writeInt(FILE_VERSION);
+                }
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                out.writeUTF(name);
+            }
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.warn("Failed to append player name to {}", file, e);
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Maps {@code name} to {@code uuid}, replacing whatever the name pointed to before.
+     */
+    public void put(String name, UUID uuid) {
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        String key = name.toLowerCase(Locale.ROOT);
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            node = childFor(node, key.charAt(i));
+        }
+        int entry = entryOf[node];
+        if (entry < 0) {
+            entry = newEntry();
+            entryOf[node] = entry;
+        } else if (name.equals(entryNames[entry]) && entryMost[entry] == uuid.getMostSignificantBits()
+            && entryLeast[entry] == uuid.getLeastSignificantBits()) {
+            return;
+        }
+        if (file != null) {
+            append(name, uuid);
+        }
+        entryMost[entry] = uuid.getMostSignificantBits();
+        entryLeast[entry] = uuid.getLeastSignificantBits();
+        entryNames[entry] = name;
+        entryByUuid.put(uuid, entry);
+    }
+
+    /**
+     * Returns the UUID last seen with {@code name} (ignoring case), or null.
+     */
+    public UUID find(String name) {
+        int node = nodeFor(name.toLowerCase(Locale.ROOT));
+        int entry = node < 0 ? -1 : entryOf[node];
+        return entry < 0 ? null : new UUID(entryMost[entry], entryLeast[entry]);
+    }
+
+    /**
+     * Returns the name most recently put for {@code uuid}, or null.
+     */
+    public String nameOf(UUID uuid) {
+        int entry = entryByUuid.getInt(uuid);
+        // The name may have been taken over by another player since
+        boolean current = entry >= 0 && entryMost[entry] == uuid.getMostSignificantBits()
+            && entryLeast[entry] == uuid.getLeastSignificantBits();
+        return current ? entryNames[entry] : null;
+    }
+
+    /**
+     * True when a name has ever been seen for {@code uuid}.
+     */
+    public boolean knows(UUID uuid) {
+        return entryByUuid.containsKey(uuid);
+    }
+
+    /**
+     * Passes up to {@code limit} known names starting with {@code prefix}
+     * (ignoring case) to {@code sink}, alphabetically. Returns how many were passed.
+     */
+    public int complete(String prefix, int limit, Consumer<String> sink) {
+        int start = nodeFor(prefix.toLowerCase(Locale.ROOT));
+        if (start < 0 || limit <= 0) {
+            return 0;
+        }
+        int emitted = 0;
+        int[] stack = new int[32];
+        int depth = 0;
+        stack[depth++] = start;
+        // Pre-order walk of the subtree; pushing siblings before children keeps the output sorted
+        while (depth > 0 && emitted < limit) {
+            int node = stack[--depth];
+            if (entryOf[node] >= 0) {
+                sink.accept(entryNames[entryOf[node]]);
+                emitted++;
+            }
+            if (node != start && nextSibling[node] >= 0) {
+                stack = push(stack, depth++, nextSibling[node]);
+            }
+            if (firstChild[node] >= 0) {
+                stack = push(stack, depth++, firstChild[node]);
+            }
+        }
+        return emitted;
+    }
+
+    private static int[] push(int[] stack, int depth, int node) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = node;
+        return stack;
+    }
+
+    private int nodeFor(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            char c = key.charAt(i);
+            int child = firstChild[node];
+            while (child >= 0 && keys[child] < c) {
+                child = nextSibling[child];
+            }
+            node = child >= 0 && keys[child] == c ? child : -1;
+        }
+        return node;
+    }
+
+    private int childFor(int parent, char c) {
+        int previous = -1;
+        int child = firstChild[parent];
+        while (child >= 0 && keys[child] < c) {
+            previous = child;
+            child = nextSibling[child];
+        }
+        if (child >= 0 && keys[child] == c) {
+            return child;
+        }
+        int created = newNode(c);
+        nextSibling[created] = child;
+        if (previous < 0) {
+            firstChild[parent] = created;
+        } else {
+            nextSibling[previous] = created;
+        }
+        return created;
+    }
+
+    private int newNode(char key) {
+        if (nodeCount == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            entryOf = Arrays.copyOf(entryOf, capacity);
+        }
+        int node = nodeCount++;
+        keys[node] = key;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        entryOf[node] = -1;
+        return node;
+    }
+
+    private int newEntry() {
+        if (entryCount == entryMost.length) {
+            int capacity = entryMost.length * 2;
+            entryMost = Arrays.copyOf(entryMost, capacity);
+            entryLeast = Arrays.copyOf(entryLeast, capacity);
+            entryNames = Arrays.copyOf(entryNames, capacity);
+        }
+        return entryCount++;
+    }
+
+    private static UUID parseUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package net.deathquota.mod.death;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.util.NbtCompat;
+import net.fabricmc.fabric.api.attachment.v1.AttachmentRegistry;
+import net.fabricmc.fabric.api.attachment.v1.AttachmentType;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps death records on the players themselves, as a persistent Fabric data
+ * attachment that vanilla loads and saves with each player's own data file.
+ *
+ * With {@link StorageBackend#PLAYER} the {@link DeathRecordStore} only holds
+ * the records of online players, plus pending ones: records that belong to
+ * offline players but are not on them yet, such as those migrated from
+ * another backend for players who have not joined since. Pending records are
+ * saved in the vanilla state file, which is only rewritten when one of them or
+ * the summary changed, and their cold columns are read back from it through
+ * {@link StateFileRecords} once evicted; the rest leave the store when their player
+ * does, counted by death count in a small histogram that is saved alongside,
+ * so server-wide counts still cover every known player.
+ *
+ * Offline players cannot be written to, so resets reach them on their next
+ * join: a reset of everyone bumps an epoch that stale attachments are
+ * compared against, and a reset of one player is remembered by UUID.
+ *
+ * With the other backends nothing is written to players, and a record still
+ * attached from an earlier run in this mode is adopted into the store when
+ * its player joins.
+ */
+final class PlayerRecordAttachments {
+    static final String NAME = "player";
+
+    static final AttachmentType<NbtCompound> RECORD = AttachmentRegistry.<NbtCompound>builder()
+        .persistent(NbtCompound.CODEC)
+        .copyOnDeath()
+        .buildAndRegister(Identifier.of(DeathQuotaMod.MOD_ID, "record"));
+
+    private static final String EPOCH_KEY = "epoch";
+
+    private final MinecraftServer server;
+    private final boolean primary;
+    // Records that live only on offline players, by death count bucket
+    private final int[] offline = new int[DeathRecordStore.HISTOGRAM_BUCKETS];
+    private int epoch;
+    private final Set<UUID> resetOnJoin = new HashSet<>();
+    // Online players whose attachment holds their record as in the store
+    private final Set<UUID> synced = new HashSet<>();
+    private boolean migrated;
+
+    PlayerRecordAttachments(MinecraftServer server, boolean primary, Summary summary) {
+        this.server = server;
+        this.primary = primary;
+        if (summary != null) {
+            for (int bucket = 0; bucket < Math.min(offline.length, summary.offline().size()); bucket++) {
+                offline[bucket] = Math.max(0, summary.offline().get(bucket));
+            }
+            epoch = summary.epoch();
+            for (String uuid : summary.resetOnJoin()) {
+                try {
+                    resetOnJoin.add(UUID.fromString(uuid));
+                } catch (IllegalArgumentException e) {
+                    DeathQuotaMod.LOGGER.warn("Skipping pending death quota reset for invalid UUID {}", uuid);
+                }
+            }
+            migrated = summary.migrated();
+        }
+    }
+
+    /**
+     * Registers the attachment type; must run during mod initialization,
+     * before any player data is read.
+     */
+    static void register() {
+        DeathQuotaMod.LOGGER.debug("Registered death record attachment {}", RECORD.identifier());
+    }
+
+    /**
+     * True when records are kept on players, false when this only adopts
+     * records left on them by an earlier run.
+     */
+    boolean primary() {
+        return primary;
+    }
+
+    /**
+     * True once another backend's records have been moved into this world's
+     * state file, so they are never read again.
+     */
+    boolean migrated() {
+        return migrated;
+    }
+
+    /**
+     * Brings {@code player}'s attached record into the store as they join:
+     * taken as is, reset if a reset was issued while they were away, or
+     * ignored when the store already has a pending record for them.
+     */
+    void join(DeathRecordStore store, ServerPlayerEntity player) {
+        UUID uuid = player.getUuid();
+        if (synced.contains(uuid)) {
+            return;
+        }
+        NbtCompound attached = player.getAttached(RECORD);
+        boolean reset = resetOnJoin.remove(uuid);
+        int slot = store.slotOf(uuid);
+        if (attached != null) {
+            boolean stale = NbtCompat.getInt(attached, EPOCH_KEY, 0) < epoch;
+            // The attachment was counted as offline when the player left, even when a pending record
+            // replaces it; a reset of everyone already moved stale records into the zero bucket
+            uncount(stale ? 0 : NbtCompat.getInt(attached, "deaths", 0));
+            if (slot < 0) {
+                slot = store.getOrCreateSlot(uuid);
+                if (!stale && !reset) {
+                    store.readNbt(slot, attached);
+                }
+                store.changed(slot);
+            }
+        }
+        if (primary) {
+            if (slot < 0) {
+                slot = store.getOrCreateSlot(uuid);
+            }
+            write(player, store, slot);
+            synced.add(uuid);
+        } else if (attached != null) {
+            player.removeAttached(RECORD);
+        }
+    }
+
+    /**
+     * Rewrites the attachment of a player who was just replaced by a new
+     * entity, in case the attachment did not carry over.
+     */
+    void respawn(DeathRecordStore store, ServerPlayerEntity player) {
+        int slot = store.slotOf(player.getUuid());
+        if (primary && slot >= 0 && synced.contains(player.getUuid())) {
+            write(player, store, slot);
+        }
+    }
+
+    /**
+     * Writes the changed records of online players to their attachments. A
+     * changed record without an online player becomes pending. Returns true
+     * when a pending record changed, so the state file needs writing.
+     */
+    boolean flush(DeathRecordStore store, int[] slots) {
+        boolean pendingChanged = false;
+        for (int slot : slots) {
+            UUID uuid = store.uuidAt(slot);
+            ServerPlayerEntity player = synced.contains(uuid) ? server.getPlayerManager().getPlayer(uuid) : null;
+            if (player != null) {
+                write(player, store, slot);
+            } else {
+                synced.remove(uuid);
+                pendingChanged = true;
+            }
+        }
+        return pendingChanged;
+    }
+
+    /**
+     * Moves a leaving player's record out of the store once their attachment
+     * holds it. Runs from the disconnect hook, before vanilla writes the
+     * player's data file.
+     */
+    void leave(DeathRecordStore store, UUID uuid) {
+        if (!synced.remove(uuid)) {
+            return;
+        }
+        int slot = store.slotOf(uuid);
+        if (slot >= 0) {
+            offline[DeathRecordStore.bucket(store.deaths(slot))]++;
+            store.remove(uuid);
+            store.forgetRemoved();
+        }
+    }
+
+    /**
+     * True when the store's record for {@code uuid} is saved with its player
+     * rather than in the state file.
+     */
+    boolean isSynced(UUID uuid) {
+        return synced.contains(uuid);
+    }
+
+    /**
+     * Resets the player the next time they join.
+     */
+    void resetOnJoin(UUID uuid) {
+        resetOnJoin.add(uuid);
+    }
+
+    /**
+     * Resets every record held only by an offline player, each applied when
+     * its player next joins, and returns how many there were.
+     */
+    int resetAll() {
+        epoch++;
+        resetOnJoin.clear();
+        int count = offlineCount(0);
+        Arrays.fill(offline, 0);
+        offline[0] = count;
+        return count;
+    }
+
+    /**
+     * Number of records held only by offline players with at least
+     * {@code deathCount} deaths. Approximate: it is kept in step by joins and
+     * leaves, and can drift if the server stops without saving.
+     */
+    int offlineCount(int deathCount) {
+        int count = 0;
+        for (int bucket = DeathRecordStore.bucket(deathCount); bucket < offline.length; bucket++) {
+            count += offline[bucket];
+        }
+        return count;
+    }
+
+    /**
+     * The summary to save: offline records, counting those of online players
+     * too since they are saved with their player, the reset epoch and the
+     * players due a reset. Empty summaries are not saved.
+     */
+    Summary summary(DeathRecordStore store) {
+        int[] counts = offline.clone();
+        for (UUID uuid : synced) {
+            int slot = store.slotOf(uuid);
+            if (slot >= 0) {
+                counts[DeathRecordStore.bucket(store.deaths(slot))]++;
+            }
+        }
+        int last = counts.length;
+        while (last > 0 && counts[last - 1] == 0) {
+            last--;
+        }
+        if (last == 0 && epoch == 0 && resetOnJoin.isEmpty() && !primary) {
+            return null;
+        }
+        List<Integer> histogram = new ArrayList<>(last);
+        for (int bucket = 0; bucket < last; bucket++) {
+            histogram.add(counts[bucket]);
+        }
+        List<String> resets = new ArrayList<>(resetOnJoin.size());
+        for (UUID uuid : resetOnJoin) {
+            resets.add(uuid.toString());
+        }
+        // Only this mode keeps the other backends retired; switching away and back migrates them again
+        return new Summary(histogram, epoch, resets, primary && migrated);
+    }
+
+    /**
+     * Reads the records of the other backends under {@code directory}, and
+     * any journal left next to them, into {@code store} in full, replaying
+     * journaled pool changes into {@code pools}. They are
+     * saved as pending records from then on, and the backends retired by
+     * {@link #retire} once that has happened.
+     */
+    int migrate(Path directory, DeathRecordStore store, DeathQuotaConfig config, LifePools pools) {
+        int before = store.size();
+        NbtQuotaStore nbt = new NbtQuotaStore(directory);
+        if (!nbt.isEmpty()) {
+            nbt.scan(store, true);
+        }
+        SqliteQuotaStore sqlite = openDatabase(directory);
+        if (sqlite != null) {
+            if (!sqlite.isEmpty()) {
+                sqlite.scan(store, true);
+            }
+            sqlite.close();
+        }
+        int replayed = Files.isDirectory(directory) ? new DeathJournal(directory, config, pools).replayOnly(store) : 0;
+        migrated = true;
+        DeathQuotaMod.LOGGER.info("Moved {} death records and {} journal entries from {} into the state file",
+            store.size() - before, replayed, directory);
+        return store.size() - before;
+    }
+
+    /**
+     * True when the other backends under {@code directory} still have files
+     * to retire.
+     */
+    static boolean hasBackendFiles(Path directory) {
+        return !new NbtQuotaStore(directory).isEmpty() || Files.exists(directory.resolve(SqliteQuotaStore.FILE_NAME));
+    }
+
+    /**
+     * Moves the other backends' files aside and deletes the journal, once
+     * their records are saved in the state file.
+     */
+    static void retire(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        new NbtQuotaStore(directory).retire();
+        SqliteQuotaStore sqlite = openDatabase(directory);
+        if (sqlite != null) {
+            sqlite.retire();
+        }
+        // Deleting segments never touches the config
+        new DeathJournal(directory, null).deleteSegments();
+    }
+
+    private static SqliteQuotaStore openDatabase(Path directory) {
+        Path database = directory.resolve(SqliteQuotaStore.FILE_NAME);
+        if (!Files.exists(database)) {
+            return null;
+        }
+        try {
+            return SqliteQuotaStore.open(database);
+        } catch (IOException | SQLException | RuntimeException | LinkageError e) {
+            DeathQuotaMod.LOGGER.error("Failed to open death quota database {} to migrate its records", database, e);
+            return null;
+        }
+    }
+
+    private void write(ServerPlayerEntity player, DeathRecordStore store, int slot) {
+        NbtCompound nbt = store.toNbt(slot);
+        nbt.putInt(EPOCH_KEY, epoch);
+        player.setAttached(RECORD, nbt);
+    }
+
+    private void uncount(int deathCount) {
+        int bucket = DeathRecordStore.bucket(deathCount);
+        if (offline[bucket] > 0) {
+            offline[bucket]--;
+        }
+    }
+
+    /**
+     * Reads pending records back from the state file they were last saved in,
+     * so their cold columns can leave memory as they do with the other
+     * backends. The file is parsed on the first load after it was rewritten
+     * and kept softly, so a run of loads reads it once.
+     */
+    static final class StateFileRecords implements DeathRecordStore.ColdLoader {
+        private final Path file;
+        private SoftReference<NbtCompound> records = new SoftReference<>(null);
+
+        StateFileRecords(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public NbtCompound load(UUID uuid, int shard) {
+            NbtCompound loaded = records();
+            return loaded != null && loaded.get(uuid.toString()) instanceof NbtCompound record ? record : null;
+        }
+
+        /**
+         * Drops the parsed copy once the file has been rewritten.
+         */
+        void invalidate() {
+            records.clear();
+        }
+
+        private NbtCompound records() {
+            NbtCompound loaded = records.get();
+            if (loaded != null || !Files.exists(file)) {
+                return loaded;
+            }
+            try {
+                NbtCompound root = NbtIo.readCompressed(file, NbtSizeTracker.ofUnlimitedBytes());
+                loaded = root.get("data") instanceof NbtCompound data && data.get("records") instanceof NbtCompound stored
+                    ? stored : new NbtCompound();
+                records = new SoftReference<>(loaded);
+                return loaded;
+            } catch (IOException e) {
+                DeathQuotaMod.LOGGER.error("Failed to read pending death records from {}", file, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * What {@link DeathQuotaState} saves of this: the offline histogram from
+     * bucket 0 up to its last non-empty bucket, the reset epoch, the UUIDs
+     * due a reset on join, and whether the other backends were migrated.
+     */
+    record Summary(List<Integer> offline, int epoch, List<String> resetOnJoin, boolean migrated) {
+        static final Codec<Summary> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.INT.listOf().optionalFieldOf("offline", List.of()).forGetter(Summary::offline),
+            Codec.INT.optionalFieldOf("epoch", 0).forGetter(Summary::epoch),
+            Codec.STRING.listOf().optionalFieldOf("reset_on_join", List.of()).forGetter(Summary::resetOnJoin),
+            Codec.BOOL.optionalFieldOf("migrated", false).forGetter(Summary::migrated)
+        ).apply(instance, Summary::new));
+    }
+}
@@ -0,0 +1,41 @@
+package net.deathquota.mod.death;
+
+import com.mojang.serialization.Codec;
+
+import java.util.Locale;
+
+/**
+ * How players share lives on top of their own quota: not at all, one pool
+ * for the whole server, one pool per vanilla scoreboard team, or custom
+ * groups set up with {@code /deathquota pool}.
+ */
+public enum PoolMode {
+    OFF("off"),
+    SERVER("server"),
+    TEAM("team"),
+    GROUP("group");
+
+    public static final Codec<PoolMode> CODEC = Codec.STRING.xmap(PoolMode::byId, PoolMode::id);
+
+    private final String id;
+
+    PoolMode(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * The mode named {@code id}, or OFF for anything unknown.
+     */
+    public static PoolMode byId(String id) {
+        for (PoolMode mode : values()) {
+            if (mode.id.equals(id.toLowerCase(Locale.ROOT))) {
+                return mode;
+            }
+        }
+        return OFF;
+    }
+}
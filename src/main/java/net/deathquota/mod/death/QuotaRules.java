@@ -0,0 +1,287 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.util.DeathQuotaEvents;
+import net.deathquota.mod.util.DeathQuotaMetrics;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * The per-player quota rules: what happens on a death, a respawn, a join and
+ * the periodic lock audit. Everything outside the record store goes through
+ * a {@link QuotaRuntime}, so the same code runs on a server, where
+ * {@link DeathQuotaManager} drives it through {@link MinecraftRuntime}, and
+ * in a headless simulation. Server thread only.
+ *
+ * A player is locked when they run out of their own lives, or when the
+ * {@link LifePools} pool they draw from does.
+ */
+public final class QuotaRules<P> {
+    private final QuotaRuntime<P> runtime;
+
+    public QuotaRules(QuotaRuntime<P> runtime) {
+        this.runtime = runtime;
+    }
+
+    public QuotaRuntime<P> runtime() {
+        return runtime;
+    }
+
+    public void onJoin(P player) {
+        runtime.state().setOnline(runtime.uuid(player), true);
+        runtime.state().pools().setOnline(runtime.uuid(player), runtime.team(player), true);
+        bindRecord(player);
+        runtime.execute(() -> applyPostRespawnState(player));
+    }
+
+    public void onDisconnect(P player) {
+        runtime.state().setOnline(runtime.uuid(player), false);
+        runtime.state().pools().setOnline(runtime.uuid(player), null, false);
+    }
+
+    public void onRespawn(P player) {
+        bindRecord(player);
+        runtime.execute(() -> applyPostRespawnState(player));
+    }
+
+    /**
+     * Records a death of {@code player}, who died in their current position,
+     * with the given death message.
+     */
+    public void handleDeath(P player, String deathMessage) {
+        long started = System.nanoTime();
+        DeathQuotaEvents.DeathHandled event = new DeathQuotaEvents.DeathHandled();
+        event.begin();
+        DeathRecord record = runtime.state().recordDeath(runtime.uuid(player));
+        runtime.bindRecord(player, record);
+        int maxLives = runtime.config().getMaxLives();
+        boolean wasLocked = record.isSpectatorLocked();
+        record.increment();
+        record.setLastDeath(runtime.blockPos(player),
+            runtime.dimension(player),
+            runtime.yaw(player),
+            runtime.pitch(player),
+            runtime.worldTime(player));
+        record.setLastDeathMessage(deathMessage);
+        LifePools.Pool pool = runtime.state().pools().recordDeath(runtime.uuid(player), runtime.team(player));
+
+        sendDeathLocationMessage(player, record);
+
+        int remaining = Math.max(0, maxLives - record.getDeathCount());
+        if (record.isSpectatorLocked() || pool != null && pool.exhausted()) {
+            runtime.sendMessage(player, "[Death Quota] No remaining lives. You'll respawn as a spectator.", false);
+        } else {
+            runtime.sendMessage(player, "[Death Quota] Lives remaining: " + remaining + "/" + maxLives
+                + poolLives(pool), false);
+        }
+        if (pool != null && pool.deaths() == pool.lives()) {
+            lockPool(pool, player);
+        }
+        if (DeathQuotaMod.LOGGER.isDebugEnabled()) {
+            DeathQuotaMod.LOGGER.debug("Player {} now has {} deaths recorded", runtime.name(player), record.getDeathCount());
+        }
+        DeathQuotaMetrics.DEATHS_PROCESSED.increment();
+        if (!wasLocked && record.isSpectatorLocked()) {
+            DeathQuotaMetrics.LOCKS_APPLIED.increment();
+        }
+        DeathQuotaMetrics.DEATH_LATENCY.record(System.nanoTime() - started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = runtime.name(player);
+            event.deaths = record.getDeathCount();
+            event.locked = record.isSpectatorLocked();
+            event.commit();
+        }
+    }
+
+    public void applyPostRespawnState(P player) {
+        DeathRecord current = boundRecord(player);
+        boolean poolLocked = runtime.state().pools().locked(runtime.uuid(player));
+        if (current == null && !poolLocked) {
+            return;
+        }
+        long started = System.nanoTime();
+        DeathQuotaEvents.RespawnStateApplied event = new DeathQuotaEvents.RespawnStateApplied();
+        event.begin();
+        boolean locked = poolLocked || current.isSpectatorLocked();
+        if (locked) {
+            forceSpectator(player, current);
+            // Add delayed enforcement for 1.21.5 compatibility where gamemode might not stick immediately
+            runtime.execute(() -> {
+                if (!runtime.isSpectator(player)) {
+                    reenforceSpectator(player, "delayed");
+                }
+            });
+        } else {
+            notifyLives(player, current);
+        }
+        DeathQuotaMetrics.RESPAWN_LATENCY.record(System.nanoTime() - started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = runtime.name(player);
+            event.locked = locked;
+            event.commit();
+        }
+    }
+
+    /**
+     * Puts any locked player in {@code players} who is not spectating back into spectator.
+     * With team pools this also catches up with players who changed teams.
+     */
+    public void auditSpectatorLocks(Iterable<P> players) {
+        LifePools pools = runtime.state().pools();
+        for (P player : players) {
+            if (pools.mode() == PoolMode.TEAM) {
+                pools.setOnline(runtime.uuid(player), runtime.team(player), true);
+            }
+            if (!runtime.isSpectator(player) && isSpectatorLocked(player)) {
+                reenforceSpectator(player, "audit");
+            }
+        }
+    }
+
+    public boolean isSpectatorLocked(P player) {
+        DeathRecord record = boundRecord(player);
+        return record != null && record.isSpectatorLocked() || runtime.state().pools().locked(runtime.uuid(player));
+    }
+
+    /**
+     * Puts every player in {@code players} back in their pool under the
+     * current pool mode and groups, and re-applies respawn state to those
+     * whose lock flipped, after an operator changed the pools through
+     * {@code change}. Returns what {@code change} returned.
+     */
+    public <T> T refreshPools(List<P> players, Supplier<T> change) {
+        boolean[] wasLocked = new boolean[players.size()];
+        for (int i = 0; i < wasLocked.length; i++) {
+            wasLocked[i] = isSpectatorLocked(players.get(i));
+        }
+        T result = change.get();
+        LifePools pools = runtime.state().pools();
+        for (int i = 0; i < wasLocked.length; i++) {
+            P player = players.get(i);
+            pools.setOnline(runtime.uuid(player), runtime.team(player), true);
+            if (isSpectatorLocked(player) != wasLocked[i]) {
+                applyPostRespawnState(player);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the record cached on the player, binding it from DeathQuotaState
+     * on first use. Null means the player has no deaths on file.
+     */
+    public DeathRecord boundRecord(P player) {
+        if (runtime.isRecordBound(player)) {
+            return runtime.boundRecord(player);
+        }
+        return bindRecord(player);
+    }
+
+    private DeathRecord bindRecord(P player) {
+        DeathRecord record = runtime.state().find(runtime.uuid(player));
+        runtime.bindRecord(player, record);
+        return record;
+    }
+
+    public DeathRecord ensureRecord(P player) {
+        DeathRecord existing = boundRecord(player);
+        if (existing != null) {
+            return existing;
+        }
+        DeathRecord record = runtime.state().getOrCreate(runtime.uuid(player));
+        runtime.bindRecord(player, record);
+        return record;
+    }
+
+    public DeathRecord reset(P player) {
+        runtime.unbindRecord(player);
+        DeathRecord record = ensureRecord(player);
+        record.reset();
+        return record;
+    }
+
+    private void notifyLives(P player, DeathRecord record) {
+        int configuredMax = runtime.config().getMaxLives();
+        int remaining = Math.max(0, configuredMax - record.getDeathCount());
+        LifePools.Pool pool = runtime.state().pools().poolOf(runtime.uuid(player));
+        runtime.sendMessage(player, "[Death Quota] Lives remaining: " + remaining + "/" + configuredMax + poolLives(pool), true);
+    }
+
+    private static String poolLives(LifePools.Pool pool) {
+        return pool != null ? ", pool " + pool.id + ": " + pool.remaining() + "/" + pool.lives() : "";
+    }
+
+    /**
+     * Locks the online members of a pool that just ran out, other than
+     * {@code died}, who is locked on respawn. Offline members are locked
+     * when they join, so this costs the members online and no more.
+     */
+    private void lockPool(LifePools.Pool pool, P died) {
+        for (UUID uuid : pool.online()) {
+            P member = runtime.player(uuid);
+            if (member == null || member == died) {
+                continue;
+            }
+            runtime.sendMessage(member, "[Death Quota] Your pool " + pool.id + " has no lives left.", false);
+            runtime.execute(() -> applyPostRespawnState(member));
+        }
+        DeathQuotaMod.LOGGER.info("Life pool {} is out of lives; locked {} online member(s)", pool.id, pool.onlineCount());
+    }
+
+    private void reenforceSpectator(P player, String reason) {
+        DeathQuotaEvents.SpectatorEnforced event = new DeathQuotaEvents.SpectatorEnforced();
+        event.begin();
+        DeathQuotaMetrics.LOCK_ESCAPES.increment();
+        DeathQuotaMod.LOGGER.warn("Player {} escaped spectator lock, re-enforcing", runtime.name(player));
+        runtime.makeSpectator(player);
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = runtime.name(player);
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    private void forceSpectator(P player, DeathRecord record) {
+        DeathQuotaEvents.SpectatorEnforced event = new DeathQuotaEvents.SpectatorEnforced();
+        event.begin();
+        if (!runtime.isSpectator(player)) {
+            runtime.makeSpectator(player);
+        }
+        // Players locked by their pool alone stay where they are
+        if (record != null && record.isSpectatorLocked() && record.hasLastDeathPos()) {
+            runtime.teleport(player, record.getLastDeathDimensionId(), record.getLastDeathPackedPos(),
+                record.getLastYaw(), record.getLastPitch());
+        }
+        runtime.sendMessage(player, "[Death Quota] You exhausted all lives. Spectate or disconnect.", false);
+        event.end();
+        if (event.shouldCommit()) {
+            event.player = runtime.name(player);
+            event.reason = "respawn";
+            event.commit();
+        }
+    }
+
+    private void sendDeathLocationMessage(P player, DeathRecord record) {
+        // Check global config setting
+        boolean enabled = runtime.config().isShowDeathLocationMessages();
+        if (!enabled) {
+            return;
+        }
+        String message;
+        if (record.hasLastDeathPos()) {
+            long packed = record.getLastDeathPackedPos();
+            String dimension = record.getLastDeathDimension().orElse("unknown");
+            message = "[Death Quota] Death at " + BlockPos.unpackLongX(packed) + ", " + BlockPos.unpackLongY(packed)
+                + ", " + BlockPos.unpackLongZ(packed) + " in " + dimension;
+        } else {
+            message = "[Death Quota] Death location unavailable.";
+        }
+        runtime.sendMessage(player, message, false);
+    }
+}
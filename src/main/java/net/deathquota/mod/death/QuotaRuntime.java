@@ -0,0 +1,76 @@
+package net.deathquota.mod.death;
+
+import java.util.UUID;
+
+/**
+ * What {@link QuotaRules} needs from the server it runs on, so the quota
+ * logic can run against a real server ({@link MinecraftRuntime}) or a
+ * headless simulation. {@code P} is the runtime's player type.
+ *
+ * Every method is called on the server thread.
+ */
+public interface QuotaRuntime<P> {
+    DeathQuotaState state();
+
+    DeathQuotaConfig config();
+
+    UUID uuid(P player);
+
+    String name(P player);
+
+    /**
+     * The online player with {@code uuid}, or null when they are not online.
+     */
+    P player(UUID uuid);
+
+    boolean isSpectator(P player);
+
+    /**
+     * Switches the player to spectator mode.
+     */
+    void makeSpectator(P player);
+
+    /**
+     * Moves the player to block position {@code packedPos} in the dimension
+     * with the given {@link DimensionRegistry} id, resolving it to a loaded
+     * world (or a sensible stand-in when that dimension is gone). With
+     * {@link DimensionRegistry#NO_DIMENSION} the player stays in their world.
+     */
+    void teleport(P player, int dimensionId, long packedPos, float yaw, float pitch);
+
+    void sendMessage(P player, String message, boolean overlay);
+
+    /**
+     * The player's current {@link DimensionRegistry} id.
+     */
+    int dimension(P player);
+
+    long blockPos(P player);
+
+    float yaw(P player);
+
+    float pitch(P player);
+
+    /**
+     * Game time of the player's world.
+     */
+    long worldTime(P player);
+
+    /**
+     * Name of the player's scoreboard team, or null when they are on none.
+     */
+    String team(P player);
+
+    boolean isRecordBound(P player);
+
+    DeathRecord boundRecord(P player);
+
+    void bindRecord(P player, DeathRecord record);
+
+    void unbindRecord(P player);
+
+    /**
+     * Runs {@code task} on the server thread after the current one finishes.
+     */
+    void execute(Runnable task);
+}
@@ -0,0 +1,63 @@
+package net.deathquota.mod.death;
+
+import java.io.IOException;
+
+/**
+ * Where {@link ShardedRecordStorage} keeps records between runs. The storage
+ * owns the save thread and decides what to write; a backend only knows how
+ * to read records back ({@link #scan}, and one at a time through
+ * {@link #load}) and how to write a {@link ShardSnapshot}
+ * ({@link #write}).
+ *
+ * {@link #scan}, {@link #load}, {@link #afterSave()} and {@link #retire()}
+ * run on the server thread; {@link #write} runs on the save thread, one
+ * snapshot at a time.
+ */
+interface QuotaStore extends DeathRecordStore.ColdLoader {
+    /**
+     * Short name, as used in the config and shown in stats.
+     */
+    String name();
+
+    /**
+     * True when the backend holds no records, so a backend being switched to
+     * can take over the records of the one being switched from.
+     */
+    boolean isEmpty();
+
+    /**
+     * Reads every record into {@code store} and returns the bytes read. With
+     * {@code full} every column is read, for a store that will be written to
+     * a different backend; otherwise just the resident columns, leaving the
+     * rest to {@link #load}. Leaves shards dirty that it wants rewritten.
+     */
+    long scan(DeathRecordStore store, boolean full);
+
+    /**
+     * True when {@link #write} needs every record of the shard, false when
+     * the records changed since the previous snapshot will do.
+     */
+    boolean wholeShards();
+
+    /**
+     * Writes the snapshot as one unit: deletes the records its shard lost
+     * since the previous snapshot, then inserts or replaces each of its
+     * records. Returns the bytes written. Nothing of the snapshot may be
+     * visible after a failure or a crash unless all of it is.
+     */
+    long write(ShardSnapshot snapshot) throws IOException;
+
+    /**
+     * Called once a save has been collected, on the server thread.
+     */
+    default void afterSave() {
+    }
+
+    /**
+     * Moves the backend's files aside once its records live in another
+     * backend, so they are kept but never read again. Closes the backend.
+     */
+    void retire();
+
+    void close();
+}
@@ -0,0 +1,186 @@
+package net.deathquota.mod.death;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary trace of the events the mod handles, written by {@link TraceRecorder}
+ * and read back by offline replay.
+ *
+ * A trace is a header (magic, version) followed by events. Each event is a
+ * kind byte, the ticks since the previous event as a varint, and a payload.
+ * Players and dimensions are referenced by a varint index; index 0 means
+ * none, and the first use of each new index is followed by its definition
+ * (UUID as two longs, dimension as a UTF string), so a player who dies a
+ * thousand times costs sixteen bytes of UUID once.
+ */
+public final class QuotaTrace {
+    static final int MAGIC = 0x44515452; // "DQTR"
+    static final int VERSION = 1;
+
+    public enum Event {
+        JOIN,
+        DISCONNECT,
+        /** Payload: player, dimension, packed block position, yaw, pitch. */
+        DEATH,
+        /** AFTER_RESPAWN: the new player entity is in the world. */
+        RESPAWN,
+        /** A PERFORM_RESPAWN request from the client, before the game acts on it. */
+        RESPAWN_REQUEST,
+        /** Payload: command, target player, argument, page; LIST adds the filter. */
+        COMMAND
+    }
+
+    public enum Command {
+        INFO,
+        TOP,
+        RANK,
+        LIST,
+        RESET,
+        RESET_ALL,
+        SET_MAX,
+        DEATH_MESSAGES
+    }
+
+    /**
+     * Receives the events of a trace in order. Payload fields an event does
+     * not carry are null or zero.
+     */
+    public interface Visitor {
+        void event(long tick, Event event, UUID player);
+
+        void death(long tick, UUID player, String dimension, long packedPos, float yaw, float pitch);
+
+        void command(long tick, Command command, UUID target, int argument, int page, RecordListing.Kind filter,
+                     String dimension);
+    }
+
+    private QuotaTrace() {
+    }
+
+    /**
+     * Reads every event in {@code file} into {@code visitor} and returns how
+     * many there were. A trace cut short by a crash ends at its last whole event.
+     */
+    public static long read(Path file, Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a death quota trace");
+            }
+            int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported trace version " + version + " in " + file);
+            }
+            Event[] events = Event.values();
+            Command[] commands = Command.values();
+            RecordListing.Kind[] filters = RecordListing.Kind.values();
+            List<UUID> players = new ArrayList<>();
+            List<String> dimensions = new ArrayList<>();
+            long tick = 0;
+            long count = 0;
+            while (true) {
+                int kind = in.read();
+                if (kind < 0) {
+                    return count;
+                }
+                if (kind >= events.length) {
+                    throw new IOException("Unknown trace event " + kind + " in " + file);
+                }
+                try {
+                    tick += readVarLong(in);
+                    Event event = events[kind];
+                    switch (event) {
+                        case DEATH -> {
+                            UUID player = readPlayer(in, players);
+                            String dimension = readDimension(in, dimensions);
+                            visitor.death(tick, player, dimension, in.readLong(), in.readFloat(), in.readFloat());
+                        }
+                        case COMMAND -> {
+                            Command command = commands[in.readUnsignedByte()];
+                            UUID target = readPlayer(in, players);
+                            int argument = readZigZag(in);
+                            int page = readVarInt(in);
+                            RecordListing.Kind filter = null;
+                            String dimension = null;
+                            if (command == Command.LIST) {
+                                filter = filters[in.readUnsignedByte()];
+                                if (filter == RecordListing.Kind.DIMENSION) {
+                                    dimension = readDimension(in, dimensions);
+                                }
+                            }
+                            visitor.command(tick, command, target, argument, page, filter, dimension);
+                        }
+                        default -> visitor.event(tick, event, readPlayer(in, players));
+                    }
+                } catch (EOFException e) {
+                    return count;
+                }
+                count++;
+            }
+        }
+    }
+
+    private static UUID readPlayer(DataInput in, List<UUID> players) throws IOException {
+        int ref = readVarInt(in);
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > players.size()) {
+            players.add(new UUID(in.readLong(), in.readLong()));
+        }
+        return players.get(ref - 1);
+    }
+
+    private static String readDimension(DataInput in, List<String> dimensions) throws IOException {
+        int ref = readVarInt(in);
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > dimensions.size()) {
+            dimensions.add(in.readUTF());
+        }
+        return dimensions.get(ref - 1);
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    static void writeZigZag(DataOutput out, int value) throws IOException {
+        writeVarLong(out, Integer.toUnsignedLong((value << 1) ^ (value >> 31)));
+    }
+
+    static int readZigZag(DataInput in) throws IOException {
+        int encoded = readVarInt(in);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+}
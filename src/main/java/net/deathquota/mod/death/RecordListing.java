@@ -0,0 +1,130 @@
+package net.deathquota.mod.death;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pages through the records matching a filter using the store's order
+ * indexes, so a page costs O(log n + page size) however many records there are.
+ *
+ * Every filter is a contiguous range of one {@link SlotTreap}: locked, alive
+ * and "at least N deaths" are ranges of the death-count order (a record is
+ * locked exactly when its count reaches max lives), and a dimension is a
+ * range of the dimension order. A page can be reached two ways. Jumping to a
+ * page number selects by rank. Asking for the page right after the one a
+ * viewer was last shown instead resumes from the key of the last record on
+ * it, so records moving between the two requests never cause a record to be
+ * shown twice or skipped. Server thread only.
+ */
+public final class RecordListing {
+    public static final int PAGE_SIZE = 10;
+
+    public enum Kind {
+        LOCKED, ALIVE, DEATHS_AT_LEAST, DIMENSION
+    }
+
+    /**
+     * What to list; {@code value} is the minimum death count or the dimension id.
+     */
+    public record Filter(Kind kind, int value) {
+        public static Filter locked() {
+            return new Filter(Kind.LOCKED, 0);
+        }
+
+        public static Filter alive() {
+            return new Filter(Kind.ALIVE, 0);
+        }
+
+        public static Filter deathsAtLeast(int deaths) {
+            return new Filter(Kind.DEATHS_AT_LEAST, deaths);
+        }
+
+        /**
+         * Records whose last death was in the dimension with the given {@link DimensionRegistry} id.
+         */
+        public static Filter dimension(int dimensionId) {
+            return new Filter(Kind.DIMENSION, dimensionId);
+        }
+    }
+
+    /**
+     * One page: the records on it, the page number actually shown and how many
+     * records match in total.
+     */
+    public record Page(List<DeathRecord> records, int page, int pages, int total) {
+    }
+
+    // Last page each viewer was shown, keyed on the command source name
+    private final Map<String, Cursor> cursors = new HashMap<>();
+
+    Page page(DeathRecordStore store, String viewer, Filter filter, int page) {
+        SlotTreap order = filter.kind() == Kind.DIMENSION ? store.dimensionOrder() : store.deathOrder();
+        int first = firstRank(store, order, filter);
+        int total = count(store, order, filter, first);
+        int pages = Math.max(1, (total + PAGE_SIZE - 1) / PAGE_SIZE);
+        int shown = Math.min(Math.max(1, page), pages);
+
+        int start = first + (shown - 1) * PAGE_SIZE;
+        Cursor cursor = cursors.get(viewer);
+        if (cursor != null && cursor.filter.equals(filter) && cursor.page + 1 == shown) {
+            // Resume after the last record shown rather than at a rank that may have shifted since
+            start = Math.max(first, order.countBefore(cursor.primary, cursor.secondary, cursor.slot + 1) + 1);
+        }
+
+        List<DeathRecord> records = new ArrayList<>(PAGE_SIZE);
+        int[] last = {-1};
+        order.forEachFrom(start, slot -> {
+            if (!matches(store, filter, slot)) {
+                return false;
+            }
+            records.add(new DeathRecord(store, slot));
+            last[0] = slot;
+            return records.size() < PAGE_SIZE;
+        });
+        if (last[0] >= 0) {
+            cursors.put(viewer, new Cursor(filter, shown, order.primaryKey(last[0]), order.secondaryKey(last[0]), last[0]));
+        } else {
+            cursors.remove(viewer);
+        }
+        return new Page(records, shown, pages, total);
+    }
+
+    void forget(String viewer) {
+        cursors.remove(viewer);
+    }
+
+    /**
+     * Rank of the first record the filter can match.
+     */
+    private static int firstRank(DeathRecordStore store, SlotTreap order, Filter filter) {
+        return switch (filter.kind()) {
+            case LOCKED, DEATHS_AT_LEAST -> 1;
+            case ALIVE -> store.countWithDeathsAtLeast(store.maxLives()) + 1;
+            case DIMENSION -> order.countBefore(filter.value(), Long.MIN_VALUE, Integer.MIN_VALUE) + 1;
+        };
+    }
+
+    private static int count(DeathRecordStore store, SlotTreap order, Filter filter, int first) {
+        return switch (filter.kind()) {
+            case LOCKED -> store.countWithDeathsAtLeast(store.maxLives());
+            case ALIVE -> store.size() - (first - 1);
+            // Counted in the death order rather than the histogram, which lumps 99 deaths and up together
+            case DEATHS_AT_LEAST -> order.countBefore(1L - filter.value(), Long.MIN_VALUE, Integer.MIN_VALUE);
+            case DIMENSION -> order.countBefore(filter.value() + 1L, Long.MIN_VALUE, Integer.MIN_VALUE) - (first - 1);
+        };
+    }
+
+    private static boolean matches(DeathRecordStore store, Filter filter, int slot) {
+        return switch (filter.kind()) {
+            case LOCKED -> store.locked(slot);
+            case ALIVE -> !store.locked(slot);
+            case DEATHS_AT_LEAST -> store.deaths(slot) >= filter.value();
+            case DIMENSION -> store.dimension(slot) == filter.value();
+        };
+    }
+
+    private record Cursor(Filter filter, int page, long primary, long secondary, int slot) {
+    }
+}
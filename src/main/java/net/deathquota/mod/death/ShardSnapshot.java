@@ -0,0 +1,197 @@
+package net.deathquota.mod.death;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.nbt.NbtCompound;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Immutable copy of one shard's records, taken by
+ * {@link DeathRecordStore#snapshotShard(int, boolean)}. Taking it is a handful
+ * of array writes per record; the NBT encode happens later, on whichever
+ * thread calls {@link #toNbt(NbtCompound)}.
+ */
+final class ShardSnapshot {
+    final int shard;
+    private final long[] uuidMost;
+    private final long[] uuidLeast;
+    private final int[] deaths;
+    private final boolean[] locked;
+    private final boolean[] unloaded;
+    private boolean anyUnloaded;
+    private final boolean[] hasPositions;
+    private final long[] positions;
+    private final String[] dimensions;
+    private final float[] yaws;
+    private final float[] pitches;
+    private final long[] times;
+    private final String[] messages;
+    private final LongArrayList removed;
+
+    ShardSnapshot(int shard, int records, LongArrayList removed) {
+        this.shard = shard;
+        this.removed = removed;
+        uuidMost = new long[records];
+        uuidLeast = new long[records];
+        deaths = new int[records];
+        locked = new boolean[records];
+        unloaded = new boolean[records];
+        hasPositions = new boolean[records];
+        positions = new long[records];
+        dimensions = new String[records];
+        yaws = new float[records];
+        pitches = new float[records];
+        times = new long[records];
+        messages = new String[records];
+    }
+
+    void putHot(int i, long most, long least, int deathCount, boolean isLocked, long time, String dimension) {
+        uuidMost[i] = most;
+        uuidLeast[i] = least;
+        deaths[i] = deathCount;
+        locked[i] = isLocked;
+        times[i] = time;
+        dimensions[i] = dimension;
+    }
+
+    void putCold(int i, boolean hasPosition, long position, float yaw, float pitch, String message) {
+        hasPositions[i] = hasPosition;
+        positions[i] = position;
+        yaws[i] = yaw;
+        pitches[i] = pitch;
+        messages[i] = message;
+    }
+
+    /**
+     * Marks record {@code i} as captured without its cold columns.
+     */
+    void putUnloaded(int i) {
+        unloaded[i] = true;
+        anyUnloaded = true;
+    }
+
+    int size() {
+        return deaths.length;
+    }
+
+    long uuidMost(int i) {
+        return uuidMost[i];
+    }
+
+    long uuidLeast(int i) {
+        return uuidLeast[i];
+    }
+
+    int deaths(int i) {
+        return deaths[i];
+    }
+
+    boolean locked(int i) {
+        return locked[i];
+    }
+
+    long time(int i) {
+        return times[i];
+    }
+
+    String dimension(int i) {
+        return dimensions[i];
+    }
+
+    /**
+     * False when the record was captured hot-only; its cold columns below are then unset.
+     */
+    boolean hasCold(int i) {
+        return !unloaded[i];
+    }
+
+    boolean hasPosition(int i) {
+        return hasPositions[i];
+    }
+
+    long position(int i) {
+        return positions[i];
+    }
+
+    float yaw(int i) {
+        return yaws[i];
+    }
+
+    float pitch(int i) {
+        return pitches[i];
+    }
+
+    String message(int i) {
+        return messages[i];
+    }
+
+    /**
+     * UUIDs removed from the shard since its previous snapshot, as most, least pairs.
+     */
+    LongArrayList removed() {
+        return removed;
+    }
+
+    /**
+     * True when some records were captured without their cold columns, so
+     * {@link #toNbt(NbtCompound)} needs the previous shard contents.
+     */
+    boolean needsPrevious() {
+        return anyUnloaded;
+    }
+
+    /**
+     * Builds the UUID-string to record compound, in the same layout as
+     * {@link DeathRecordStore#CODEC}. Records captured without cold columns
+     * take them from {@code previous}, the shard's last written records.
+     */
+    NbtCompound toNbt(NbtCompound previous) {
+        NbtCompound records = new NbtCompound();
+        for (int i = 0; i < deaths.length; i++) {
+            String key = new UUID(uuidMost[i], uuidLeast[i]).toString();
+            if (unloaded[i]) {
+                NbtCompound record = previous != null && previous.get(key) instanceof NbtCompound stored
+                    ? stored.copy() : new NbtCompound();
+                DeathRecordStore.putHot(record, deaths[i], locked[i], times[i], dimensions[i]);
+                records.put(key, record);
+            } else {
+                records.put(key, DeathRecordStore.recordNbt(deaths[i], locked[i], times[i], dimensions[i],
+                    hasPositions[i], positions[i], messages[i], yaws[i], pitches[i]));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes the shard's resident index: the dimension names used, then UUID,
+     * death count, last death time and dimension (as a position in that
+     * list, -1 for none) per record.
+     */
+    void writeIndex(DataOutput out) throws IOException {
+        Object2IntOpenHashMap<String> dimensionIndex = new Object2IntOpenHashMap<>();
+        dimensionIndex.defaultReturnValue(-1);
+        List<String> dimensionNames = new ArrayList<>();
+        for (String dimension : dimensions) {
+            if (dimension != null && dimensionIndex.putIfAbsent(dimension, dimensionNames.size()) == -1) {
+                dimensionNames.add(dimension);
+            }
+        }
+        out.writeInt(dimensionNames.size());
+        for (String dimension : dimensionNames) {
+            out.writeUTF(dimension);
+        }
+        out.writeInt(deaths.length);
+        for (int i = 0; i < deaths.length; i++) {
+            out.writeLong(uuidMost[i]);
+            out.writeLong(uuidLeast[i]);
+            out.writeInt(deaths[i]);
+            out.writeLong(times[i]);
+            out.writeInt(dimensions[i] == null ? -1 : dimensionIndex.getInt(dimensions[i]));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package net.deathquota.mod.death;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Which {@link DeathRecordStore} slots sit in each shard, and what each
+ * shard owes its next save.
+ *
+ * Every shard keeps a list of its live slots, and every slot remembers its
+ * position in that list, so removing a record is a swap with the list's
+ * last entry rather than a search. The dirty mask has one bit per shard
+ * changed since its last snapshot; the saving mask holds the shards of a
+ * save still in flight. UUIDs removed from a shard since its last snapshot
+ * are kept as most, least pairs until that snapshot takes them.
+ * Server thread only.
+ */
+final class ShardTracker {
+    private final IntArrayList[] slots = new IntArrayList[DeathRecordStore.SHARD_COUNT];
+    // Position of each slot in its shard's list
+    private int[] positions = new int[0];
+    private long dirty;
+    private long saving;
+    // Per shard, UUIDs (most, least pairs) removed since the shard's last snapshot; null when none
+    private final LongArrayList[] removed = new LongArrayList[DeathRecordStore.SHARD_COUNT];
+
+    ShardTracker() {
+        for (int shard = 0; shard < slots.length; shard++) {
+            slots[shard] = new IntArrayList();
+        }
+    }
+
+    /**
+     * Live slots belonging to {@code shard}, in no particular order. Do not modify the list.
+     */
+    IntArrayList slots(int shard) {
+        return slots[shard];
+    }
+
+    void add(int shard, int slot) {
+        if (slot >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(slot + 1, positions.length * 2));
+        }
+        positions[slot] = slots[shard].size();
+        slots[shard].add(slot);
+    }
+
+    /**
+     * Removes {@code slot} from its shard's list by moving another slot into
+     * its place. The slots in front of position {@code boundary} stay in
+     * front of it and the others stay behind, which keeps a walk over the
+     * list that has reached {@code boundary} from skipping or repeating a
+     * slot. Returns where the boundary is afterwards.
+     */
+    int remove(int shard, int slot, int boundary) {
+        IntArrayList list = slots[shard];
+        int position = positions[slot];
+        int last = list.size() - 1;
+        if (position < boundary) {
+            // Fill the hole with the last slot in front of the boundary, then that one's place with the list's last
+            boundary--;
+            move(list, boundary, position);
+            move(list, last, boundary);
+        } else {
+            move(list, last, position);
+        }
+        list.removeInt(last);
+        return boundary;
+    }
+
+    private void move(IntArrayList list, int from, int to) {
+        if (from != to) {
+            int slot = list.getInt(from);
+            list.set(to, slot);
+            positions[slot] = to;
+        }
+    }
+
+    long dirty() {
+        return dirty;
+    }
+
+    /**
+     * Returns the dirty mask and clears it; callers re-mark shards they failed to write.
+     */
+    long takeDirty() {
+        long taken = dirty;
+        dirty = 0L;
+        return taken;
+    }
+
+    void markDirty(int shard) {
+        dirty |= 1L << shard;
+    }
+
+    void markDirty(long mask) {
+        dirty |= mask;
+    }
+
+    /**
+     * Marks every shard that holds a record dirty.
+     */
+    void markAllDirty() {
+        for (int shard = 0; shard < slots.length; shard++) {
+            if (!slots[shard].isEmpty()) {
+                dirty |= 1L << shard;
+            }
+        }
+    }
+
+    void setSaving(long mask) {
+        saving = mask;
+    }
+
+    /**
+     * True when {@code shard} has neither unsaved changes nor a save in flight,
+     * so its file on disk matches the store.
+     */
+    boolean isSettled(int shard) {
+        return ((dirty | saving) & (1L << shard)) == 0L;
+    }
+
+    void addRemoved(int shard, long most, long least) {
+        LongArrayList list = removedList(shard);
+        list.add(most);
+        list.add(least);
+    }
+
+    /**
+     * Puts removals a failed snapshot carried back in line for the shard's next one.
+     */
+    void restoreRemoved(int shard, LongArrayList uuids) {
+        if (!uuids.isEmpty()) {
+            removedList(shard).addAll(uuids);
+        }
+    }
+
+    /**
+     * Returns the removals recorded for {@code shard} and forgets them.
+     */
+    LongArrayList takeRemoved(int shard) {
+        LongArrayList taken = removed[shard];
+        removed[shard] = null;
+        return taken != null ? taken : new LongArrayList(0);
+    }
+
+    void forgetRemoved() {
+        Arrays.fill(removed, null);
+    }
+
+    private LongArrayList removedList(int shard) {
+        LongArrayList list = removed[shard];
+        if (list == null) {
+            list = removed[shard] = new LongArrayList();
+        }
+        return list;
+    }
+}
@@ -0,0 +1,305 @@
+package net.deathquota.mod.death;
+
+import net.deathquota.mod.DeathQuotaMod;
+import net.deathquota.mod.util.DeathQuotaEvents;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.WorldSavePath;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists a {@link DeathRecordStore} through a {@link QuotaStore} backend:
+ * the mod's NBT shard files, or an SQLite database, chosen by the config.
+ *
+ * Records are partitioned into {@link DeathRecordStore#SHARD_COUNT} shards
+ * and a save only covers the shards whose dirty bit is set, so its cost
+ * follows the number of players touched since the last one rather than the
+ * size of the whole history. Backends that write rows get just the records
+ * changed within those shards.
+ *
+ * Saves are split in two: the server thread copies the dirty shards'
+ * columns, and a dedicated save thread hands them to the backend. At most
+ * one save is in flight per storage; a save requested while the previous one
+ * is still running is skipped and its shards stay dirty.
+ *
+ * Startup reads only what stays resident (every record's UUID, death count,
+ * last death time and dimension), so lock state and query keys are known,
+ * while the rest of a record is read from the backend on first use through
+ * {@link DeathRecordStore.ColdLoader}. When the configured backend is empty
+ * and the other one has records, they are read in full instead, written to
+ * the configured backend by the first save, and the old files retired once
+ * that save has succeeded.
+ *
+ * A save only reports a shard written once the backend has forced it to
+ * disk, since the journal segments it covers are deleted as soon as the
+ * save is collected.
+ */
+final class ShardedRecordStorage {
+    private final Path directory;
+    private final QuotaStore backend;
+    // The other backend while its records are being moved into this one
+    private QuotaStore retiring;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Death Quota Save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong totalBytesWritten = new AtomicLong();
+    private CompletableFuture<SaveResult> inFlight;
+    private volatile SaveResult lastSave;
+
+    ShardedRecordStorage(Path directory, QuotaStore backend, QuotaStore other) {
+        this.directory = directory;
+        this.backend = backend;
+        this.retiring = other;
+    }
+
+    /**
+     * Storage under {@code data/death_quota/} of the server's world, backed by
+     * {@code backendName} ({@link StorageBackend}). Falls back to NBT when the
+     * SQLite database cannot be opened.
+     */
+    static ShardedRecordStorage forServer(MinecraftServer server, StorageBackend backendName) {
+        Path directory = directoryFor(server);
+        NbtQuotaStore nbt = new NbtQuotaStore(directory);
+        Path database = directory.resolve(SqliteQuotaStore.FILE_NAME);
+        if (backendName == StorageBackend.SQLITE) {
+            try {
+                return new ShardedRecordStorage(directory, SqliteQuotaStore.open(database), nbt);
+            } catch (IOException | SQLException | RuntimeException | LinkageError e) {
+                DeathQuotaMod.LOGGER.error("Failed to open death quota database {}, using NBT shards instead", database, e);
+            }
+        }
+        QuotaStore other = null;
+        if (Files.exists(database)) {
+            try {
+                other = SqliteQuotaStore.open(database);
+            } catch (IOException | SQLException | RuntimeException | LinkageError e) {
+                DeathQuotaMod.LOGGER.error("Failed to open death quota database {} to migrate its records", database, e);
+            }
+        }
+        return new ShardedRecordStorage(directory, nbt, other);
+    }
+
+    /**
+     * Forces {@code file}'s contents to the storage device, for a file
+     * written through a stream that gave no access to its channel.
+     */
+    static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces the entries of {@code directory}, so files just created, renamed
+     * into or deleted from it survive a power loss. Not every platform can
+     * open a directory (Windows cannot), so failures are ignored there.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.debug("Cannot sync directory {}", directory, e);
+        }
+    }
+
+    static Path directoryFor(MinecraftServer server) {
+        return server.getSavePath(WorldSavePath.ROOT).resolve("data").resolve(DeathQuotaMod.MOD_ID);
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * Name of the backend records are saved to.
+     */
+    String backendName() {
+        return backend.name();
+    }
+
+    /**
+     * Loads every record the backend has into {@code store} and makes the
+     * backend its cold loader, or, when the backend is empty and the other
+     * one is not, every record of the other backend, marking them all for
+     * the next save.
+     */
+    void load(DeathRecordStore store) {
+        store.setColdLoader(backend);
+        DeathQuotaEvents.RecordsLoaded event = new DeathQuotaEvents.RecordsLoaded();
+        event.begin();
+        long bytes;
+        if (retiring != null && !retiring.isEmpty() && backend.isEmpty()) {
+            DeathQuotaMod.LOGGER.info("Moving death records from the {} backend to {}", retiring.name(), backend.name());
+            bytes = retiring.scan(store, true);
+            store.markAllDirty();
+        } else {
+            if (retiring != null) {
+                if (!retiring.isEmpty()) {
+                    DeathQuotaMod.LOGGER.warn("Both the {} and {} death quota backends hold records; using {}",
+                        backend.name(), retiring.name(), backend.name());
+                }
+                retiring.close();
+                retiring = null;
+            }
+            bytes = backend.scan(store, false);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            int shards = 0;
+            for (int shard = 0; shard < DeathRecordStore.SHARD_COUNT; shard++) {
+                if (!store.slotsInShard(shard).isEmpty()) {
+                    shards++;
+                }
+            }
+            event.shards = shards;
+            event.records = store.size();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Collects the result of the previous save, if it has finished, re-marking
+     * any shards it failed to write and retiring the old backend once a save
+     * has moved every record out of it. With {@code wait} the call blocks until the
+     * in-flight save completes. Returns null when there was nothing to collect.
+     * Server thread only.
+     */
+    SaveResult collect(DeathRecordStore store, boolean wait) {
+        CompletableFuture<SaveResult> pending = inFlight;
+        if (pending == null || (!wait && !pending.isDone())) {
+            return null;
+        }
+        inFlight = null;
+        SaveResult result = pending.join();
+        for (ShardSnapshot failed : result.failed()) {
+            store.restoreSnapshot(failed);
+        }
+        store.setSavingShards(0L);
+        backend.afterSave();
+        store.trimCold();
+        if (retiring != null && result.failedShards() == 0L) {
+            // Every shard is in the new backend now
+            DeathQuotaMod.LOGGER.info("Retiring the {} death quota backend", retiring.name());
+            retiring.retire();
+            retiring = null;
+        }
+        lastSave = result;
+        return result;
+    }
+
+    boolean isSaving() {
+        return inFlight != null;
+    }
+
+    /**
+     * Snapshots every dirty shard of {@code store}, clears their dirty bits and
+     * hands the write to the backend on the save thread. {@code journalSegment} is
+     * carried through to the result so the caller knows which journal segments
+     * the save covers. Returns false, leaving the dirty bits alone, while the
+     * previous save is still running so two saves never overlap. Server thread only.
+     */
+    boolean startSave(DeathRecordStore store, long journalSegment) {
+        if (inFlight != null) {
+            return false;
+        }
+        long dirty = store.takeDirtyShards();
+        store.setSavingShards(dirty);
+        List<ShardSnapshot> snapshots = new ArrayList<>(Long.bitCount(dirty));
+        boolean unsavedOnly = !backend.wholeShards();
+        for (long remaining = dirty; remaining != 0L; remaining &= remaining - 1) {
+            snapshots.add(store.snapshotShard(Long.numberOfTrailingZeros(remaining), unsavedOnly));
+        }
+        inFlight = CompletableFuture.supplyAsync(() -> write(snapshots, journalSegment), executor);
+        return true;
+    }
+
+    /**
+     * Result of the last completed save, or null before the first one finishes.
+     */
+    SaveResult lastSave() {
+        return lastSave;
+    }
+
+    long totalBytesWritten() {
+        return totalBytesWritten.get();
+    }
+
+    /**
+     * Waits for the in-flight save, stops the save thread and closes the
+     * backends. Returns the result of that last save, as {@link #collect} does.
+     */
+    SaveResult close(DeathRecordStore store) {
+        SaveResult result = collect(store, true);
+        executor.shutdown();
+        backend.close();
+        if (retiring != null) {
+            retiring.close();
+        }
+        return result;
+    }
+
+    private SaveResult write(List<ShardSnapshot> snapshots, long journalSegment) {
+        DeathQuotaEvents.ShardsWritten event = new DeathQuotaEvents.ShardsWritten();
+        event.begin();
+        long started = System.nanoTime();
+        long written = 0L;
+        long failed = 0L;
+        List<ShardSnapshot> failedSnapshots = List.of();
+        long bytes = 0L;
+        int records = 0;
+        for (ShardSnapshot snapshot : snapshots) {
+            try {
+                bytes += backend.write(snapshot);
+                written |= 1L << snapshot.shard;
+                records += snapshot.size();
+            } catch (IOException | RuntimeException e) {
+                DeathQuotaMod.LOGGER.error("Failed to write death quota shard {} to the {} backend", snapshot.shard,
+                    backend.name(), e);
+                failed |= 1L << snapshot.shard;
+                if (failedSnapshots.isEmpty()) {
+                    failedSnapshots = new ArrayList<>();
+                }
+                failedSnapshots.add(snapshot);
+            }
+        }
+        long duration = System.nanoTime() - started;
+        totalBytesWritten.addAndGet(bytes);
+        if (written != 0L) {
+            DeathQuotaMod.LOGGER.debug("Saved {} death quota shard(s), {} bytes in {} ms", Long.bitCount(written), bytes,
+                TimeUnit.NANOSECONDS.toMillis(duration));
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.shards = Long.bitCount(written);
+            event.failedShards = Long.bitCount(failed);
+            event.records = records;
+            event.bytes = bytes;
+            event.commit();
+        }
+        return new SaveResult(written, failed, bytes, duration, journalSegment, failedSnapshots);
+    }
+
+    /**
+     * Outcome of one save: shard bitmasks written and failed, bytes written,
+     * wall time spent on the save thread, the journal segment it covers, and
+     * the snapshots of the failed shards, to be saved again.
+     */
+    record SaveResult(long writtenShards, long failedShards, long bytesWritten, long durationNanos, long journalSegment,
+                      List<ShardSnapshot> failed) {
+    }
+}
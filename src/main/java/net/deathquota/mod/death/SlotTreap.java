@@ -0,0 +1,272 @@
+package net.deathquota.mod.death;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Order-statistic tree over {@link DeathRecordStore} slots, ordered by two
+ * long keys and then by slot, all ascending.
+ *
+ * The tree is a treap whose nodes are the slots themselves, kept in
+ * parallel arrays with a subtree size per node. Insert, remove, rank and
+ * lower-bound lookups are O(log n) expected, and walking n entries from any
+ * position costs O(log n + n), so queries never scan the store. Each node
+ * keeps a copy of its keys, which the store refreshes through
+ * {@link #update(int, long, long)} whenever the columns they derive from
+ * change. Callers pick the keys (negating a column sorts it descending).
+ * Server thread only.
+ */
+final class SlotTreap {
+    private static final int NONE = -1;
+
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    // Subtree size; 0 marks a slot that is not in the tree
+    private int[] sizes = new int[0];
+    private int[] priorities = new int[0];
+    private long[] primary = new long[0];
+    private long[] secondary = new long[0];
+    private final SplittableRandom random = new SplittableRandom(0x5EED_DEADL);
+    private int root = NONE;
+    // Results of split(), which returns two subtrees
+    private int splitLeft;
+    private int splitRight;
+
+    int size() {
+        return root == NONE ? 0 : sizes[root];
+    }
+
+    boolean contains(int slot) {
+        return slot < sizes.length && sizes[slot] > 0;
+    }
+
+    long primaryKey(int slot) {
+        return primary[slot];
+    }
+
+    long secondaryKey(int slot) {
+        return secondary[slot];
+    }
+
+    /**
+     * Adds {@code slot} under the given keys, or moves it there if already present.
+     */
+    void update(int slot, long primaryKey, long secondaryKey) {
+        if (contains(slot)) {
+            if (primary[slot] == primaryKey && secondary[slot] == secondaryKey) {
+                return;
+            }
+            remove(slot);
+        }
+        insert(slot, primaryKey, secondaryKey);
+    }
+
+    void remove(int slot) {
+        if (contains(slot)) {
+            root = erase(root, slot);
+            sizes[slot] = 0;
+        }
+    }
+
+    /**
+     * One-based position of {@code slot}, or 0 when it is not in the tree.
+     */
+    int rank(int slot) {
+        if (!contains(slot)) {
+            return 0;
+        }
+        int rank = 0;
+        int node = root;
+        while (node != slot) {
+            if (before(slot, node)) {
+                node = left[node];
+            } else {
+                rank += sizeOf(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return rank + sizeOf(left[node]) + 1;
+    }
+
+    /**
+     * Number of entries ordered strictly before the key ({@code primaryKey},
+     * {@code secondaryKey}, {@code slot}), whether or not that key is present.
+     * Used as a lower bound, and as a cursor that survives the entry it was
+     * taken from moving or disappearing.
+     */
+    int countBefore(long primaryKey, long secondaryKey, int slot) {
+        int count = 0;
+        int node = root;
+        while (node != NONE) {
+            if (compare(primaryKey, secondaryKey, slot, node) <= 0) {
+                node = left[node];
+            } else {
+                count += sizeOf(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Passes the slots in order to {@code sink}, starting at the one-based
+     * {@code fromRank}, until the sink returns false or the tree runs out.
+     */
+    void forEachFrom(int fromRank, IntPredicate sink) {
+        int[] stack = new int[64];
+        int depth = 0;
+        int skip = fromRank - 1;
+        int node = root;
+        // Descend to the first wanted node, stacking the ancestors still to be visited after it
+        while (node != NONE) {
+            int leftSize = sizeOf(left[node]);
+            if (skip < leftSize) {
+                stack = push(stack, depth++, node);
+                node = left[node];
+            } else if (skip == leftSize) {
+                stack = push(stack, depth++, node);
+                break;
+            } else {
+                skip -= leftSize + 1;
+                node = right[node];
+            }
+        }
+        while (depth > 0) {
+            node = stack[--depth];
+            if (!sink.test(node)) {
+                return;
+            }
+            for (int next = right[node]; next != NONE; next = left[next]) {
+                stack = push(stack, depth++, next);
+            }
+        }
+    }
+
+    private void insert(int slot, long primaryKey, long secondaryKey) {
+        ensureCapacity(slot + 1);
+        left[slot] = NONE;
+        right[slot] = NONE;
+        sizes[slot] = 1;
+        priorities[slot] = random.nextInt();
+        primary[slot] = primaryKey;
+        secondary[slot] = secondaryKey;
+        root = insert(root, slot);
+    }
+
+    private int insert(int node, int slot) {
+        if (node == NONE) {
+            return slot;
+        }
+        if (priorities[slot] > priorities[node]) {
+            split(node, slot);
+            left[slot] = splitLeft;
+            right[slot] = splitRight;
+            resize(slot);
+            return slot;
+        }
+        if (before(slot, node)) {
+            left[node] = insert(left[node], slot);
+        } else {
+            right[node] = insert(right[node], slot);
+        }
+        resize(node);
+        return node;
+    }
+
+    /**
+     * Splits the subtree at {@code node} into the nodes ordered before
+     * {@code pivot} ({@link #splitLeft}) and after it ({@link #splitRight}).
+     */
+    private void split(int node, int pivot) {
+        if (node == NONE) {
+            splitLeft = NONE;
+            splitRight = NONE;
+            return;
+        }
+        if (before(node, pivot)) {
+            split(right[node], pivot);
+            right[node] = splitLeft;
+            resize(node);
+            splitLeft = node;
+        } else {
+            split(left[node], pivot);
+            left[node] = splitRight;
+            resize(node);
+            splitRight = node;
+        }
+    }
+
+    private int erase(int node, int slot) {
+        if (node == slot) {
+            return merge(left[node], right[node]);
+        }
+        if (before(slot, node)) {
+            left[node] = erase(left[node], slot);
+        } else {
+            right[node] = erase(right[node], slot);
+        }
+        resize(node);
+        return node;
+    }
+
+    private int merge(int a, int b) {
+        if (a == NONE) {
+            return b;
+        }
+        if (b == NONE) {
+            return a;
+        }
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            resize(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        resize(b);
+        return b;
+    }
+
+    private boolean before(int a, int b) {
+        return compare(primary[a], secondary[a], a, b) < 0;
+    }
+
+    private int compare(long primaryKey, long secondaryKey, int slot, int node) {
+        if (primaryKey != primary[node]) {
+            return primaryKey < primary[node] ? -1 : 1;
+        }
+        if (secondaryKey != secondary[node]) {
+            return secondaryKey < secondary[node] ? -1 : 1;
+        }
+        return Integer.compare(slot, node);
+    }
+
+    private int sizeOf(int node) {
+        return node == NONE ? 0 : sizes[node];
+    }
+
+    private void resize(int node) {
+        sizes[node] = sizeOf(left[node]) + sizeOf(right[node]) + 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sizes.length) {
+            return;
+        }
+        int length = Math.max(capacity, Math.max(64, sizes.length * 2));
+        left = Arrays.copyOf(left, length);
+        right = Arrays.copyOf(right, length);
+        sizes = Arrays.copyOf(sizes, length);
+        priorities = Arrays.copyOf(priorities, length);
+        primary = Arrays.copyOf(primary, length);
+        secondary = Arrays.copyOf(secondary, length);
+    }
+
+    private static int[] push(int[] stack, int depth, int node) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = node;
+        return stack;
+    }
+}
@@ -0,0 +1,349 @@
+package net.deathquota.mod.death;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.deathquota.mod.DeathQuotaMod;
+import net.minecraft.nbt.NbtCompound;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.UUID;
+
+/**
+ * Keeps records as rows of an embedded SQLite database in the storage
+ * directory, one row per player keyed on the UUID.
+ *
+ * Saves write only the records changed since the previous save: removed
+ * records are deleted by key and the rest go out as batches of prepared
+ * upserts, all under one commit per shard, so a save costs the rows touched
+ * however large the history is and pays for one sync per shard. A record whose cold columns were not resident when it was captured
+ * only has its hot columns updated, leaving the stored position and message
+ * alone. Cold loads are single-row primary key lookups.
+ *
+ * The database runs in WAL mode with {@code synchronous=FULL}, so a commit
+ * is on disk before the save reports it and the journal segments it covers
+ * are deleted; NORMAL would let a power loss roll back commits whose journal
+ * is already gone. Reads (server thread) and writes (save thread) use
+ * separate connections, so a cold load never waits behind a save.
+ */
+final class SqliteQuotaStore implements QuotaStore {
+    static final String NAME = "sqlite";
+    static final String FILE_NAME = "records.sqlite";
+    private static final String DRIVER = "org.sqlite.JDBC";
+
+    private static final int SCHEMA_VERSION = 1;
+    private static final String CREATE_TABLE = """
+        CREATE TABLE IF NOT EXISTS records (
+            uuid_most INTEGER NOT NULL,
+            uuid_least INTEGER NOT NULL,
+            deaths INTEGER NOT NULL,
+            time INTEGER NOT NULL,
+            dimension TEXT,
+            has_pos INTEGER NOT NULL DEFAULT 0,
+            pos INTEGER NOT NULL DEFAULT 0,
+            yaw REAL NOT NULL DEFAULT 0,
+            pitch REAL NOT NULL DEFAULT 0,
+            message TEXT,
+            PRIMARY KEY (uuid_most, uuid_least)
+        ) WITHOUT ROWID""";
+    private static final String SELECT_HOT = "SELECT uuid_most, uuid_least, deaths, time, dimension FROM records";
+    private static final String SELECT_FULL =
+        "SELECT uuid_most, uuid_least, deaths, time, dimension, pos, yaw, pitch, message, has_pos FROM records";
+    private static final String SELECT_ONE =
+        "SELECT deaths, time, dimension, pos, yaw, pitch, message, has_pos FROM records"
+            + " WHERE uuid_most = ? AND uuid_least = ?";
+    private static final String UPSERT_FULL = """
+        INSERT OR REPLACE INTO records
+            (uuid_most, uuid_least, deaths, time, dimension, pos, yaw, pitch, message, has_pos)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+    private static final String UPSERT_HOT = """
+        INSERT INTO records (uuid_most, uuid_least, deaths, time, dimension) VALUES (?, ?, ?, ?, ?)
+        ON CONFLICT (uuid_most, uuid_least) DO UPDATE SET
+            deaths = excluded.deaths, time = excluded.time, dimension = excluded.dimension""";
+    private static final String DELETE = "DELETE FROM records WHERE uuid_most = ? AND uuid_least = ?";
+    // Key, death count and time per row, for write accounting; strings add their length
+    private static final int HOT_ROW_BYTES = 28;
+    private static final int COLD_ROW_BYTES = 16;
+
+    private final Path file;
+    private final Connection reader;
+    private final Connection writer;
+    private final PreparedStatement selectOne;
+    private final PreparedStatement upsertFull;
+    private final PreparedStatement upsertHot;
+    private final PreparedStatement delete;
+    private boolean closed;
+
+    private SqliteQuotaStore(Path file, Connection reader, Connection writer) throws SQLException {
+        this.file = file;
+        this.reader = reader;
+        this.writer = writer;
+        this.selectOne = reader.prepareStatement(SELECT_ONE);
+        this.upsertFull = writer.prepareStatement(UPSERT_FULL);
+        this.upsertHot = writer.prepareStatement(UPSERT_HOT);
+        this.delete = writer.prepareStatement(DELETE);
+    }
+
+    /**
+     * True when the SQLite JDBC driver is on the classpath. It is not bundled
+     * with the mod; see the README for adding it to a server.
+     */
+    static boolean driverAvailable() {
+        try {
+            Class.forName(DRIVER);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens the database at {@code file}, creating it and its table when missing.
+     */
+    static SqliteQuotaStore open(Path file) throws IOException, SQLException {
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite JDBC driver " + DRIVER + " is not on the classpath", e);
+        }
+        Files.createDirectories(file.getParent());
+        String url = "jdbc:sqlite:" + file.toAbsolutePath();
+        Connection writer = DriverManager.getConnection(url);
+        Connection reader = null;
+        try {
+            try (Statement statement = writer.createStatement()) {
+                int version = 0;
+                try (ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+                    if (result.next()) {
+                        version = result.getInt(1);
+                    }
+                }
+                if (version > SCHEMA_VERSION) {
+                    throw new SQLException(file + " has unknown schema version " + version);
+                }
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=FULL");
+                statement.execute(CREATE_TABLE);
+                statement.execute("PRAGMA user_version=" + SCHEMA_VERSION);
+            }
+            writer.setAutoCommit(false);
+            reader = DriverManager.getConnection(url);
+            return new SqliteQuotaStore(file, reader, writer);
+        } catch (SQLException e) {
+            closeQuietly(reader);
+            closeQuietly(writer);
+            throw e;
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try (Statement statement = reader.createStatement();
+             ResultSet result = statement.executeQuery("SELECT 1 FROM records LIMIT 1")) {
+            return !result.next();
+        } catch (SQLException e) {
+            DeathQuotaMod.LOGGER.error("Failed to query death quota database {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads every row, hot columns only unless {@code full}, and returns the
+     * database's size on disk.
+     */
+    @Override
+    public long scan(DeathRecordStore store, boolean full) {
+        try (Statement statement = reader.createStatement();
+             ResultSet result = statement.executeQuery(full ? SELECT_FULL : SELECT_HOT)) {
+            while (result.next()) {
+                long most = result.getLong(1);
+                long least = result.getLong(2);
+                int deaths = result.getInt(3);
+                long time = result.getLong(4);
+                String dimension = result.getString(5);
+                if (full) {
+                    store.readNbt(store.getOrCreateSlot(most, least), DeathRecordStore.recordNbt(deaths, false, time,
+                        dimension, result.getInt(10) != 0, result.getLong(6), result.getString(9), result.getFloat(7),
+                        result.getFloat(8)));
+                } else {
+                    store.loadIndexed(most, least, deaths, time, DimensionRegistry.intern(dimension));
+                }
+            }
+        } catch (SQLException e) {
+            DeathQuotaMod.LOGGER.error("Failed to read death records from {}", file, e);
+        }
+        // Every row read is already stored
+        store.takeDirtyShards();
+        return NbtQuotaStore.fileSize(file);
+    }
+
+    @Override
+    public NbtCompound load(UUID uuid, int shard) {
+        try {
+            selectOne.setLong(1, uuid.getMostSignificantBits());
+            selectOne.setLong(2, uuid.getLeastSignificantBits());
+            try (ResultSet result = selectOne.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+                // Lock state is not stored; the store derives it from the death count
+                return DeathRecordStore.recordNbt(result.getInt(1), false, result.getLong(2), result.getString(3),
+                    result.getInt(8) != 0, result.getLong(4), result.getString(7), result.getFloat(5), result.getFloat(6));
+            }
+        } catch (SQLException e) {
+            DeathQuotaMod.LOGGER.error("Failed to read death record {} from {}", uuid, file, e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean wholeShards() {
+        return false;
+    }
+
+    @Override
+    public long write(ShardSnapshot snapshot) throws IOException {
+        LongArrayList removed = snapshot.removed();
+        if (removed.isEmpty() && snapshot.size() == 0) {
+            return 0L;
+        }
+        try {
+            // Deletes first: a record removed and created again since the last save is in both
+            long bytes = delete(removed) + upsert(snapshot);
+            writer.commit();
+            return bytes;
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("Failed to write shard " + snapshot.shard + " to " + file, e);
+        }
+    }
+
+    private long delete(LongArrayList removed) throws SQLException {
+        if (removed.isEmpty()) {
+            return 0L;
+        }
+        for (int i = 0; i < removed.size(); i += 2) {
+            delete.setLong(1, removed.getLong(i));
+            delete.setLong(2, removed.getLong(i + 1));
+            delete.addBatch();
+        }
+        delete.executeBatch();
+        return removed.size() * 8L;
+    }
+
+    private long upsert(ShardSnapshot snapshot) throws SQLException {
+        long bytes = 0L;
+        boolean anyHot = false;
+        boolean anyFull = false;
+        for (int i = 0; i < snapshot.size(); i++) {
+            PreparedStatement statement = snapshot.hasCold(i) ? upsertFull : upsertHot;
+            statement.setLong(1, snapshot.uuidMost(i));
+            statement.setLong(2, snapshot.uuidLeast(i));
+            statement.setInt(3, snapshot.deaths(i));
+            statement.setLong(4, snapshot.time(i));
+            setString(statement, 5, snapshot.dimension(i));
+            bytes += HOT_ROW_BYTES + length(snapshot.dimension(i));
+            if (snapshot.hasCold(i)) {
+                statement.setLong(6, snapshot.position(i));
+                statement.setFloat(7, snapshot.yaw(i));
+                statement.setFloat(8, snapshot.pitch(i));
+                setString(statement, 9, snapshot.message(i));
+                statement.setInt(10, snapshot.hasPosition(i) ? 1 : 0);
+                bytes += COLD_ROW_BYTES + length(snapshot.message(i));
+                anyFull = true;
+            } else {
+                anyHot = true;
+            }
+            statement.addBatch();
+        }
+        if (anyFull) {
+            upsertFull.executeBatch();
+        }
+        if (anyHot) {
+            upsertHot.executeBatch();
+        }
+        return bytes;
+    }
+
+    /**
+     * Closes the database and moves it, with its WAL files, into a
+     * {@code retired-sqlite} subdirectory.
+     */
+    @Override
+    public void retire() {
+        close();
+        Path retired = file.resolveSibling("retired-" + NAME);
+        try {
+            Files.createDirectories(retired);
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                Path part = file.resolveSibling(file.getFileName() + suffix);
+                if (Files.exists(part)) {
+                    Files.move(part, retired.resolve(part.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.error("Failed to move retired death quota database into {}", retired, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(selectOne);
+        closeQuietly(upsertFull);
+        closeQuietly(upsertHot);
+        closeQuietly(delete);
+        closeQuietly(reader);
+        closeQuietly(writer);
+    }
+
+    private void rollback() {
+        try {
+            upsertFull.clearBatch();
+            upsertHot.clearBatch();
+            delete.clearBatch();
+            writer.rollback();
+        } catch (SQLException e) {
+            DeathQuotaMod.LOGGER.warn("Failed to roll back death quota database {}", file, e);
+        }
+    }
+
+    private static void setString(PreparedStatement statement, int index, String value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            DeathQuotaMod.LOGGER.warn("Failed to close death quota database resource", e);
+        }
+    }
+}
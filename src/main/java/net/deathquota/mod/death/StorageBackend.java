@@ -0,0 +1,48 @@
+package net.deathquota.mod.death;
+
+import com.mojang.serialization.Codec;
+
+import java.util.Locale;
+
+/**
+ * Where death records are saved: NBT shard files, an SQLite database that
+ * writes and reads single records, or each player's own data file. Read once
+ * at startup; records move to a newly chosen backend on the next start.
+ */
+public enum StorageBackend {
+    NBT(NbtQuotaStore.NAME),
+    SQLITE(SqliteQuotaStore.NAME),
+    PLAYER(PlayerRecordAttachments.NAME);
+
+    public static final Codec<StorageBackend> CODEC = Codec.STRING.xmap(StorageBackend::byId, StorageBackend::id);
+
+    private final String id;
+
+    StorageBackend(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * False when this backend needs a library the server does not have: the
+     * SQLite JDBC driver is not bundled, and servers that want it supply it.
+     */
+    public boolean isAvailable() {
+        return this != SQLITE || SqliteQuotaStore.driverAvailable();
+    }
+
+    /**
+     * The backend named {@code id}, or NBT for anything unknown.
+     */
+    public static StorageBackend byId(String id) {
+        for (StorageBackend backend : values()) {
+            if (backend.id.equals(id.toLowerCase(Locale.ROOT))) {
+                return backend;
+            }
+        }
+        return NBT;
+    }
+}
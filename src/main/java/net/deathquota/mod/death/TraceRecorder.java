@@ -0,0 +1,163 @@
+package net.deathquota.mod.death;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.deathquota.mod.DeathQuotaMod;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Writes a {@link QuotaTrace} while it is running. Server thread only; the
+ * stream is buffered, so a typical event costs a few bytes of array copy and
+ * the disk is only touched every 64 KiB. A write failure ends the recording,
+ * not the server: later events are dropped until it is closed.
+ */
+final class TraceRecorder {
+    private final Path file;
+    private final DataOutputStream out;
+    private final Object2IntOpenHashMap<UUID> players = new Object2IntOpenHashMap<>();
+    private final Int2IntOpenHashMap dimensions = new Int2IntOpenHashMap();
+    private long lastTick;
+    private long events;
+    private boolean failed;
+
+    private TraceRecorder(Path file, DataOutputStream out, long startTick) {
+        this.file = file;
+        this.out = out;
+        this.lastTick = startTick;
+    }
+
+    /**
+     * Starts a trace at {@code file}, replacing anything already there.
+     */
+    static TraceRecorder open(Path file, long startTick) throws IOException {
+        Files.createDirectories(file.getParent());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(QuotaTrace.MAGIC);
+        out.writeShort(QuotaTrace.VERSION);
+        return new TraceRecorder(file, out, startTick);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    long events() {
+        return events;
+    }
+
+    void event(long tick, QuotaTrace.Event event, UUID player) {
+        if (failed) {
+            return;
+        }
+        try {
+            header(tick, event);
+            writePlayer(player);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void death(long tick, UUID player, int dimensionId, long packedPos, float yaw, float pitch) {
+        if (failed) {
+            return;
+        }
+        try {
+            header(tick, QuotaTrace.Event.DEATH);
+            writePlayer(player);
+            writeDimension(dimensionId);
+            out.writeLong(packedPos);
+            out.writeFloat(yaw);
+            out.writeFloat(pitch);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * {@code filter} is only read for {@link QuotaTrace.Command#LIST}, and
+     * replaces {@code argument} when it is a dimension filter.
+     */
+    void command(long tick, QuotaTrace.Command command, UUID target, int argument, int page,
+                 RecordListing.Filter filter) {
+        if (failed) {
+            return;
+        }
+        try {
+            header(tick, QuotaTrace.Event.COMMAND);
+            out.writeByte(command.ordinal());
+            writePlayer(target);
+            QuotaTrace.writeZigZag(out, argument);
+            QuotaTrace.writeVarLong(out, Math.max(0, page));
+            if (command == QuotaTrace.Command.LIST) {
+                out.writeByte(filter.kind().ordinal());
+                if (filter.kind() == RecordListing.Kind.DIMENSION) {
+                    writeDimension(filter.value());
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            DeathQuotaMod.LOGGER.warn("Failed to finish death quota trace {}", file, e);
+        }
+    }
+
+    private void header(long tick, QuotaTrace.Event event) throws IOException {
+        out.writeByte(event.ordinal());
+        QuotaTrace.writeVarLong(out, Math.max(0L, tick - lastTick));
+        lastTick = Math.max(lastTick, tick);
+        events++;
+    }
+
+    private void writePlayer(UUID player) throws IOException {
+        if (player == null) {
+            QuotaTrace.writeVarLong(out, 0);
+            return;
+        }
+        int ref = players.getInt(player);
+        if (ref != 0) {
+            QuotaTrace.writeVarLong(out, ref);
+            return;
+        }
+        ref = players.size() + 1;
+        players.put(player, ref);
+        QuotaTrace.writeVarLong(out, ref);
+        out.writeLong(player.getMostSignificantBits());
+        out.writeLong(player.getLeastSignificantBits());
+    }
+
+    private void writeDimension(int dimensionId) throws IOException {
+        String name = DimensionRegistry.name(dimensionId);
+        if (name == null) {
+            QuotaTrace.writeVarLong(out, 0);
+            return;
+        }
+        int ref = dimensions.get(dimensionId);
+        if (ref != 0) {
+            QuotaTrace.writeVarLong(out, ref);
+            return;
+        }
+        ref = dimensions.size() + 1;
+        dimensions.put(dimensionId, ref);
+        QuotaTrace.writeVarLong(out, ref);
+        out.writeUTF(name);
+    }
+
+    private void fail(IOException e) {
+        if (!failed) {
+            failed = true;
+            DeathQuotaMod.LOGGER.warn("Stopped death quota trace {} after {} events", file, events, e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package net.deathquota.mod.mixin;
+
+import net.minecraft.network.packet.c2s.play.ClientStatusC2SPacket;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.deathquota.mod.death.DeathQuotaManager;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Records PERFORM_RESPAWN requests in the running trace. Only observes the
+ * packet; the game handles the respawn as usual.
+ */
+@Mixin(ServerPlayNetworkHandler.class)
+public abstract class RespawnRequestTraceMixin {
+    @Shadow public ServerPlayerEntity player;
+
+    @Inject(method = "onClientStatus", at = @At("HEAD"))
+    private void deathQuota$traceRespawnRequest(ClientStatusC2SPacket packet, CallbackInfo ci) {
+        if (packet.getMode() == ClientStatusC2SPacket.Mode.PERFORM_RESPAWN) {
+            DeathQuotaManager.traceRespawnRequest(this.player);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package net.deathquota.mod.mixin;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.world.GameMode;
+import net.deathquota.mod.death.DeathQuotaManager;
+import net.deathquota.mod.death.DeathQuotaPlayer;
+import net.deathquota.mod.death.DeathRecord;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ServerPlayerEntity.class)
+public abstract class ServerPlayerEntityMixin implements DeathQuotaPlayer {
+    @Unique private boolean deathQuota$recordBound;
+    @Unique private DeathRecord deathQuota$record;
+
+    @Inject(method = "changeGameMode", at = @At("HEAD"), cancellable = true)
+    private void deathQuota$keepLockedInSpectator(GameMode gameMode, CallbackInfoReturnable<Boolean> cir) {
+        if (gameMode != GameMode.SPECTATOR
+                && DeathQuotaManager.isSpectatorLocked((ServerPlayerEntity) (Object) this)) {
+            cir.setReturnValue(false);
+        }
+    }
+
+    @Override
+    public boolean deathQuota$isRecordBound() {
+        return this.deathQuota$recordBound;
+    }
+
+    @Override
+    public DeathRecord deathQuota$getBoundRecord() {
+        return this.deathQuota$record;
+    }
+
+    @Override
+    public void deathQuota$bindRecord(DeathRecord record) {
+        this.deathQuota$record = record;
+        this.deathQuota$recordBound = true;
+    }
+
+    @Override
+    public void deathQuota$unbindRecord() {
+        this.deathQuota$record = null;
+        this.deathQuota$recordBound = false;
+    }
+}
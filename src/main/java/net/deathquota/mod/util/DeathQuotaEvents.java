@@ -0,0 +1,159 @@
+package net.deathquota.mod.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events for the mod's server-thread work and its IO.
+ *
+ * Each event carries a default threshold, so a recording only keeps the
+ * slow occurrences; it can be changed per recording like any JFR setting,
+ * e.g. {@code -XX:StartFlightRecording:+deathquota.DeathHandled#threshold=0ms}.
+ * Call sites follow the usual {@code begin()}, {@code end()},
+ * {@code shouldCommit()} pattern and only fill in fields once an event will
+ * be committed, so with no recording running, or the event disabled, the
+ * cost is a small allocation and a couple of intrinsic checks.
+ */
+public final class DeathQuotaEvents {
+    private static final String CATEGORY = "Death Quota";
+
+    private DeathQuotaEvents() {
+    }
+
+    @Name("deathquota.DeathHandled")
+    @Label("Death Handled")
+    @Category(CATEGORY)
+    @Description("Recording a player death: count, last-death location and the feedback message")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class DeathHandled extends Event {
+        @Label("Player")
+        public String player;
+
+        @Label("Deaths")
+        public int deaths;
+
+        @Label("Locked")
+        public boolean locked;
+    }
+
+    @Name("deathquota.RespawnStateApplied")
+    @Label("Respawn State Applied")
+    @Category(CATEGORY)
+    @Description("Applying a player's quota state after a respawn, join or max-lives change")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class RespawnStateApplied extends Event {
+        @Label("Player")
+        public String player;
+
+        @Label("Locked")
+        public boolean locked;
+    }
+
+    @Name("deathquota.SpectatorEnforced")
+    @Label("Spectator Enforced")
+    @Category(CATEGORY)
+    @Description("Forcing a locked player into spectator, or re-enforcing it after they escaped")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class SpectatorEnforced extends Event {
+        @Label("Player")
+        public String player;
+
+        @Label("Reason")
+        @Description("respawn, delayed (escaped right after respawn) or audit (escaped later)")
+        public String reason;
+    }
+
+    @Name("deathquota.Teleport")
+    @Label("Teleport")
+    @Category(CATEGORY)
+    @Description("A teleport through TeleportCompat")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class Teleport extends Event {
+        @Label("Player")
+        public String player;
+
+        @Label("Dimension")
+        public String dimension;
+
+        @Label("Path")
+        @Description("handle (resolved teleport overload), refresh (no overload found) or fallback (the overload threw)")
+        public String path;
+    }
+
+    @Name("deathquota.StateResolved")
+    @Label("Persistent State Resolved")
+    @Category(CATEGORY)
+    @Description("Resolving a PersistentState through PersistentStateCompat")
+    @Threshold("0 ms")
+    public static final class StateResolved extends Event {
+        @Label("Storage Key")
+        public String storageKey;
+
+        @Label("Path")
+        @Description("new-type, legacy-type, factory, manager-cache, file or created")
+        public String path;
+    }
+
+    @Name("deathquota.RecordsLoaded")
+    @Label("Records Loaded")
+    @Category(CATEGORY)
+    @Description("Loading the record shards on server start")
+    @Threshold("0 ms")
+    @StackTrace(false)
+    public static final class RecordsLoaded extends Event {
+        @Label("Shards")
+        public int shards;
+
+        @Label("Records")
+        public int records;
+
+        @Label("Bytes Read")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("deathquota.RecordsSaved")
+    @Label("Records Saved")
+    @Category(CATEGORY)
+    @Description("Server-thread part of a save: journal flush and shard snapshots, plus the write itself when flushing")
+    @Threshold("0 ms")
+    @StackTrace(false)
+    public static final class RecordsSaved extends Event {
+        @Label("Shards Snapshotted")
+        public int shards;
+
+        @Label("Flush")
+        public boolean flush;
+    }
+
+    @Name("deathquota.ShardsWritten")
+    @Label("Shards Written")
+    @Category(CATEGORY)
+    @Description("Encoding and writing shard snapshots on the save thread")
+    @Threshold("0 ms")
+    @StackTrace(false)
+    public static final class ShardsWritten extends Event {
+        @Label("Shards")
+        public int shards;
+
+        @Label("Failed Shards")
+        public int failedShards;
+
+        @Label("Records")
+        public int records;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+    }
+}
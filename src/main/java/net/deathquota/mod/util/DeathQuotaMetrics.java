@@ -0,0 +1,241 @@
+package net.deathquota.mod.util;
+
+import net.deathquota.mod.DeathQuotaMod;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Process-wide counters and latency histograms for the mod, readable through
+ * {@code /deathquota stats} and the {@value #OBJECT_NAME} MBean.
+ *
+ * Everything is a {@link LongAdder} or {@link LongAccumulator}, which stripe
+ * their cells per contending thread, so recording from the server thread and
+ * the save thread never contends and costs a few nanoseconds. Reads sum the
+ * cells and may be a moment stale, which is fine for scraping. The record
+ * gauges read the active store's counts without locking; those are single
+ * int fields, so a reader sees a recent value, never a torn one.
+ */
+public final class DeathQuotaMetrics implements DeathQuotaMetricsMXBean {
+    public static final String OBJECT_NAME = "net.deathquota:type=Metrics";
+
+    public static final LongAdder DEATHS_PROCESSED = new LongAdder();
+    public static final LongAdder LOCKS_APPLIED = new LongAdder();
+    public static final LongAdder LOCK_ESCAPES = new LongAdder();
+    public static final LongAdder REFLECTIVE_FALLBACKS = new LongAdder();
+    public static final LatencyHistogram DEATH_LATENCY = new LatencyHistogram();
+    public static final LatencyHistogram RESPAWN_LATENCY = new LatencyHistogram();
+    // Server-thread part of a save: journal flush and shard snapshots
+    public static final LatencyHistogram SAVE_TICK_LATENCY = new LatencyHistogram();
+    // Save-thread part: encoding and writing the shards
+    public static final LatencyHistogram SAVE_WRITE_LATENCY = new LatencyHistogram();
+    public static final LongAdder BYTES_SAVED = new LongAdder();
+    // Journal appends or syncs that failed; each one forces a save of every shard
+    public static final LongAdder JOURNAL_FAILURES = new LongAdder();
+
+    private static final IntSupplier NONE = () -> 0;
+    private static volatile IntSupplier records = NONE;
+    private static volatile IntSupplier residentRecords = NONE;
+
+    private DeathQuotaMetrics() {
+    }
+
+    /**
+     * Points the record gauges at the running server's store; pass nulls when it stops.
+     */
+    public static void bindRecordCounts(IntSupplier stored, IntSupplier resident) {
+        records = stored != null ? stored : NONE;
+        residentRecords = resident != null ? resident : NONE;
+    }
+
+    public static int records() {
+        return records.getAsInt();
+    }
+
+    public static int residentRecords() {
+        return residentRecords.getAsInt();
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server. Failure only costs
+     * JMX visibility, so it is logged and otherwise ignored.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new DeathQuotaMetrics(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            DeathQuotaMod.LOGGER.debug("Death quota metrics MBean already registered");
+        } catch (JMException | SecurityException e) {
+            DeathQuotaMod.LOGGER.warn("Could not register the death quota metrics MBean", e);
+        }
+    }
+
+    @Override
+    public long getDeathsProcessed() {
+        return DEATHS_PROCESSED.sum();
+    }
+
+    @Override
+    public long getLocksApplied() {
+        return LOCKS_APPLIED.sum();
+    }
+
+    @Override
+    public long getLockEscapes() {
+        return LOCK_ESCAPES.sum();
+    }
+
+    @Override
+    public long getReflectiveFallbacks() {
+        return REFLECTIVE_FALLBACKS.sum();
+    }
+
+    @Override
+    public int getRecords() {
+        return records();
+    }
+
+    @Override
+    public int getResidentRecords() {
+        return residentRecords();
+    }
+
+    @Override
+    public long getBytesSaved() {
+        return BYTES_SAVED.sum();
+    }
+
+    @Override
+    public long getJournalFailures() {
+        return JOURNAL_FAILURES.sum();
+    }
+
+    @Override
+    public long getSaves() {
+        return SAVE_WRITE_LATENCY.count();
+    }
+
+    @Override
+    public double getSaveWriteMeanMillis() {
+        return SAVE_WRITE_LATENCY.meanMillis();
+    }
+
+    @Override
+    public double getSaveWriteP99Millis() {
+        return SAVE_WRITE_LATENCY.percentileMillis(0.99);
+    }
+
+    @Override
+    public double getSaveWriteMaxMillis() {
+        return SAVE_WRITE_LATENCY.maxMillis();
+    }
+
+    @Override
+    public double getSaveTickMeanMillis() {
+        return SAVE_TICK_LATENCY.meanMillis();
+    }
+
+    @Override
+    public double getSaveTickP99Millis() {
+        return SAVE_TICK_LATENCY.percentileMillis(0.99);
+    }
+
+    @Override
+    public double getDeathMeanMillis() {
+        return DEATH_LATENCY.meanMillis();
+    }
+
+    @Override
+    public double getDeathP99Millis() {
+        return DEATH_LATENCY.percentileMillis(0.99);
+    }
+
+    @Override
+    public double getRespawnMeanMillis() {
+        return RESPAWN_LATENCY.meanMillis();
+    }
+
+    @Override
+    public double getRespawnP99Millis() {
+        return RESPAWN_LATENCY.percentileMillis(0.99);
+    }
+
+    /**
+     * Log2-bucketed latency histogram: bucket {@code i} counts durations in
+     * [2^(i-1), 2^i) nanoseconds, so percentiles are exact to within a factor
+     * of two, which is enough to tell a regression from noise. The exact
+     * total and maximum are kept alongside.
+     */
+    public static final class LatencyHistogram {
+        private static final int BUCKETS = 64;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        public LatencyHistogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(0L, nanos);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+            count.increment();
+            totalNanos.add(value);
+            maxNanos.accumulate(value);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public double meanMillis() {
+            long samples = count.sum();
+            return samples == 0L ? 0.0 : toMillis(totalNanos.sum()) / samples;
+        }
+
+        public double maxMillis() {
+            return toMillis(maxNanos.get());
+        }
+
+        /**
+         * Upper bound of the bucket holding the {@code quantile} sample, capped at the maximum seen.
+         */
+        public double percentileMillis(double quantile) {
+            long[] counts = new long[BUCKETS];
+            long samples = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                samples += counts[i];
+            }
+            if (samples == 0L) {
+                return 0.0;
+            }
+            long target = (long) Math.ceil(quantile * samples);
+            long seen = 0L;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    long upper = i == 0 ? 0L : i >= 63 ? Long.MAX_VALUE : 1L << i;
+                    return toMillis(Math.min(upper, maxNanos.get()));
+                }
+            }
+            return maxMillis();
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
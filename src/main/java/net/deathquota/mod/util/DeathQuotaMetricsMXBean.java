@@ -0,0 +1,43 @@
+package net.deathquota.mod.util;
+
+/**
+ * JMX view of {@link DeathQuotaMetrics}. Counters are totals since the
+ * process started; latencies are in milliseconds over the same span.
+ */
+public interface DeathQuotaMetricsMXBean {
+    long getDeathsProcessed();
+
+    long getLocksApplied();
+
+    long getLockEscapes();
+
+    long getReflectiveFallbacks();
+
+    int getRecords();
+
+    int getResidentRecords();
+
+    long getBytesSaved();
+
+    long getJournalFailures();
+
+    long getSaves();
+
+    double getSaveWriteMeanMillis();
+
+    double getSaveWriteP99Millis();
+
+    double getSaveWriteMaxMillis();
+
+    double getSaveTickMeanMillis();
+
+    double getSaveTickP99Millis();
+
+    double getDeathMeanMillis();
+
+    double getDeathP99Millis();
+
+    double getRespawnMeanMillis();
+
+    double getRespawnP99Millis();
+}
@@ -1,25 +1,50 @@
 package net.deathquota.mod.util;
 
 import net.deathquota.mod.DeathQuotaMod;
+import net.minecraft.nbt.NbtByte;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtInt;
+import net.minecraft.nbt.NbtLong;
 import net.minecraft.util.math.BlockPos;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.Optional;
 
 /**
  * Compatibility layer for NbtCompound API differences between 1.21.x versions.
- * 
- * Handles three different API patterns:
- * - 1.21.0-1.21.1: Direct primitive returns (getInt(String) returns int)
- * - 1.21.2-1.21.9: Optional wrapped returns (getInt(String) returns Optional<Integer>)
- * - 1.21.10+: Removed direct accessors, must use get(String) and extract value
- * 
- * This class provides unified access methods that work on all versions via reflection.
+ *
+ * Handles the accessor shapes that have shipped across 1.21.x:
+ * - 1.21.0-1.21.4: Direct primitive returns (getInt(String) returns int)
+ * - 1.21.5+: Optional wrapped returns (getInt(String) returns Optional&lt;Integer&gt;)
+ *   alongside defaulted primitive overloads (getInt(String, int) returns int)
+ * - Otherwise: read the element through get(String) and extract its value
+ *
+ * The flavor is detected once at class init and every typed accessor is
+ * precompiled into a static final MethodHandle with the uniform shape
+ * {@code (NbtCompound, String, T fallback) -> T}. Calls are exact invocations
+ * that return primitives, so reading a record no longer performs getMethod
+ * lookups or reflective boxing per field.
  */
 public final class NbtCompat {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Flavor FLAVOR = detectFlavor();
+    private static final MethodHandle GET_INT = bind("getInt", int.class);
+    private static final MethodHandle GET_BOOLEAN = bind("getBoolean", boolean.class);
+    private static final MethodHandle GET_LONG = bind("getLong", long.class);
+    private static final MethodHandle GET_FLOAT = bind("getFloat", float.class);
+    private static final MethodHandle GET_STRING = bind("getString", String.class);
+
+    static {
+        DeathQuotaMod.LOGGER.info("NbtCompat initialized with {} accessors", FLAVOR);
+    }
+
     private NbtCompat() {}
-    
+
     /**
      * Gets an int value from the NBT compound, returning default if not present.
      */
@@ -28,37 +53,13 @@ public final class NbtCompat {
             return defaultValue;
         }
         try {
-            // Try get(String) method first (1.21.10+)
-            Object value = nbt.get(key);
-            if (value != null) {
-                Method intValueMethod = value.getClass().getMethod("intValue");
-                return (int) intValueMethod.invoke(value);
-            }
-        } catch (Exception ignored) {
-        }
-        
-        try {
-            // Try getInt(String) via reflection
-            Method getIntMethod = NbtCompound.class.getMethod("getInt", String.class);
-            Object result = getIntMethod.invoke(nbt, key);
-            
-            // Check if it's Optional (1.21.2-1.21.9)
-            if (result instanceof Optional<?> opt) {
-                if (opt.isPresent()) {
-                    return (int) opt.get();
-                }
-                return defaultValue;
-            }
-            // Direct primitive (1.21.0-1.21.1)
-            if (result instanceof Integer i) {
-                return i;
-            }
-        } catch (Exception e) {
-            DeathQuotaMod.LOGGER.debug("Failed to get int from NBT: {}", e.getMessage());
+            return (int) GET_INT.invokeExact(nbt, key, defaultValue);
+        } catch (Throwable t) {
+            DeathQuotaMod.LOGGER.debug("Failed to get int from NBT: {}", t.getMessage());
+            return defaultValue;
         }
-        return defaultValue;
     }
-    
+
     /**
      * Gets a boolean value from the NBT compound, returning default if not present.
      */
@@ -67,36 +68,13 @@ public final class NbtCompat {
             return defaultValue;
         }
         try {
-            // Try get(String) method first (1.21.10+)
-            Object value = nbt.get(key);
-            if (value != null) {
-                Method byteValueMethod = value.getClass().getMethod("byteValue");
-                byte b = (byte) byteValueMethod.invoke(value);
-                return b != 0;
-            }
-        } catch (Exception ignored) {
-        }
-        
-        try {
-            // Try getBoolean(String) via reflection
-            Method getBoolMethod = NbtCompound.class.getMethod("getBoolean", String.class);
-            Object result = getBoolMethod.invoke(nbt, key);
-            
-            if (result instanceof Optional<?> opt) {
-                if (opt.isPresent()) {
-                    return (boolean) opt.get();
-                }
-                return defaultValue;
-            }
-            if (result instanceof Boolean b) {
-                return b;
-            }
-        } catch (Exception e) {
-            DeathQuotaMod.LOGGER.debug("Failed to get boolean from NBT: {}", e.getMessage());
+            return (boolean) GET_BOOLEAN.invokeExact(nbt, key, defaultValue);
+        } catch (Throwable t) {
+            DeathQuotaMod.LOGGER.debug("Failed to get boolean from NBT: {}", t.getMessage());
+            return defaultValue;
         }
-        return defaultValue;
     }
-    
+
     /**
      * Gets a long value from the NBT compound, returning default if not present.
      */
@@ -105,35 +83,13 @@ public final class NbtCompat {
             return defaultValue;
         }
         try {
-            // Try get(String) method first (1.21.10+)
-            Object value = nbt.get(key);
-            if (value != null) {
-                Method longValueMethod = value.getClass().getMethod("longValue");
-                return (long) longValueMethod.invoke(value);
-            }
-        } catch (Exception ignored) {
-        }
-        
-        try {
-            // Try getLong(String) via reflection
-            Method getLongMethod = NbtCompound.class.getMethod("getLong", String.class);
-            Object result = getLongMethod.invoke(nbt, key);
-            
-            if (result instanceof Optional<?> opt) {
-                if (opt.isPresent()) {
-                    return (long) opt.get();
-                }
-                return defaultValue;
-            }
-            if (result instanceof Long l) {
-                return l;
-            }
-        } catch (Exception e) {
-            DeathQuotaMod.LOGGER.debug("Failed to get long from NBT: {}", e.getMessage());
+            return (long) GET_LONG.invokeExact(nbt, key, defaultValue);
+        } catch (Throwable t) {
+            DeathQuotaMod.LOGGER.debug("Failed to get long from NBT: {}", t.getMessage());
+            return defaultValue;
         }
-        return defaultValue;
     }
-    
+
     /**
      * Gets a float value from the NBT compound, returning default if not present.
      */
@@ -142,35 +98,13 @@ public final class NbtCompat {
             return defaultValue;
         }
         try {
-            // Try get(String) method first (1.21.10+)
-            Object value = nbt.get(key);
-            if (value != null) {
-                Method floatValueMethod = value.getClass().getMethod("floatValue");
-                return (float) floatValueMethod.invoke(value);
-            }
-        } catch (Exception ignored) {
-        }
-        
-        try {
-            // Try getFloat(String) via reflection
-            Method getFloatMethod = NbtCompound.class.getMethod("getFloat", String.class);
-            Object result = getFloatMethod.invoke(nbt, key);
-            
-            if (result instanceof Optional<?> opt) {
-                if (opt.isPresent()) {
-                    return (float) opt.get();
-                }
-                return defaultValue;
-            }
-            if (result instanceof Float f) {
-                return f;
-            }
-        } catch (Exception e) {
-            DeathQuotaMod.LOGGER.debug("Failed to get float from NBT: {}", e.getMessage());
+            return (float) GET_FLOAT.invokeExact(nbt, key, defaultValue);
+        } catch (Throwable t) {
+            DeathQuotaMod.LOGGER.debug("Failed to get float from NBT: {}", t.getMessage());
+            return defaultValue;
         }
-        return defaultValue;
     }
-    
+
     /**
      * Gets a String value from the NBT compound, returning default if not present.
      */
@@ -179,36 +113,14 @@ public final class NbtCompat {
             return defaultValue;
         }
         try {
-            // Try get(String) method first (1.21.10+)
-            Object value = nbt.get(key);
-            if (value != null) {
-                Method asStringMethod = value.getClass().getMethod("asString");
-                return (String) asStringMethod.invoke(value);
-            }
-        } catch (Exception ignored) {
-        }
-        
-        try {
-            // Try getString(String) via reflection
-            Method getStringMethod = NbtCompound.class.getMethod("getString", String.class);
-            Object result = getStringMethod.invoke(nbt, key);
-            
-            if (result instanceof Optional<?> opt) {
-                if (opt.isPresent()) {
-                    String s = (String) opt.get();
-                    return s.isEmpty() && defaultValue != null ? defaultValue : s;
-                }
-                return defaultValue;
-            }
-            if (result instanceof String s) {
-                return s.isEmpty() && defaultValue != null ? defaultValue : s;
-            }
-        } catch (Exception e) {
-            DeathQuotaMod.LOGGER.debug("Failed to get string from NBT: {}", e.getMessage());
+            String value = (String) GET_STRING.invokeExact(nbt, key, defaultValue);
+            return value == null || (value.isEmpty() && defaultValue != null) ? defaultValue : value;
+        } catch (Throwable t) {
+            DeathQuotaMod.LOGGER.debug("Failed to get string from NBT: {}", t.getMessage());
+            return defaultValue;
         }
-        return defaultValue;
     }
-    
+
     /**
      * Gets an Optional<BlockPos> for pos values.
      */
@@ -219,7 +131,7 @@ public final class NbtCompat {
         long posLong = getLong(nbt, key, 0L);
         return posLong != 0L ? Optional.of(BlockPos.fromLong(posLong)) : Optional.empty();
     }
-    
+
     /**
      * Gets an Optional<String> for string values that might not exist.
      */
@@ -230,4 +142,209 @@ public final class NbtCompat {
         String value = getString(nbt, key, null);
         return value != null && !value.isEmpty() ? Optional.of(value) : Optional.empty();
     }
+
+    private static Flavor detectFlavor() {
+        if (findAccessor("getInt", int.class, String.class, int.class) != null) {
+            return Flavor.DEFAULTED;
+        }
+        try {
+            Class<?> returnType = NbtCompound.class.getMethod("getInt", String.class).getReturnType();
+            if (returnType == int.class) {
+                return Flavor.PRIMITIVE;
+            }
+            if (returnType == Optional.class) {
+                return Flavor.OPTIONAL;
+            }
+        } catch (NoSuchMethodException ignored) {
+        }
+        return Flavor.ELEMENT;
+    }
+
+    /**
+     * Builds the {@code (NbtCompound, String, T) -> T} accessor for one value type
+     * under the detected flavor, falling back to element extraction when the
+     * expected overload is missing for that particular type.
+     */
+    private static MethodHandle bind(String name, Class<?> type) {
+        MethodType uniform = MethodType.methodType(type, NbtCompound.class, String.class, type);
+        MethodHandle handle = switch (FLAVOR) {
+            case DEFAULTED -> findAccessor(name, type, String.class, type);
+            case PRIMITIVE -> {
+                MethodHandle direct = findAccessor(name, type, String.class);
+                yield direct == null ? null : MethodHandles.dropArguments(direct, 2, type);
+            }
+            case OPTIONAL -> {
+                MethodHandle wrapped = findAccessor(name, Optional.class, String.class);
+                yield wrapped == null ? null
+                    : MethodHandles.collectArguments(unwrapOptional(type), 0, wrapped);
+            }
+            case ELEMENT -> null;
+        };
+        if (handle == null) {
+            handle = ElementAccess.accessor(type);
+        }
+        return handle.asType(uniform);
+    }
+
+    private static MethodHandle findAccessor(String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return LOOKUP.findVirtual(NbtCompound.class, name, MethodType.methodType(returnType, parameterTypes));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle unwrapOptional(Class<?> type) {
+        try {
+            return LOOKUP.findStatic(NbtCompat.class, "unwrap",
+                    MethodType.methodType(Object.class, Optional.class, Object.class))
+                .asType(MethodType.methodType(type, Optional.class, type));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("NbtCompat optional unwrapper missing", e);
+        }
+    }
+
+    private static Object unwrap(Optional<?> value, Object fallback) {
+        return value.isPresent() ? value.get() : fallback;
+    }
+
+    private enum Flavor {
+        DEFAULTED,
+        PRIMITIVE,
+        OPTIONAL,
+        ELEMENT
+    }
+
+    /**
+     * Last-resort accessors that read the raw element via get(String). Kept in a
+     * holder so the number-type probing only happens if some accessor needs it.
+     */
+    private static final class ElementAccess {
+        private static final Class<?> NUMBER_TYPE = findNumberType();
+        private static final MethodHandle INT_VALUE = numberValue("intValue", int.class);
+        private static final MethodHandle LONG_VALUE = numberValue("longValue", long.class);
+        private static final MethodHandle FLOAT_VALUE = numberValue("floatValue", float.class);
+        private static final MethodHandle BYTE_VALUE = numberValue("byteValue", byte.class);
+        private static final MethodHandle AS_STRING = asString();
+
+        private ElementAccess() {
+        }
+
+        static MethodHandle accessor(Class<?> type) {
+            String name;
+            if (type == int.class) {
+                name = "readInt";
+            } else if (type == boolean.class) {
+                name = "readBoolean";
+            } else if (type == long.class) {
+                name = "readLong";
+            } else if (type == float.class) {
+                name = "readFloat";
+            } else {
+                name = "readString";
+            }
+            try {
+                return LOOKUP.findStatic(ElementAccess.class, name,
+                    MethodType.methodType(type, NbtCompound.class, String.class, type));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalStateException("NbtCompat element accessor missing for " + type, e);
+            }
+        }
+
+        private static int readInt(NbtCompound nbt, String key, int fallback) throws Throwable {
+            NbtElement value = nbt.get(key);
+            return INT_VALUE != null && NUMBER_TYPE.isInstance(value) ? (int) INT_VALUE.invokeExact(value) : fallback;
+        }
+
+        private static boolean readBoolean(NbtCompound nbt, String key, boolean fallback) throws Throwable {
+            NbtElement value = nbt.get(key);
+            return BYTE_VALUE != null && NUMBER_TYPE.isInstance(value) ? (byte) BYTE_VALUE.invokeExact(value) != 0 : fallback;
+        }
+
+        private static long readLong(NbtCompound nbt, String key, long fallback) throws Throwable {
+            NbtElement value = nbt.get(key);
+            return LONG_VALUE != null && NUMBER_TYPE.isInstance(value) ? (long) LONG_VALUE.invokeExact(value) : fallback;
+        }
+
+        private static float readFloat(NbtCompound nbt, String key, float fallback) throws Throwable {
+            NbtElement value = nbt.get(key);
+            return FLOAT_VALUE != null && NUMBER_TYPE.isInstance(value) ? (float) FLOAT_VALUE.invokeExact(value) : fallback;
+        }
+
+        private static String readString(NbtCompound nbt, String key, String fallback) throws Throwable {
+            NbtElement value = nbt.get(key);
+            if (value == null || AS_STRING == null) {
+                return fallback;
+            }
+            Object result = (Object) AS_STRING.invokeExact(value);
+            if (result instanceof Optional<?> opt) {
+                result = opt.orElse(null);
+            }
+            return result instanceof String s ? s : fallback;
+        }
+
+        /**
+         * Finds the common numeric NBT supertype (class or interface, depending on
+         * the version) by walking NbtInt's hierarchy for a type shared with NbtLong
+         * and NbtByte that exposes intValue().
+         */
+        private static Class<?> findNumberType() {
+            for (Class<?> type = NbtInt.class; type != null && type != Object.class; type = type.getSuperclass()) {
+                Class<?> match = matchNumberType(type);
+                if (match != null) {
+                    return match;
+                }
+            }
+            DeathQuotaMod.LOGGER.warn("NbtCompat: no numeric NBT supertype found");
+            return NbtInt.class;
+        }
+
+        private static Class<?> matchNumberType(Class<?> type) {
+            if (type != NbtInt.class && isNumberType(type)) {
+                return type;
+            }
+            for (Class<?> candidate : type.getInterfaces()) {
+                if (isNumberType(candidate)) {
+                    return candidate;
+                }
+                Class<?> inherited = matchNumberType(candidate);
+                if (inherited != null) {
+                    return inherited;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isNumberType(Class<?> candidate) {
+            if (!candidate.isAssignableFrom(NbtLong.class) || !candidate.isAssignableFrom(NbtByte.class)) {
+                return false;
+            }
+            try {
+                candidate.getMethod("intValue");
+                return true;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        private static MethodHandle numberValue(String name, Class<?> type) {
+            try {
+                return LOOKUP.findVirtual(NUMBER_TYPE, name, MethodType.methodType(type))
+                    .asType(MethodType.methodType(type, NbtElement.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                DeathQuotaMod.LOGGER.debug("NbtCompat: {}() not available on {}", name, NUMBER_TYPE.getName());
+                return null;
+            }
+        }
+
+        private static MethodHandle asString() {
+            try {
+                Method method = NbtElement.class.getMethod("asString");
+                return LOOKUP.unreflect(method).asType(MethodType.methodType(Object.class, NbtElement.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                DeathQuotaMod.LOGGER.debug("NbtCompat: asString() not available on NbtElement");
+                return null;
+            }
+        }
+    }
 }
@@ -84,12 +84,14 @@ public final class PersistentStateCompat {
         DeathQuotaMod.LOGGER.debug("PersistentStateCompat.get called: stateType={}, storageKey={}", 
             stateType != null ? stateType.getClass().getName() : "null", storageKey);
         
+        DeathQuotaEvents.StateResolved event = new DeathQuotaEvents.StateResolved();
+        event.begin();
         if (stateType != null) {
             if (NEW_TYPE_CLASS != null && NEW_TYPE_CLASS.isInstance(stateType)) {
                 DeathQuotaMod.LOGGER.debug("Using NEW_TYPE_CLASS path");
                 T result = (T) invoke(manager, GET_OR_CREATE_NEW, stateType);
                 if (result != null) {
-                    return result;
+                    return resolved(event, storageKey, "new-type", result);
                 }
             }
             if (LEGACY_TYPE_CLASS != null && LEGACY_TYPE_CLASS.isInstance(stateType)) {
@@ -98,14 +100,14 @@ public final class PersistentStateCompat {
                 T result = (T) invoke(manager, GET_OR_CREATE_LEGACY, stateType, storageKey);
                 DeathQuotaMod.LOGGER.debug("Legacy method returned: {}", result);
                 if (result != null) {
-                    return result;
+                    return resolved(event, storageKey, "legacy-type", result);
                 }
                 DeathQuotaMod.LOGGER.warn("PersistentStateCompat.get: legacy method returned null for key={}", storageKey);
             }
         }
         T fallback = invokeFactory(manager, reader, constructor, storageKey);
         if (fallback != null) {
-            return fallback;
+            return resolved(event, storageKey, "factory", fallback);
         }
         
         // Final fallback: manually try to load from disk or create new
@@ -117,7 +119,7 @@ public final class PersistentStateCompat {
             Object cached = getMethod.invoke(manager, storageKey);
             if (cached != null) {
                 DeathQuotaMod.LOGGER.info("Found cached state in manager for key={}", storageKey);
-                return (T) cached;
+                return resolved(event, storageKey, "manager-cache", (T) cached);
             }
         } catch (Exception e) {
             DeathQuotaMod.LOGGER.debug("Failed to get cached state: {}", e.getMessage());
@@ -197,7 +199,7 @@ public final class PersistentStateCompat {
                         }
                         
                         DeathQuotaMod.LOGGER.info("Returning loaded state from NBT file");
-                        return loaded;
+                        return resolved(event, storageKey, "file", loaded);
                     } else {
                         DeathQuotaMod.LOGGER.warn("Manual fallback: reader.apply() returned null!");
                     }
@@ -223,12 +225,29 @@ public final class PersistentStateCompat {
                 DeathQuotaMod.LOGGER.error("Failed to register state with manager - state will not persist!");
             }
             
-            return newState;
+            return resolved(event, storageKey, "created", newState);
         }
         
         throw new IllegalStateException("No compatible PersistentState#getOrCreate overload found and manual fallback failed");
     }
     
+    /**
+     * Records which path {@link #get} resolved {@code state} through, counting
+     * anything past the two typed getOrCreate paths as a fallback, and passes it back.
+     */
+    private static <T> T resolved(DeathQuotaEvents.StateResolved event, String storageKey, String path, T state) {
+        if (!"new-type".equals(path) && !"legacy-type".equals(path)) {
+            DeathQuotaMetrics.REFLECTIVE_FALLBACKS.increment();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.storageKey = storageKey;
+            event.path = path;
+            event.commit();
+        }
+        return state;
+    }
+
     /**
      * Registers a PersistentState with the manager's internal cache using reflection.
      * This is necessary when we manually create state objects so they get saved when the world saves.
@@ -5,77 +5,92 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 
 /**
  * Compatibility layer for server access differences between 1.21.x versions.
- * 
+ *
  * In 1.21.0-1.21.9: ServerPlayerEntity.getServer() returns MinecraftServer
  * In 1.21.10+: Method renamed or changed
- * 
+ *
  * This class provides a unified way to get the server instance from a player.
+ * Accessors are resolved once into static final MethodHandles typed
+ * {@code (ServerPlayerEntity)Object}, so calls are exact invocations the JIT
+ * can inline instead of boxed, varargs Method.invoke dispatches.
  */
 public final class ServerCompat {
-    private static final Method GET_SERVER_METHOD;
-    private static final Method GET_SERVER_WORLD_METHOD;
-    private static final Method GET_WORLD_METHOD;
-    private static final Field WORLD_FIELD;
-    
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, ServerPlayerEntity.class);
+
+    private static final MethodHandle GET_SERVER;
+    private static final MethodHandle GET_SERVER_WORLD;
+    private static final MethodHandle GET_WORLD;
+    private static final MethodHandle WORLD_FIELD;
+
     static {
-        GET_SERVER_METHOD = findMethod("getServer");
-        GET_SERVER_WORLD_METHOD = findMethod("getServerWorld");
-        Method worldMethod = findMethod("getWorld");
-        GET_WORLD_METHOD = worldMethod;
+        GET_SERVER = findMethod("getServer");
+        GET_SERVER_WORLD = findMethod("getServerWorld");
+        GET_WORLD = findMethod("getWorld");
         WORLD_FIELD = findWorldField();
         DeathQuotaMod.LOGGER.info("ServerCompat initialized: getServer={}, getServerWorld={}, getWorld={}, worldField={}",
-            GET_SERVER_METHOD != null, GET_SERVER_WORLD_METHOD != null, GET_WORLD_METHOD != null, WORLD_FIELD != null);
+            GET_SERVER != null, GET_SERVER_WORLD != null, GET_WORLD != null, WORLD_FIELD != null);
     }
-    
+
     private ServerCompat() {}
 
-    private static Method findMethod(String name) {
+    private static MethodHandle findMethod(String name) {
         try {
             Method method = ServerPlayerEntity.class.getMethod(name);
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(method).asType(ACCESSOR_TYPE);
             DeathQuotaMod.LOGGER.info("ServerCompat: Found {}() method", name);
-            return method;
+            return handle;
         } catch (NoSuchMethodException e) {
             DeathQuotaMod.LOGGER.warn("ServerCompat: {}() method not found", name);
             return null;
+        } catch (IllegalAccessException e) {
+            DeathQuotaMod.LOGGER.warn("ServerCompat: {}() method not accessible", name, e);
+            return null;
         }
     }
 
-    private static Field findWorldField() {
+    private static MethodHandle findWorldField() {
         try {
             Field field = Class.forName("net.minecraft.entity.Entity").getDeclaredField("world");
             field.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectGetter(field).asType(ACCESSOR_TYPE);
             DeathQuotaMod.LOGGER.info("ServerCompat: Found Entity.world field");
-            return field;
+            return handle;
         } catch (Exception e) {
             DeathQuotaMod.LOGGER.warn("ServerCompat: Entity.world field not accessible", e);
             return null;
         }
     }
-    
+
     /**
      * Gets the MinecraftServer instance from a ServerPlayerEntity.
      * Works across all 1.21.x versions.
-     * 
+     *
      * @param player The player to get the server from
      * @return The MinecraftServer instance
      */
     public static MinecraftServer getServer(ServerPlayerEntity player) {
-        try {
-            if (GET_SERVER_METHOD != null) {
-                return (MinecraftServer) GET_SERVER_METHOD.invoke(player);
+        if (GET_SERVER != null) {
+            try {
+                Object server = (Object) GET_SERVER.invokeExact(player);
+                if (server instanceof MinecraftServer minecraftServer) {
+                    return minecraftServer;
+                }
+            } catch (Throwable t) {
+                DeathQuotaMod.LOGGER.error("ServerCompat: invoking getServer() failed", t);
             }
-        } catch (Exception e) {
-            DeathQuotaMod.LOGGER.error("ServerCompat: invoking getServer() failed", e);
         }
 
-        ServerWorld world = getWorldFromReflection(player);
+        ServerWorld world = getWorldFromAccessors(player);
         if (world == null) {
-            world = directWorldCast(player);
+            world = directWorldRead(player);
         }
         if (world != null) {
             return world.getServer();
@@ -85,12 +100,12 @@ public final class ServerCompat {
     }
 
     public static ServerWorld getWorld(ServerPlayerEntity player) {
-        ServerWorld world = getWorldFromReflection(player);
+        ServerWorld world = getWorldFromAccessors(player);
         if (world != null) {
             return world;
         }
 
-        world = directWorldCast(player);
+        world = directWorldRead(player);
         if (world != null) {
             return world;
         }
@@ -98,35 +113,35 @@ public final class ServerCompat {
         return getServer(player).getOverworld();
     }
 
-    private static ServerWorld getWorldFromReflection(ServerPlayerEntity player) {
+    private static ServerWorld getWorldFromAccessors(ServerPlayerEntity player) {
         try {
-            if (GET_SERVER_WORLD_METHOD != null) {
-                Object world = GET_SERVER_WORLD_METHOD.invoke(player);
+            if (GET_SERVER_WORLD != null) {
+                Object world = (Object) GET_SERVER_WORLD.invokeExact(player);
                 if (world instanceof ServerWorld serverWorld) {
                     return serverWorld;
                 }
             }
-            if (GET_WORLD_METHOD != null) {
-                Object world = GET_WORLD_METHOD.invoke(player);
+            if (GET_WORLD != null) {
+                Object world = (Object) GET_WORLD.invokeExact(player);
                 if (world instanceof ServerWorld serverWorld) {
                     return serverWorld;
                 }
             }
-        } catch (Exception e) {
-            DeathQuotaMod.LOGGER.error("ServerCompat: Failed to resolve player world via reflection", e);
+        } catch (Throwable t) {
+            DeathQuotaMod.LOGGER.error("ServerCompat: Failed to resolve player world via method handles", t);
         }
         return null;
     }
 
-    private static ServerWorld directWorldCast(ServerPlayerEntity player) {
+    private static ServerWorld directWorldRead(ServerPlayerEntity player) {
         if (WORLD_FIELD != null) {
             try {
-                Object world = WORLD_FIELD.get(player);
+                Object world = (Object) WORLD_FIELD.invokeExact(player);
                 if (world instanceof ServerWorld serverWorld) {
                     return serverWorld;
                 }
-            } catch (Exception e) {
-                DeathQuotaMod.LOGGER.error("ServerCompat: reading Entity.world failed", e);
+            } catch (Throwable t) {
+                DeathQuotaMod.LOGGER.error("ServerCompat: reading Entity.world failed", t);
             }
         }
         return null;
@@ -0,0 +1,230 @@
+package net.deathquota.mod.death;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replay, torn-tail handling, rotate/compact and life pools of {@link DeathJournal},
+ * against a journal directory on the local disk.
+ */
+class DeathJournalTest {
+    private static final UUID ALICE = new UUID(0x1111L, 0x2222L);
+    private static final UUID BOB = new UUID(0x3333L, 0x4444L);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordImagesAndConfig() {
+        DeathRecordStore store = new DeathRecordStore();
+        DeathJournal journal = new DeathJournal(directory, new DeathQuotaConfig());
+        journal.open(store);
+        int slot = store.getOrCreateSlot(ALICE);
+        store.setDeaths(slot, 2);
+        // The origin packs to 0 and must still replay as a position
+        store.setLastDeath(slot, true, 0L, DimensionRegistry.intern("minecraft:the_nether"), 90f, -10f, 1234L);
+        store.setMessage(slot, "Alice fell from a high place");
+        journal.appendRecord(store, slot);
+        journal.appendMaxLives(5);
+        journal.close();
+
+        DeathQuotaConfig config = new DeathQuotaConfig();
+        DeathRecordStore replayed = new DeathRecordStore();
+        new DeathJournal(directory, config).replayOnly(replayed);
+
+        int replayedSlot = replayed.slotOf(ALICE);
+        assertTrue(replayedSlot >= 0);
+        assertEquals(2, replayed.deaths(replayedSlot));
+        assertTrue(replayed.hasPosition(replayedSlot));
+        assertEquals(0L, replayed.position(replayedSlot));
+        assertEquals("minecraft:the_nether", replayed.dimensionName(replayedSlot));
+        assertEquals(90f, replayed.yaw(replayedSlot));
+        assertEquals(-10f, replayed.pitch(replayedSlot));
+        assertEquals(1234L, replayed.time(replayedSlot));
+        assertEquals("Alice fell from a high place", replayed.message(replayedSlot));
+        assertEquals(5, config.getMaxLives());
+    }
+
+    @Test
+    void replaysRemovalsInOrder() {
+        DeathRecordStore store = new DeathRecordStore();
+        DeathJournal journal = new DeathJournal(directory, new DeathQuotaConfig());
+        journal.open(store);
+        appendDeaths(journal, store, ALICE, 1);
+        appendDeaths(journal, store, BOB, 1);
+        store.remove(ALICE);
+        journal.appendRemove(ALICE);
+        journal.close();
+
+        DeathRecordStore replayed = new DeathRecordStore();
+        new DeathJournal(directory, new DeathQuotaConfig()).replayOnly(replayed);
+
+        assertEquals(-1, replayed.slotOf(ALICE));
+        assertEquals(1, replayed.deaths(replayed.slotOf(BOB)));
+    }
+
+    @Test
+    void stopsAtATornTail() throws IOException {
+        writeTwoRecords();
+        Path segment = onlySegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // Cut the last entry short, as a crash part way through its write would
+            file.setLength(file.length() - 3);
+        }
+
+        DeathRecordStore replayed = new DeathRecordStore();
+        new DeathJournal(directory, new DeathQuotaConfig()).replayOnly(replayed);
+
+        assertEquals(1, replayed.deaths(replayed.slotOf(ALICE)));
+        assertEquals(-1, replayed.slotOf(BOB));
+    }
+
+    @Test
+    void stopsAtACorruptEntry() throws IOException {
+        writeTwoRecords();
+        Path segment = onlySegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        DeathRecordStore replayed = new DeathRecordStore();
+        new DeathJournal(directory, new DeathQuotaConfig()).replayOnly(replayed);
+
+        assertEquals(1, replayed.deaths(replayed.slotOf(ALICE)));
+        assertEquals(-1, replayed.slotOf(BOB));
+    }
+
+    @Test
+    void compactionDropsOnlyTheSegmentsASnapshotCovers() throws IOException {
+        DeathRecordStore store = new DeathRecordStore();
+        DeathJournal journal = new DeathJournal(directory, new DeathQuotaConfig());
+        journal.open(store);
+        appendDeaths(journal, store, ALICE, 1);
+        long covered = journal.rotate();
+        appendDeaths(journal, store, BOB, 2);
+        journal.compactThrough(covered);
+        journal.close();
+
+        List<Path> segments = segments();
+        assertEquals(1, segments.size());
+        assertFalse(segments.get(0).getFileName().toString().equals(String.format("journal_%010d.log", covered)));
+
+        DeathRecordStore replayed = new DeathRecordStore();
+        new DeathJournal(directory, new DeathQuotaConfig()).replayOnly(replayed);
+
+        // ALICE was only in the compacted segment, so she comes from the snapshot, not the journal
+        assertEquals(-1, replayed.slotOf(ALICE));
+        assertEquals(2, replayed.deaths(replayed.slotOf(BOB)));
+    }
+
+    @Test
+    void reopeningReplaysAndWritesAfterTheExistingSegments() throws IOException {
+        DeathRecordStore store = new DeathRecordStore();
+        DeathJournal journal = new DeathJournal(directory, new DeathQuotaConfig());
+        journal.open(store);
+        appendDeaths(journal, store, ALICE, 1);
+        journal.close();
+
+        DeathRecordStore reopened = new DeathRecordStore();
+        DeathJournal again = new DeathJournal(directory, new DeathQuotaConfig());
+        assertTrue(again.open(reopened) > 0);
+        appendDeaths(again, reopened, BOB, 1);
+        again.close();
+
+        assertEquals(2, segments().size());
+        DeathRecordStore replayed = new DeathRecordStore();
+        new DeathJournal(directory, new DeathQuotaConfig()).replayOnly(replayed);
+        assertEquals(1, replayed.deaths(replayed.slotOf(ALICE)));
+        assertEquals(1, replayed.deaths(replayed.slotOf(BOB)));
+    }
+
+    @Test
+    void replaysPoolChangesOverTheSavedPools() {
+        LifePools pools = new LifePools();
+        DeathJournal journal = new DeathJournal(directory, new DeathQuotaConfig(), pools);
+        journal.open(new DeathRecordStore());
+        pools.attachJournal(journal);
+        pools.setMode(PoolMode.GROUP);
+        pools.setGroup("raiders", 3);
+        pools.addMember("raiders", ALICE);
+        pools.addMember("raiders", BOB);
+        pools.recordDeath(ALICE, null);
+        pools.removeMember(BOB);
+        journal.close();
+
+        // As an older state file had them
+        LifePools replayed = new LifePools();
+        replayed.setGroup("stale", 1);
+        new DeathJournal(directory, new DeathQuotaConfig(), replayed).replayOnly(new DeathRecordStore());
+
+        assertEquals(PoolMode.GROUP, replayed.mode());
+        assertNull(replayed.pool("stale"));
+        LifePools.Pool raiders = replayed.pool("raiders");
+        assertEquals(3, raiders.lives());
+        assertEquals(1, raiders.deaths());
+        assertEquals(Set.of(ALICE), raiders.members());
+    }
+
+    @Test
+    void poolsSurviveCompactionOfTheSegmentsThatChangedThem() {
+        LifePools pools = new LifePools();
+        DeathJournal journal = new DeathJournal(directory, new DeathQuotaConfig(), pools);
+        journal.open(new DeathRecordStore());
+        pools.attachJournal(journal);
+        pools.setMode(PoolMode.SERVER);
+        pools.recordDeath(ALICE, null);
+        pools.recordDeath(BOB, null);
+        journal.compactThrough(journal.rotate());
+        journal.close();
+
+        LifePools replayed = new LifePools();
+        new DeathJournal(directory, new DeathQuotaConfig(), replayed).replayOnly(new DeathRecordStore());
+
+        assertEquals(PoolMode.SERVER, replayed.mode());
+        assertEquals(2, replayed.pool(LifePools.SERVER_POOL).deaths());
+    }
+
+    private void writeTwoRecords() {
+        DeathRecordStore store = new DeathRecordStore();
+        DeathJournal journal = new DeathJournal(directory, new DeathQuotaConfig());
+        journal.open(store);
+        appendDeaths(journal, store, ALICE, 1);
+        appendDeaths(journal, store, BOB, 1);
+        journal.close();
+    }
+
+    private static void appendDeaths(DeathJournal journal, DeathRecordStore store, UUID uuid, int deaths) {
+        int slot = store.getOrCreateSlot(uuid);
+        store.setDeaths(slot, deaths);
+        journal.appendRecord(store, slot);
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> segments = segments();
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal_")).sorted().toList();
+        }
+    }
+}
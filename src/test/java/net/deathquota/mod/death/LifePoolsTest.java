@@ -0,0 +1,110 @@
+package net.deathquota.mod.death;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pool resolution under each {@link PoolMode}, group membership and the
+ * lock that follows a pool running out of lives in {@link LifePools}.
+ */
+class LifePoolsTest {
+    private static final UUID ALICE = new UUID(0x1111L, 0x2222L);
+    private static final UUID BOB = new UUID(0x3333L, 0x4444L);
+
+    @Test
+    void resolvesThePoolForEachMode() {
+        LifePools pools = new LifePools();
+        assertNull(pools.recordDeath(ALICE, "red"));
+
+        pools.setMode(PoolMode.SERVER);
+        LifePools.Pool server = pools.recordDeath(ALICE, "red");
+        assertEquals(LifePools.SERVER_POOL, server.id);
+        assertSame(server, pools.recordDeath(BOB, null));
+        assertEquals(2, server.deaths());
+
+        pools.setMode(PoolMode.TEAM);
+        LifePools.Pool red = pools.recordDeath(ALICE, "red");
+        assertEquals(LifePools.teamPool("red"), red.id);
+        assertEquals(LifePools.teamPool("blue"), pools.recordDeath(BOB, "blue").id);
+        assertNull(pools.recordDeath(BOB, null));
+        assertEquals(1, red.deaths());
+
+        pools.setMode(PoolMode.GROUP);
+        pools.setGroup("friends", 4);
+        pools.addMember("friends", ALICE);
+        assertEquals("friends", pools.recordDeath(ALICE, "red").id);
+        assertNull(pools.recordDeath(BOB, "red"));
+        // The server and team pools keep their deaths while another mode is active
+        assertEquals(2, pools.pool(LifePools.SERVER_POOL).deaths());
+    }
+
+    @Test
+    void addingAMemberMovesThemOutOfTheirOldGroup() {
+        LifePools pools = new LifePools();
+        pools.setMode(PoolMode.GROUP);
+        pools.setGroup("north", 3);
+        pools.setGroup("south", 3);
+        assertFalse(pools.addMember(LifePools.SERVER_POOL, ALICE));
+        assertFalse(pools.addMember("east", ALICE));
+
+        assertTrue(pools.addMember("north", ALICE));
+        pools.setOnline(ALICE, null, true);
+        LifePools.Pool north = pools.pool("north");
+        assertSame(north, pools.poolOf(ALICE));
+        assertEquals(List.of(ALICE), north.online());
+
+        assertTrue(pools.addMember("south", ALICE));
+        LifePools.Pool south = pools.pool("south");
+        assertEquals(Set.of(), north.members());
+        assertEquals(Set.of(ALICE), south.members());
+        assertEquals(0, north.onlineCount());
+        assertSame(south, pools.poolOf(ALICE));
+        assertSame(south, pools.recordDeath(ALICE, null));
+        assertEquals(0, north.deaths());
+
+        assertSame(south, pools.removeMember(ALICE));
+        assertNull(pools.poolOf(ALICE));
+        assertNull(pools.removeMember(ALICE));
+    }
+
+    @Test
+    void loweringLivesBelowTheDeathsTakenLocksThePool() {
+        LifePools pools = new LifePools();
+        pools.setMode(PoolMode.SERVER);
+        pools.setLives(5);
+        pools.setOnline(ALICE, null, true);
+        pools.setOnline(BOB, null, true);
+        pools.setGroup("friends", 5);
+        for (int i = 0; i < 3; i++) {
+            pools.recordDeath(i % 2 == 0 ? ALICE : BOB, null);
+        }
+        LifePools.Pool server = pools.pool(LifePools.SERVER_POOL);
+        assertEquals(2, server.remaining());
+        assertFalse(pools.locked(ALICE));
+
+        pools.setLives(2);
+        assertTrue(server.exhausted());
+        assertEquals(0, server.remaining());
+        assertTrue(pools.locked(ALICE));
+        assertTrue(pools.locked(BOB));
+        // Custom groups keep their own lives
+        assertEquals(5, pools.pool("friends").lives());
+
+        pools.setLives(4);
+        assertFalse(server.exhausted());
+        assertFalse(pools.locked(BOB));
+
+        pools.setLives(1);
+        pools.reset(LifePools.SERVER_POOL);
+        assertFalse(pools.locked(ALICE));
+    }
+}
@@ -0,0 +1,83 @@
+package net.deathquota.mod.death;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Completion order and limits of {@link PlayerNameIndex}, and names kept
+ * across restarts through its names file.
+ */
+class PlayerNameIndexTest {
+    private static final UUID ALICE = new UUID(0x1111L, 0x2222L);
+    private static final UUID BOB = new UUID(0x3333L, 0x4444L);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void completesAlphabeticallyIgnoringCase() {
+        PlayerNameIndex index = new PlayerNameIndex();
+        String[] names = {"steve", "Alex", "alice", "Al", "bob", "ALBERT", "Zed", "alexander"};
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], new UUID(0L, i));
+        }
+
+        assertEquals(List.of("Al", "ALBERT", "Alex", "alexander", "alice"), complete(index, "al", 10));
+        assertEquals(List.of("Al", "ALBERT", "Alex", "alexander", "alice"), complete(index, "AL", 10));
+        assertEquals(List.of("Al", "ALBERT", "Alex", "alexander", "alice", "bob", "steve", "Zed"),
+            complete(index, "", 10));
+        assertEquals(List.of(), complete(index, "x", 10));
+    }
+
+    @Test
+    void stopsAtTheLimit() {
+        PlayerNameIndex index = new PlayerNameIndex();
+        for (int i = 0; i < 50; i++) {
+            index.put(String.format("player%02d", i), new UUID(0L, i));
+        }
+
+        List<String> first = complete(index, "player", 3);
+        assertEquals(List.of("player00", "player01", "player02"), first);
+        assertEquals(List.of("player10", "player11"), complete(index, "player1", 2));
+        assertEquals(List.of(), complete(index, "player", 0));
+        assertEquals(50, complete(index, "p", 100).size());
+    }
+
+    @Test
+    void namesSurviveARestartWithoutTheUserCache() throws IOException {
+        Path namesFile = directory.resolve(PlayerNameIndex.FILE_NAME);
+        Path userCache = directory.resolve("usercache.json");
+        Files.writeString(userCache, "[{\"name\":\"Alice\",\"uuid\":\"" + ALICE + "\",\"expiresOn\":\"\"}]");
+        PlayerNameIndex index = PlayerNameIndex.load(namesFile, userCache);
+        index.put("Bob", BOB);
+        // Alice renames; the old name passes to Bob
+        index.put("Alicia", ALICE);
+        index.put("Alice", BOB);
+
+        // Neither player is in the user cache any more
+        Files.writeString(userCache, "[]");
+        PlayerNameIndex reloaded = PlayerNameIndex.load(namesFile, userCache);
+        assertEquals(ALICE, reloaded.find("alicia"));
+        assertEquals(BOB, reloaded.find("ALICE"));
+        assertEquals(BOB, reloaded.find("bob"));
+        assertEquals("Alicia", reloaded.nameOf(ALICE));
+        assertNull(reloaded.find("carol"));
+    }
+
+    private static List<String> complete(PlayerNameIndex index, String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        int passed = index.complete(prefix, limit, names::add);
+        assertEquals(names.size(), passed);
+        return names;
+    }
+}
@@ -0,0 +1,108 @@
+package net.deathquota.mod.death;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Filters, totals and paging of {@link RecordListing}, including a viewer
+ * paging on while records move between pages.
+ */
+class RecordListingTest {
+    private static final String VIEWER = "tester";
+
+    @Test
+    void countsEveryFilterExactly() {
+        DeathRecordStore store = new DeathRecordStore();
+        int[] deathCounts = {0, 1, 2, 3, 5, 99, 100, 150};
+        for (int i = 0; i < deathCounts.length; i++) {
+            store.setDeaths(store.getOrCreateSlot(uuid(i)), deathCounts[i]);
+        }
+        RecordListing listing = new RecordListing();
+
+        assertEquals(5, total(listing, store, RecordListing.Filter.locked()));
+        assertEquals(3, total(listing, store, RecordListing.Filter.alive()));
+        assertEquals(3, total(listing, store, RecordListing.Filter.deathsAtLeast(99)));
+        assertEquals(2, total(listing, store, RecordListing.Filter.deathsAtLeast(100)));
+        assertEquals(1, total(listing, store, RecordListing.Filter.deathsAtLeast(101)));
+        assertEquals(8, total(listing, store, RecordListing.Filter.deathsAtLeast(0)));
+
+        RecordListing.Page page = listing.page(store, VIEWER, RecordListing.Filter.deathsAtLeast(100), 1);
+        assertEquals(List.of(uuid(7), uuid(6)), uuids(page));
+    }
+
+    @Test
+    void nextPageNeitherRepeatsNorSkipsAfterRecordsMove() {
+        DeathRecordStore store = new DeathRecordStore();
+        for (int i = 0; i < 30; i++) {
+            store.setDeaths(store.getOrCreateSlot(uuid(i)), i + 1);
+        }
+        RecordListing listing = new RecordListing();
+        RecordListing.Filter filter = RecordListing.Filter.deathsAtLeast(1);
+
+        RecordListing.Page first = listing.page(store, VIEWER, filter, 1);
+        assertEquals(uuid(29), first.records().get(0).getUuid());
+        assertEquals(uuid(20), first.records().get(9).getUuid());
+
+        // A record already shown leaves, and one not yet shown climbs above the viewer's position
+        store.remove(uuid(25));
+        store.setDeaths(store.slotOf(uuid(15)), 100);
+
+        List<UUID> seen = new ArrayList<>(uuids(first));
+        seen.addAll(uuids(listing.page(store, VIEWER, filter, 2)));
+        seen.addAll(uuids(listing.page(store, VIEWER, filter, 3)));
+
+        Set<UUID> unique = new HashSet<>(seen);
+        assertEquals(seen.size(), unique.size());
+        for (int i = 0; i < 30; i++) {
+            if (i != 25 && i != 15) {
+                assertTrue(unique.contains(uuid(i)), "record " + i + " was skipped");
+            }
+        }
+    }
+
+    @Test
+    void jumpingToAPageSelectsByRank() {
+        DeathRecordStore store = new DeathRecordStore();
+        for (int i = 0; i < 30; i++) {
+            store.setDeaths(store.getOrCreateSlot(uuid(i)), i + 1);
+        }
+        RecordListing listing = new RecordListing();
+        RecordListing.Filter filter = RecordListing.Filter.deathsAtLeast(1);
+
+        listing.page(store, VIEWER, filter, 1);
+        RecordListing.Page third = listing.page(store, VIEWER, filter, 3);
+        assertEquals(3, third.page());
+        assertEquals(3, third.pages());
+        assertEquals(uuid(9), third.records().get(0).getUuid());
+        assertEquals(uuid(0), third.records().get(9).getUuid());
+
+        // Past the end shows the last page
+        assertEquals(3, listing.page(store, VIEWER, filter, 8).page());
+    }
+
+    private static int total(RecordListing listing, DeathRecordStore store, RecordListing.Filter filter) {
+        RecordListing.Page page = listing.page(store, VIEWER, filter, 1);
+        assertEquals(Math.min(page.total(), RecordListing.PAGE_SIZE), page.records().size());
+        return page.total();
+    }
+
+    private static List<UUID> uuids(RecordListing.Page page) {
+        List<UUID> uuids = new ArrayList<>();
+        for (DeathRecord record : page.records()) {
+            uuids.add(record.getUuid());
+        }
+        return uuids;
+    }
+
+    private static UUID uuid(int i) {
+        return new UUID(0x5555L, i);
+    }
+}
@@ -0,0 +1,66 @@
+package net.deathquota.mod.death;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Swap-removal from {@link ShardTracker}'s slot lists, and a chunked shard
+ * reset in {@link DeathRecordStore} that records leave part way through.
+ */
+class ShardTrackerTest {
+
+    @Test
+    void removalKeepsSlotsOnTheirSideOfTheBoundary() {
+        ShardTracker tracker = new ShardTracker();
+        for (int slot = 0; slot < 6; slot++) {
+            tracker.add(3, slot);
+        }
+        // Slots 0..2 are in front of the boundary; removing one of them pulls the unvisited 5 up to it
+        int boundary = tracker.remove(3, 1, 3);
+        assertEquals(2, boundary);
+        assertEquals(IntArrayList.of(0, 2, 5, 3, 4), tracker.slots(3));
+
+        boundary = tracker.remove(3, 3, boundary);
+        assertEquals(2, boundary);
+        assertEquals(IntArrayList.of(0, 2, 5, 4), tracker.slots(3));
+
+        // Positions follow the moves, so the moved slots can be removed in turn
+        tracker.remove(3, 5, 0);
+        tracker.remove(3, 0, 0);
+        assertEquals(IntArrayList.of(4, 2), tracker.slots(3));
+    }
+
+    @Test
+    void chunkedResetSurvivesRemovals() {
+        DeathRecordStore store = new DeathRecordStore();
+        SplittableRandom random = new SplittableRandom(11L);
+        for (int i = 0; i < 2000; i++) {
+            store.setDeaths(store.getOrCreateSlot(new UUID(random.nextLong(), random.nextLong())), 1);
+        }
+        int shard = 0;
+        IntArrayList slots = store.slotsInShard(shard);
+        int records = slots.size();
+        assertTrue(records > 10);
+
+        store.beginShardReset(shard);
+        int reset = store.resetShardChunk(4);
+        // One record the reset has passed and one it has not reached leave the shard
+        store.remove(store.uuidAt(slots.getInt(1)));
+        store.remove(store.uuidAt(slots.getInt(slots.size() - 2)));
+        while (store.resettingShard() >= 0) {
+            reset += store.resetShardChunk(4);
+        }
+
+        assertEquals(records - 1, reset);
+        assertEquals(records - 2, slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            assertEquals(0, store.deaths(slots.getInt(i)));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package net.deathquota.mod.death;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Rank, lower-bound and in-order walks of {@link SlotTreap}, checked against
+ * a sorted list after every round of updates and removals.
+ */
+class SlotTreapTest {
+    private static final int SLOTS = 300;
+
+    @Test
+    void ordersByBothKeysThenSlot() {
+        SlotTreap treap = new SlotTreap();
+        treap.update(4, 1L, 5L);
+        treap.update(2, 1L, 5L);
+        treap.update(7, 0L, 9L);
+        treap.update(1, 1L, 3L);
+
+        assertEquals(List.of(7, 1, 2, 4), walk(treap, 1));
+        assertEquals(3, treap.rank(2));
+        assertEquals(2, treap.countBefore(1L, 5L, 2));
+        assertEquals(3, treap.countBefore(1L, 5L, 3));
+        assertEquals(4, treap.countBefore(2L, Long.MIN_VALUE, Integer.MIN_VALUE));
+    }
+
+    @Test
+    void matchesASortedListThroughUpdatesAndRemovals() {
+        SlotTreap treap = new SlotTreap();
+        long[][] keys = new long[SLOTS][];
+        SplittableRandom random = new SplittableRandom(7L);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 60; i++) {
+                int slot = random.nextInt(SLOTS);
+                if (random.nextInt(4) == 0) {
+                    treap.remove(slot);
+                    keys[slot] = null;
+                } else {
+                    // Narrow key ranges, so ties on both keys are common
+                    long primary = random.nextInt(-5, 5);
+                    long secondary = random.nextInt(3);
+                    treap.update(slot, primary, secondary);
+                    keys[slot] = new long[] {primary, secondary};
+                }
+            }
+            assertMatches(treap, keys, random);
+        }
+    }
+
+    private static void assertMatches(SlotTreap treap, long[][] keys, SplittableRandom random) {
+        List<Integer> expected = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (keys[slot] != null) {
+                expected.add(slot);
+            }
+        }
+        expected.sort(Comparator.<Integer>comparingLong(slot -> keys[slot][0])
+            .thenComparingLong(slot -> keys[slot][1])
+            .thenComparingInt(slot -> slot));
+
+        assertEquals(expected.size(), treap.size());
+        for (int slot = 0; slot < SLOTS; slot++) {
+            assertEquals(expected.indexOf(slot) + 1, treap.rank(slot));
+        }
+        for (int from = 1; from <= expected.size() + 1; from += 7) {
+            assertEquals(expected.subList(Math.min(from - 1, expected.size()), expected.size()), walk(treap, from));
+        }
+        for (int i = 0; i < 20; i++) {
+            long primary = random.nextInt(-6, 6);
+            long secondary = random.nextInt(-1, 4);
+            int slot = random.nextInt(-1, SLOTS + 1);
+            int before = 0;
+            for (int each : expected) {
+                long[] key = keys[each];
+                if (key[0] < primary || key[0] == primary && (key[1] < secondary || key[1] == secondary && each < slot)) {
+                    before++;
+                }
+            }
+            assertEquals(before, treap.countBefore(primary, secondary, slot));
+        }
+    }
+
+    @Test
+    void walkStopsWhenTheSinkDoes() {
+        SlotTreap treap = new SlotTreap();
+        for (int slot = 0; slot < 50; slot++) {
+            treap.update(slot, slot / 10, -slot);
+        }
+        List<Integer> seen = new ArrayList<>();
+        treap.forEachFrom(3, slot -> {
+            seen.add(slot);
+            return seen.size() < 4;
+        });
+        assertEquals(List.of(7, 6, 5, 4), seen);
+
+        treap.remove(6);
+        treap.remove(6);
+        assertFalse(treap.contains(6));
+        assertEquals(0, treap.rank(6));
+        assertEquals(List.of(7, 5, 4), walk(treap, 3).subList(0, 3));
+    }
+
+    private static List<Integer> walk(SlotTreap treap, int fromRank) {
+        List<Integer> slots = new ArrayList<>();
+        treap.forEachFrom(fromRank, slots::add);
+        return slots;
+    }
+}